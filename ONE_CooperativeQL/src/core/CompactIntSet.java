@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Arrays;
+
+/**
+ * Compact set of integers in the style of roaring bitmaps. The values are
+ * divided into chunks by their upper 16 bits. Chunks with few values store
+ * the lower 16 bits of the values in a sorted array and chunks with many
+ * values in a 8 kB bitmap, so the set takes only a few bytes per value
+ * whether the values are sparse or dense.
+ */
+public class CompactIntSet {
+	/** maximum number of values in an array chunk */
+	private static final int MAX_ARRAY_SIZE = 4096;
+	/** number of longs in a bitmap chunk */
+	private static final int BITMAP_LENGTH = 1 << 10;
+
+	/** upper bits of the chunks' values in ascending order */
+	private int[] keys;
+	/** the chunks: char[] arrays or long[] bitmaps */
+	private Object[] chunks;
+	/** number of values in each chunk */
+	private int[] cardinalities;
+	private int nrofChunks;
+	private int size;
+
+	/**
+	 * Creates a new, empty, set
+	 */
+	public CompactIntSet() {
+		clear();
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value to add
+	 * @return True if the value was not in the set already
+	 */
+	public boolean add(int value) {
+		int i = findChunk(value >>> 16);
+		if (i < 0) {
+			i = -i - 1;
+			insertChunk(i, value >>> 16);
+		}
+
+		char low = (char)value;
+		Object chunk = chunks[i];
+		if (chunk instanceof long[]) {
+			long[] bitmap = (long[])chunk;
+			long bit = 1L << low;
+			if ((bitmap[low >>> 6] & bit) != 0) {
+				return false;
+			}
+			bitmap[low >>> 6] |= bit;
+		}
+		else {
+			char[] array = (char[])chunk;
+			int card = cardinalities[i];
+			int pos = Arrays.binarySearch(array, 0, card, low);
+			if (pos >= 0) {
+				return false;
+			}
+			pos = -pos - 1;
+			if (card == MAX_ARRAY_SIZE) {
+				long[] bitmap = toBitmap(array, card);
+				bitmap[low >>> 6] |= 1L << low;
+				chunks[i] = bitmap;
+			}
+			else {
+				if (card == array.length) {
+					array = Arrays.copyOf(array,
+							Math.min(2 * card, MAX_ARRAY_SIZE));
+					chunks[i] = array;
+				}
+				System.arraycopy(array, pos, array, pos + 1, card - pos);
+				array[pos] = low;
+			}
+		}
+
+		cardinalities[i]++;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains the value
+	 * @param value The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(int value) {
+		int i = findChunk(value >>> 16);
+		if (i < 0) {
+			return false;
+		}
+		char low = (char)value;
+		Object chunk = chunks[i];
+		if (chunk instanceof long[]) {
+			return (((long[])chunk)[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[])chunk, 0, cardinalities[i],
+				low) >= 0;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all values from the set
+	 */
+	public void clear() {
+		this.keys = new int[1];
+		this.chunks = new Object[1];
+		this.cardinalities = new int[1];
+		this.nrofChunks = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the (approximate) number of bytes the values of the set take
+	 * @return The number of bytes
+	 */
+	public long getMemoryUsage() {
+		long bytes = 12L * keys.length;
+		for (int i = 0; i < nrofChunks; i++) {
+			if (chunks[i] instanceof long[]) {
+				bytes += 8 * BITMAP_LENGTH;
+			}
+			else {
+				bytes += 2 * ((char[])chunks[i]).length;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the index of a chunk or (-(insertion point) - 1) if there's no
+	 * chunk for the key
+	 */
+	private int findChunk(int key) {
+		/* the values are usually added in ascending order */
+		if (nrofChunks > 0 && keys[nrofChunks - 1] == key) {
+			return nrofChunks - 1;
+		}
+		return Arrays.binarySearch(keys, 0, nrofChunks, key);
+	}
+
+	private void insertChunk(int index, int key) {
+		if (nrofChunks == keys.length) {
+			int capacity = 2 * nrofChunks;
+			keys = Arrays.copyOf(keys, capacity);
+			chunks = Arrays.copyOf(chunks, capacity);
+			cardinalities = Arrays.copyOf(cardinalities, capacity);
+		}
+		int moved = nrofChunks - index;
+		System.arraycopy(keys, index, keys, index + 1, moved);
+		System.arraycopy(chunks, index, chunks, index + 1, moved);
+		System.arraycopy(cardinalities, index, cardinalities, index + 1,
+				moved);
+		keys[index] = key;
+		chunks[index] = new char[4];
+		cardinalities[index] = 0;
+		nrofChunks++;
+	}
+
+	private static long[] toBitmap(char[] array, int card) {
+		long[] bitmap = new long[BITMAP_LENGTH];
+		for (int i = 0; i < card; i++) {
+			bitmap[array[i] >>> 6] |= 1L << array[i];
+		}
+		return bitmap;
+	}
+}
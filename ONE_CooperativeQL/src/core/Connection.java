@@ -160,6 +160,20 @@ public abstract class Connection {
 	 */
 	public abstract double getSpeed();	
 
+	/**
+	 * Sends a control signal to the node in the other end of the connection.
+	 * The signal is delivered immediately and it doesn't use or affect the
+	 * message transfer of this connection. Nothing is sent if the connection
+	 * is down.
+	 * @param from The node sending the signal
+	 * @param signal The signal to send
+	 */
+	public void sendSignal(DTNHost from, ControlSignal signal) {
+		if (isUp) {
+			getOtherNode(from).receiveSignal(signal, from);
+		}
+	}
+
 	/**
 	 * Returns the total amount of bytes this connection has transferred so far
 	 * (including all transfers).
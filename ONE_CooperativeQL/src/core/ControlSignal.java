@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+/**
+ * A control signal (e.g., a congestion warning) that a router sends to the
+ * hosts it is currently connected to. Unlike messages, signals are delivered
+ * immediately when they are sent and they don't go through the message
+ * buffers, the message listeners or the transfer slots of the connections.
+ * The meaning of the signal type is defined by the routers using it.
+ */
+public class ControlSignal {
+	private final DTNHost from;
+	private final int type;
+	private final double sendTime;
+
+	/**
+	 * Creates a new signal
+	 * @param from The host that sends the signal
+	 * @param type Type of the signal
+	 */
+	public ControlSignal(DTNHost from, int type) {
+		this.from = from;
+		this.type = type;
+		this.sendTime = SimClock.getTime();
+	}
+
+	/**
+	 * Returns the host that sent the signal
+	 * @return The sender
+	 */
+	public DTNHost getFrom() {
+		return from;
+	}
+
+	/**
+	 * Returns the type of the signal
+	 * @return The type
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the simulation time when the signal was sent
+	 * @return The send time
+	 */
+	public double getSendTime() {
+		return sendTime;
+	}
+
+	public String toString() {
+		return "ControlSignal " + type + " from " + from;
+	}
+}
@@ -62,6 +62,19 @@ public class Coord implements Cloneable, Comparable<Coord> {
 		
 		return Math.sqrt(dx*dx + dy*dy);
 	}
+
+	/**
+	 * Returns the squared distance to another coordinate. Comparing squared
+	 * distances is cheaper than comparing distances.
+	 * @param other The other coordinate
+	 * @return The squared distance between this and another coordinate
+	 */
+	public double distanceSquared(Coord other) {
+		double dx = this.x - other.x;
+		double dy = this.y - other.y;
+		
+		return dx*dx + dy*dy;
+	}
 	
 	/**
 	 * Returns the x coordinate
@@ -6,6 +6,7 @@ package core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
@@ -32,6 +33,8 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
+	/** the (up) connections of all interfaces or null if not known */
+	private List<Connection> connections;
 	private ModuleCommunicationBus comBus;
 
 	static {
@@ -112,6 +115,34 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.movement.isActive();
 	}
 
+	/**
+	 * Returns true if this node never moves nor changes its activeness
+	 * @return true if this node is static (false if not)
+	 */
+	public boolean isStatic() {
+		return this.movement.isStatic();
+	}
+
+	/**
+	 * Returns true if this node can be moved concurrently with other nodes,
+	 * i.e., its movement model supports it and there are no movement
+	 * listeners that would be informed about new destinations
+	 * @return true if this node can be moved in parallel with others
+	 */
+	public boolean canMoveInParallel() {
+		return this.movement.canMoveInParallel() &&
+			(this.movListeners == null || this.movListeners.isEmpty());
+	}
+
+	/**
+	 * Makes the movement model of this node use its own random number
+	 * stream that is derived from the movement model rng seed and the
+	 * address of this node
+	 */
+	public void useOwnMovementRng() {
+		this.movement.useOwnRng(this.address);
+	}
+
 	/**
 	 * Set a router for this host
 	 * @param router The router to set
@@ -150,25 +181,47 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param con  The connection object whose state changed
 	 */
 	public void connectionUp(Connection con) {
+		this.connections = null;
 		this.router.changedConnection(con);
 	}
 
 	public void connectionDown(Connection con) {
+		this.connections = null;
 		this.router.changedConnection(con);
 	}
+
+	/**
+	 * Clears the cached list of connections. The interfaces call this for
+	 * both hosts of a connection before informing either one's router, so
+	 * that the routers see the connections of both hosts up to date.
+	 */
+	void connectionsChanged() {
+		this.connections = null;
+	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns the list of connections this host has with other hosts. The
+	 * list is cached until a connection goes up or down, so it must not be
+	 * modified and it must be asked again after connection changes.
+	 * @return an unmodifiable list of connections this host has with other
+	 * hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
-
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		if (this.connections == null) {
+			List<Connection> lc = new ArrayList<Connection>();
+			for (NetworkInterface i : net) {
+				for (Connection con : i.getConnections()) {
+					/* connections going down are removed from the 
+					 * interfaces only after informing the hosts */
+					if (con.isUp()) {
+						lc.add(con);
+					}
+				}
+			}
+			this.connections = Collections.unmodifiableList(lc);
 		}
 
-		return lc;
+		return this.connections;
 	}
 
 	/**
@@ -425,6 +478,15 @@ public class DTNHost implements Comparable<DTNHost> {
 		return retVal;	
 	}
 
+	/**
+	 * Receives a control signal from another host
+	 * @param signal The signal
+	 * @param from Who the signal is from
+	 */
+	public void receiveSignal(ControlSignal signal, DTNHost from) {
+		this.router.receiveSignal(signal, from);
+	}
+
 	/**
 	 * Requests for deliverable message from this host to be sent trough a
 	 * connection.
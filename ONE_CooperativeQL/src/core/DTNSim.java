@@ -8,6 +8,10 @@ import gui.DTNSimGUI;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ui.DTNSimTextUI;
 
@@ -24,6 +28,15 @@ public class DTNSim {
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
 	public static final String RESET_METHOD_NAME = "reset";
+	/** Namespace of the batch mode settings ({@value}) */
+	public static final String BATCH_NS = "Batch";
+	/**
+	 * Number of batch runs to run in parallel -setting id ({@value}).
+	 * Each parallel run is executed in its own {@link SimulationContext}.
+	 * Value 0 uses one thread per available processor. Default is 1
+	 * (the runs are executed one after another).
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
 	/** List of class names that should be reset between batch runs */
 	private static List<Class<?>> resetList = new ArrayList<Class<?>>();
 	
@@ -78,11 +91,18 @@ public class DTNSim {
 		
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			int nrofThreads = getNrofThreads();
+			if (nrofThreads > 1 && nrofRuns[1] - nrofRuns[0] > 1) {
+				runInParallel(confFiles, firstConfIndex, nrofRuns, 
+						nrofThreads);
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					new DTNSimTextUI().start();
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
@@ -93,6 +113,79 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Returns the number of batch runs that should be run in parallel
+	 * @return the number of threads to use for batch runs
+	 */
+	private static int getNrofThreads() {
+		Settings s = new Settings(BATCH_NS);
+		int nrofThreads = 1;
+		if (s.contains(NROF_THREADS_S)) {
+			nrofThreads = s.getInt(NROF_THREADS_S);
+		}
+		if (nrofThreads < 0) {
+			throw new SettingsError("Invalid value (" + nrofThreads + 
+					") for " + BATCH_NS + "." + NROF_THREADS_S);
+		}
+		if (nrofThreads == 0) {
+			nrofThreads = Runtime.getRuntime().availableProcessors();
+		}
+		return nrofThreads;
+	}
+
+	/**
+	 * Runs batch runs in parallel, each in its own simulation context
+	 * @param confFiles Command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file
+	 * @param nrofRuns Index of the first run and (last run index + 1)
+	 * @param nrofThreads Maximum number of runs to run at the same time
+	 */
+	private static void runInParallel(final String[] confFiles, 
+			final int firstConfIndex, final int[] nrofRuns, int nrofThreads) {
+		ExecutorService pool = Executors.newFixedThreadPool(nrofThreads);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		
+		for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+			final int runIndex = i;
+			runs.add(pool.submit(new Runnable() {
+				public void run() {
+					print("Run " + (runIndex+1) + "/" + nrofRuns[1]);
+					try (SimulationContext ctx = new SimulationContext()) {
+						ctx.run(confFiles, firstConfIndex, runIndex);
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+		
+		for (Future<?> run : runs) {
+			try {
+				run.get();
+			} catch (InterruptedException e) {
+				throw new SimError("Interrupted while waiting for runs");
+			} catch (ExecutionException e) {
+				System.err.println("Batch run failed: " + e.getCause());
+				e.getCause().printStackTrace();
+				System.exit(-1);
+			}
+		}
+	}
+	
+	/**
+	 * Runs a single batch run. This is called by {@link SimulationContext} 
+	 * inside the context, where all static state is private to the run.
+	 * @param confFiles Command line arguments with the settings files
+	 * @param firstConfIndex Index of the first settings file
+	 * @param runIndex The run index to use
+	 */
+	public static void runInContext(String[] confFiles, int firstConfIndex, 
+			int runIndex) {
+		java.util.Locale.setDefault(java.util.Locale.US);
+		initSettings(confFiles, firstConfIndex);
+		Settings.setRunIndex(runIndex);
+		new DTNSimTextUI().start();
+	}
+	
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive long keys. The entries are kept in arrays in the
+ * order they were added and the hash table, which uses open addressing with
+ * linear probing, holds only indices to the entries. Thus no objects are
+ * created when values are added or looked up, and the values are iterated
+ * in insertion order (like with {@link java.util.LinkedHashMap}; replacing a
+ * value doesn't change its position). Null values are not allowed.
+ * @param <V> Type of the values
+ */
+public class LongHashMap<V> {
+	private static final int MIN_CAPACITY = 8;
+
+	/** keys and values of the entries in insertion order; the values of
+	 * removed entries are null */
+	private long[] keys;
+	private Object[] values;
+	/** number of used entry slots (including removed entries) */
+	private int count;
+	/** number of entries in the map */
+	private int size;
+	/** hash table of entry indices plus one (0 for empty slots) */
+	private int[] table;
+	private int shift;
+	private int modCount;
+	private Collection<V> valuesView;
+
+	/**
+	 * Creates a new, empty, map
+	 */
+	public LongHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates a new, empty, map
+	 * @param capacity Number of entries the map can hold without resizing
+	 */
+	public LongHashMap(int capacity) {
+		init(Math.max(MIN_CAPACITY, capacity));
+	}
+
+	private void init(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.count = 0;
+		this.size = 0;
+		int tableSize = Integer.highestOneBit(capacity - 1) << 2;
+		this.table = new int[tableSize];
+		this.shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+	}
+
+	/**
+	 * Returns the value for a key
+	 * @param key The key
+	 * @return The value or null if the map has no value for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int slot = findSlot(key);
+		return slot < 0 ? null : (V)values[table[slot] - 1];
+	}
+
+	/**
+	 * Returns true if the map has a value for the key
+	 * @param key The key
+	 * @return True if the map has a value for the key
+	 */
+	public boolean containsKey(long key) {
+		return findSlot(key) >= 0;
+	}
+
+	/**
+	 * Returns the position of a key in the iteration order. The positions
+	 * of two keys tell which one is iterated first, but they are not
+	 * necessarily consecutive and they change when the map is modified.
+	 * @param key The key
+	 * @return The position or -1 if the key is not in the map
+	 */
+	public int position(long key) {
+		int slot = findSlot(key);
+		return slot < 0 ? -1 : table[slot] - 1;
+	}
+
+	/**
+	 * Puts a value to the map. If the map already has a value for the
+	 * key, the value is replaced.
+	 * @param key The key
+	 * @param value The value
+	 * @return The previous value for the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not allowed");
+		}
+		int slot = findSlot(key);
+		if (slot >= 0) {
+			int index = table[slot] - 1;
+			V old = (V)values[index];
+			values[index] = value;
+			return old;
+		}
+
+		if (count == keys.length) {
+			rehash(size < keys.length / 2 ? keys.length : 2 * keys.length);
+		}
+		keys[count] = key;
+		values[count] = value;
+		count++;
+		size++;
+		modCount++;
+		insertSlot(key, count);
+		return null;
+	}
+
+	/**
+	 * Removes the value of a key
+	 * @param key The key
+	 * @return The removed value or null if the map had no value for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = findSlot(key);
+		if (slot < 0) {
+			return null;
+		}
+		int index = table[slot] - 1;
+		V old = (V)values[index];
+		values[index] = null;
+		size--;
+		modCount++;
+		deleteSlot(slot);
+		if (size == 0) {
+			count = 0; // no need to keep the removed entries
+		}
+		return old;
+	}
+
+	/**
+	 * Returns the number of values in the map
+	 * @return The number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return True if the map is empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values from the map
+	 */
+	public void clear() {
+		Arrays.fill(values, 0, count, null);
+		Arrays.fill(table, 0);
+		count = 0;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Returns a view of the values of the map in insertion order. The view
+	 * can't be used for modifying the map and its iterators fail if the map
+	 * is structurally modified while iterating.
+	 * @return The values of the map
+	 */
+	public Collection<V> values() {
+		if (valuesView == null) {
+			valuesView = new AbstractCollection<V>() {
+				public Iterator<V> iterator() {
+					return new ValueIterator();
+				}
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return valuesView;
+	}
+
+	private int hash(long key) {
+		return (int)((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	/**
+	 * Returns the table slot of a key or -1 if the key is not in the map
+	 */
+	private int findSlot(long key) {
+		int mask = table.length - 1;
+		for (int slot = hash(key); ; slot = (slot + 1) & mask) {
+			int index = table[slot];
+			if (index == 0) {
+				return -1;
+			}
+			if (keys[index - 1] == key) {
+				return slot;
+			}
+		}
+	}
+
+	private void insertSlot(long key, int indexPlusOne) {
+		int mask = table.length - 1;
+		int slot = hash(key);
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = indexPlusOne;
+	}
+
+	/**
+	 * Empties a table slot and moves the following entries of the probe
+	 * sequence so that they can still be found
+	 */
+	private void deleteSlot(int slot) {
+		int mask = table.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; table[next] != 0;
+				next = (next + 1) & mask) {
+			int home = hash(keys[table[next] - 1]);
+			/* the entry can be moved if the hole is between its home and
+			 * its current slot (cyclically) */
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	/**
+	 * Moves the entries to new arrays dropping the removed entries and
+	 * rebuilds the hash table
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		int oldCount = count;
+		init(capacity);
+		for (int i = 0; i < oldCount; i++) {
+			if (oldValues[i] != null) {
+				keys[count] = oldKeys[i];
+				values[count] = oldValues[i];
+				count++;
+				insertSlot(oldKeys[i], count);
+			}
+		}
+		size = count;
+	}
+
+	/**
+	 * Iterator over the values in insertion order
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next;
+		private final int expectedModCount = modCount;
+
+		private ValueIterator() {
+			skipRemoved();
+		}
+
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= count) {
+				throw new NoSuchElementException();
+			}
+			V value = (V)values[next++];
+			skipRemoved();
+			return value;
+		}
+
+		private void skipRemoved() {
+			while (next < count && values[next] == null) {
+				next++;
+			}
+		}
+	}
+}
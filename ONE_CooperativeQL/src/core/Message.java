@@ -4,7 +4,8 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,12 +23,18 @@ public class Message implements Comparable<Message> {
 	private String id;
 	/** Size of the message (bytes) */
 	private int size;
-	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
+	/** Last node of the path this message has passed. The earlier part 
+	 * of the path is shared with the message this one was replicated from */
+	private PathNode path; 
 	/** Next unique identifier to be given */
 	private static int nextUniqueId;
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Handles of the message identifiers. The handles are valid for one
+	 * simulation run and the mapping is cleared by {@link #reset()}. */
+	private static HashMap<String, Integer> handles;
+	/** Handle of the message identifier or -1 if not interned yet */
+	private int handle;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -45,6 +52,10 @@ public class Message implements Comparable<Message> {
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
+	/** Values of the primitive property slots (or null if none are set) */
+	private long[] slotValues;
+	/** Bit mask of the slots that have a value */
+	private long slotsSet;
 	
 	/** Application ID of the application that created the message */
 	private String	appID;
@@ -67,8 +78,9 @@ public class Message implements Comparable<Message> {
 		this.to = to;
 		this.id = id;
 		this.size = size;
-		this.path = new ArrayList<DTNHost>();
+		this.path = null;
 		this.uniqueId = nextUniqueId;
+		this.handle = -1;
 		
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -76,6 +88,8 @@ public class Message implements Comparable<Message> {
 		this.responseSize = 0;
 		this.requestMsg = null;
 		this.properties = null;
+		this.slotValues = null;
+		this.slotsSet = 0;
 		this.appID = null;
 		
 		Message.nextUniqueId++;
@@ -115,6 +129,37 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 	
+	/**
+	 * Returns a dense integer handle of the message identifier. All
+	 * messages with the same ID (i.e., the replicates of a message) have 
+	 * the same handle and the handles are given in the order the IDs are
+	 * first asked for, starting from 0.
+	 * @return The handle
+	 */
+	public int getHandle() {
+		if (this.handle < 0) {
+			Integer h = handles.get(this.id);
+			if (h == null) {
+				h = handles.size();
+				handles.put(this.id, h);
+			}
+			this.handle = h;
+		}
+		return this.handle;
+	}
+	
+	/**
+	 * Returns the handle of a message identifier
+	 * @param id The message identifier
+	 * @return The handle or -1 if no message with the identifier has been
+	 * given a handle
+	 * @see #getHandle()
+	 */
+	public static int getHandle(String id) {
+		Integer h = handles.get(id);
+		return h == null ? -1 : h;
+	}
+	
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -128,15 +173,33 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new PathNode(node, this.path);
 	}
 	
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The (unmodifiable) list
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		if (this.path == null) {
+			return Collections.emptyList();
+		}
+		return this.path.toList();
+	}
+	
+	/**
+	 * Returns true if the given host is on the path this message has passed
+	 * (including the source host)
+	 * @param host The host to look for
+	 * @return true if the message has passed the host, false if not
+	 */
+	public boolean hasVisited(DTNHost host) {
+		for (PathNode n = this.path; n != null; n = n.previous) {
+			if (n.host == host) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -144,7 +207,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return (this.path == null ? 0 : this.path.length) - 1;
 	}
 	
 	/** 
@@ -256,7 +319,10 @@ public class Message implements Comparable<Message> {
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
+		if (this.id.equals(m.id)) {
+			this.handle = m.handle;
+		}
+		this.path = m.path;
 		this.timeCreated = m.timeCreated;
 		this.responseSize = m.responseSize;
 		this.requestMsg  = m.requestMsg;
@@ -269,6 +335,10 @@ public class Message implements Comparable<Message> {
 				updateProperty(key, m.getProperty(key));
 			}
 		}
+		if (m.slotValues != null) {
+			this.slotValues = m.slotValues.clone();
+			this.slotsSet = m.slotsSet;
+		}
 	}
 	
 	/**
@@ -282,7 +352,9 @@ public class Message implements Comparable<Message> {
 	 * @throws SimError if the message already has a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.properties != null && this.properties.containsKey(key)) {
+		PropertySlot slot = PropertySlot.get(key);
+		if ((slot != null && hasProperty(slot)) || 
+				(this.properties != null && this.properties.containsKey(key))) {
 			/* check to prevent accidental name space collisions */
 			throw new SimError("Message " + this + " already contains value " + 
 					"for a key " + key);
@@ -298,6 +370,11 @@ public class Message implements Comparable<Message> {
 	 * @return The stored object or null if it isn't found
 	 */
 	public Object getProperty(String key) {
+		PropertySlot slot = PropertySlot.get(key);
+		if (slot != null) {
+			return hasProperty(slot) ? 
+					slot.fromBits(this.slotValues[slot.getIndex()]) : null;
+		}
 		if (this.properties == null) {
 			return null;
 		}
@@ -312,6 +389,11 @@ public class Message implements Comparable<Message> {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
+		PropertySlot slot = PropertySlot.get(key);
+		if (slot != null) {
+			setBits(slot, slot.toBits(value));
+			return;
+		}
 		if (this.properties == null) {
 			/* lazy creation to prevent performance overhead for classes
 			   that don't use the property feature  */
@@ -319,6 +401,99 @@ public class Message implements Comparable<Message> {
 		}		
 
 		this.properties.put(key, value);
+	}
+	
+	/**
+	 * Returns true if the message has a value for the property slot
+	 * @param slot The slot
+	 * @return True if the value has been set
+	 */
+	public boolean hasProperty(PropertySlot slot) {
+		return (this.slotsSet & (1L << slot.getIndex())) != 0;
+	}
+	
+	/**
+	 * Returns the value of an int property slot
+	 * @param slot The slot
+	 * @return The value or 0 if the value hasn't been set
+	 */
+	public int getInt(PropertySlot slot) {
+		return (int)getBits(slot);
+	}
+	
+	/**
+	 * Sets the value of an int property slot
+	 * @param slot The slot
+	 * @param value The value
+	 * @throws SimError if the slot is not an int slot
+	 */
+	public void setInt(PropertySlot slot, int value) {
+		checkType(slot, PropertySlot.INT);
+		setBits(slot, value);
+	}
+	
+	/**
+	 * Returns the value of a long property slot
+	 * @param slot The slot
+	 * @return The value or 0 if the value hasn't been set
+	 */
+	public long getLong(PropertySlot slot) {
+		return getBits(slot);
+	}
+	
+	/**
+	 * Sets the value of a long property slot
+	 * @param slot The slot
+	 * @param value The value
+	 * @throws SimError if the slot is not a long slot
+	 */
+	public void setLong(PropertySlot slot, long value) {
+		checkType(slot, PropertySlot.LONG);
+		setBits(slot, value);
+	}
+	
+	/**
+	 * Returns the value of a double property slot
+	 * @param slot The slot
+	 * @return The value or 0 if the value hasn't been set
+	 */
+	public double getDouble(PropertySlot slot) {
+		return Double.longBitsToDouble(getBits(slot));
+	}
+	
+	/**
+	 * Sets the value of a double property slot
+	 * @param slot The slot
+	 * @param value The value
+	 * @throws SimError if the slot is not a double slot
+	 */
+	public void setDouble(PropertySlot slot, double value) {
+		checkType(slot, PropertySlot.DOUBLE);
+		setBits(slot, Double.doubleToRawLongBits(value));
+	}
+	
+	private long getBits(PropertySlot slot) {
+		return hasProperty(slot) ? this.slotValues[slot.getIndex()] : 0;
+	}
+	
+	private void setBits(PropertySlot slot, long bits) {
+		int index = slot.getIndex();
+		if (this.slotValues == null || this.slotValues.length <= index) {
+			long[] values = new long[PropertySlot.getNrofSlots()];
+			if (this.slotValues != null) {
+				System.arraycopy(this.slotValues, 0, values, 0, 
+						this.slotValues.length);
+			}
+			this.slotValues = values;
+		}
+		this.slotValues[index] = bits;
+		this.slotsSet |= 1L << index;
+	}
+	
+	private void checkType(PropertySlot slot, int type) {
+		if (slot.getType() != type) {
+			throw new SimError("Wrong type of value for " + slot);
+		}
 	}
 	
 	/**
@@ -344,6 +519,7 @@ public class Message implements Comparable<Message> {
 	 */
 	public static void reset() {
 		nextUniqueId = 0;
+		handles = new HashMap<String, Integer>();
 	}
 
 	/**
@@ -365,4 +541,29 @@ public class Message implements Comparable<Message> {
 		return initTtl;
 	}
 	
+	
+	/**
+	 * A node of a message's path. The nodes are immutable, so replicates
+	 * of a message share the common beginning of their paths.
+	 */
+	private static final class PathNode {
+		private final DTNHost host;
+		private final PathNode previous;
+		/** number of nodes in the path up to (and including) this node */
+		private final int length;
+		
+		private PathNode(DTNHost host, PathNode previous) {
+			this.host = host;
+			this.previous = previous;
+			this.length = (previous == null ? 0 : previous.length) + 1;
+		}
+		
+		private List<DTNHost> toList() {
+			DTNHost[] hosts = new DTNHost[this.length];
+			for (PathNode n = this; n != null; n = n.previous) {
+				hosts[n.length - 1] = n.host;
+			}
+			return Collections.unmodifiableList(Arrays.asList(hosts));
+		}
+	}
 }
@@ -4,7 +4,6 @@
  */
 package core;
 
-import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
@@ -124,7 +123,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		comBus.subscribe(RANGE_ID, this);
 		comBus.subscribe(SPEED_ID, this);
 		
-		optimizer = ConnectivityGrid.ConnectivityGridFactory(
+		optimizer = ConnectivityOptimizer.getOptimizer(
 				this.interfacetype.hashCode(), transmitRange);
 		optimizer.addInterface(this);		
 	}
@@ -234,6 +233,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		anotherInterface.getConnections().add(con);
 
 		// inform routers about the connection
+		this.host.connectionsChanged();
+		anotherInterface.getHost().connectionsChanged();
 		this.host.connectionUp(con);
 		anotherInterface.getHost().connectionUp(con);
 	}
@@ -254,6 +255,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 					anotherInterface);	
 		}
 
+		this.host.connectionsChanged();
+		anotherInterface.getHost().connectionsChanged();
 		this.host.connectionDown(con);
 		anotherInterface.getHost().connectionDown(con);
 	}
@@ -271,8 +274,9 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		return this.host.getLocation().distanceSquared(
+				anotherInterface.getHost().getLocation()) <=
+					smallerRange * smallerRange;
 	}
 	
 	/**
@@ -395,6 +399,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 					anotherNode);   
 		}
 
+		this.host.connectionsChanged();
+		anotherNode.connectionsChanged();
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
@@ -408,6 +414,14 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return host;
 	}
 
+	/**
+	 * Returns the connectivity optimizer of this interface
+	 * @return The optimizer (null if the interface has no host yet)
+	 */
+	public ConnectivityOptimizer getOptimizer() {
+		return this.optimizer;
+	}
+
 	/**
 	 * Returns the current location of the host of this interface. 
 	 * @return The location
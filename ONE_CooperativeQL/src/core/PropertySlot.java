@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.HashMap;
+
+/**
+ * A typed, primitive valued, message property. Slots are declared once
+ * (e.g., in a static field of a router) and their values are stored in a
+ * small array of the messages instead of the generic properties map, so
+ * reading, writing and replicating them needs no hashing or boxing. The
+ * values are also available through {@link Message#getProperty(String)}
+ * with the slot's name.
+ */
+public class PropertySlot {
+	/** Type of slots with int values */
+	public static final int INT = 0;
+	/** Type of slots with long values */
+	public static final int LONG = 1;
+	/** Type of slots with double values */
+	public static final int DOUBLE = 2;
+	/** Maximum number of slots */
+	public static final int MAX_SLOTS = 64;
+
+	private static HashMap<String, PropertySlot> slots =
+		new HashMap<String, PropertySlot>();
+
+	private final String name;
+	private final int type;
+	private final int index;
+
+	private PropertySlot(String name, int type, int index) {
+		this.name = name;
+		this.type = type;
+		this.index = index;
+	}
+
+	/**
+	 * Returns the int slot with the given name. The slot is created if it
+	 * doesn't exist yet.
+	 * @param name Name of the property
+	 * @return The slot
+	 * @throws SimError if a slot with the name exists but has another type
+	 */
+	public static PropertySlot intSlot(String name) {
+		return getSlot(name, INT);
+	}
+
+	/**
+	 * Returns the long slot with the given name
+	 * @see #intSlot(String)
+	 */
+	public static PropertySlot longSlot(String name) {
+		return getSlot(name, LONG);
+	}
+
+	/**
+	 * Returns the double slot with the given name
+	 * @see #intSlot(String)
+	 */
+	public static PropertySlot doubleSlot(String name) {
+		return getSlot(name, DOUBLE);
+	}
+
+	/**
+	 * Returns the slot with the given name if such slot has been declared
+	 * @param name Name of the property
+	 * @return The slot or null if there's no slot with the name
+	 */
+	public static PropertySlot get(String name) {
+		return slots.get(name);
+	}
+
+	/**
+	 * Returns the number of declared slots
+	 * @return The number of slots
+	 */
+	public static int getNrofSlots() {
+		return slots.size();
+	}
+
+	private static PropertySlot getSlot(String name, int type) {
+		PropertySlot slot = slots.get(name);
+		if (slot == null) {
+			if (slots.size() == MAX_SLOTS) {
+				throw new SimError("Can't declare more than " + MAX_SLOTS +
+						" property slots");
+			}
+			slot = new PropertySlot(name, type, slots.size());
+			slots.put(name, slot);
+		}
+		else if (slot.type != type) {
+			throw new SimError("Property slot " + name + " already declared " +
+					"with another type");
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the name of the property
+	 * @return The name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the type of the slot ({@link #INT}, {@link #LONG} or
+	 * {@link #DOUBLE})
+	 * @return The type
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the index of the slot in the messages' slot arrays
+	 * @return The index
+	 */
+	int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Converts a boxed value to the raw bits stored in the slot arrays
+	 * @param value The value (a Number)
+	 * @return The bits
+	 * @throws SimError if the value is not a number
+	 */
+	long toBits(Object value) {
+		if (!(value instanceof Number)) {
+			throw new SimError("Invalid value " + value + " for property " +
+					name);
+		}
+		Number n = (Number)value;
+		switch (type) {
+		case INT:
+			return n.intValue();
+		case LONG:
+			return n.longValue();
+		default:
+			return Double.doubleToRawLongBits(n.doubleValue());
+		}
+	}
+
+	/**
+	 * Converts raw slot bits to a boxed value
+	 * @param bits The bits
+	 * @return The value as Integer, Long or Double
+	 */
+	Object fromBits(long bits) {
+		switch (type) {
+		case INT:
+			return (int)bits;
+		case LONG:
+			return bits;
+		default:
+			return Double.longBitsToDouble(bits);
+		}
+	}
+
+	public String toString() {
+		return "PropertySlot " + name;
+	}
+}
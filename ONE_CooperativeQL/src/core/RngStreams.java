@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.Random;
+
+import movement.MovementModel;
+
+/**
+ * Factory for reproducible random number streams. Every stream is derived
+ * from the seed of the simulation run (the movement model rng seed setting,
+ * see {@link MovementModel#RNG_SEED}), a stream ID (e.g., host's address)
+ * and a substream that tells which module uses the stream. The values drawn
+ * from a stream don't depend on what is drawn from the other streams, so
+ * the modules that use their own streams give the same results regardless
+ * of the order they are run in.
+ */
+public class RngStreams {
+	/** Substream of the movement models ({@value}) */
+	public static final int MOVEMENT_SUBSTREAM = 0;
+	/** Substream of the routing modules ({@value}) */
+	public static final int ROUTING_SUBSTREAM = 1;
+
+	/** seed of the simulation run */
+	private static int seed;
+
+	static {
+		DTNSim.registerForReset(RngStreams.class.getCanonicalName());
+		reset();
+	}
+
+	private RngStreams() {}
+
+	/**
+	 * Creates a random number generator for a stream
+	 * @param streamId Identifier of the stream (e.g., host's address)
+	 * @param substream Identifier of the substream
+	 * @return A new random number generator
+	 */
+	public static Random create(int streamId, int substream) {
+		/* mix the seed and the IDs so that nearby IDs give unrelated streams */
+		long z = seed * 0x9E3779B97F4A7C15L + ((long)substream << 32) +
+			streamId;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new Random(z ^ (z >>> 31));
+	}
+
+	/**
+	 * Resets all static fields to default values
+	 */
+	public static void reset() {
+		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		if (s.contains(MovementModel.RNG_SEED)) {
+			seed = s.getInt(MovementModel.RNG_SEED);
+		}
+		else {
+			seed = 0;
+		}
+	}
+}
@@ -166,6 +166,7 @@ public class SimScenario implements Serializable {
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval, 
 				updateListeners, simulateConnections, 
 				eqHandler.getEventQueues());
+		this.world.monitorActivity(messageListeners, connectionListeners);
 	}
 	
 	/**
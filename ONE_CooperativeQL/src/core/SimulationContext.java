@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Isolated context for running a simulation. Every context loads its own
+ * copy of the simulator classes using a separate class loader, so all the
+ * static state of the simulator (settings, {@link SimClock}, the
+ * {@link SimScenario} instance, address and ID counters, random number
+ * generators, connectivity grids, etc.) is private to the context.
+ * This way multiple batch runs can be executed in parallel in one JVM,
+ * each in its own thread and context. A context must be closed after use
+ * to release the class loader's resources (e.g., open jar files).
+ */
+public class SimulationContext implements Closeable {
+	/** Name of the method that is called inside the context to run
+	 * a simulation ({@value}) */
+	public static final String RUN_METHOD_NAME = "runInContext";
+
+	private URLClassLoader loader;
+
+	/**
+	 * Creates a new context that loads the simulator classes from the
+	 * class path of this JVM
+	 */
+	public SimulationContext() {
+		this.loader = new URLClassLoader(getClassPathUrls(),
+				SimulationContext.class.getClassLoader().getParent());
+	}
+
+	/**
+	 * Returns the class loader of this context
+	 * @return the class loader of this context
+	 */
+	public ClassLoader getClassLoader() {
+		return this.loader;
+	}
+
+	/**
+	 * Runs one batch run of the simulation in this context. Settings are
+	 * read from the given files, like when starting the simulator.
+	 * @param confFiles Command line arguments containing the settings files
+	 * @param firstConfIndex Index of the first settings file in the array
+	 * @param runIndex The run index to use
+	 * @throws SimError if the simulation can't be started
+	 */
+	public void run(String[] confFiles, int firstConfIndex, int runIndex) {
+		Thread thread = Thread.currentThread();
+		ClassLoader oldLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(this.loader);
+		try {
+			Class<?> c = Class.forName(DTNSim.class.getName(), true,
+					this.loader);
+			Method m = c.getMethod(RUN_METHOD_NAME, String[].class,
+					int.class, int.class);
+			m.invoke(null, confFiles, firstConfIndex, runIndex);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new SimError((Exception)cause);
+		} catch (Exception e) {
+			throw new SimError("Can't run simulation in a new context: " + e);
+		}
+		finally {
+			thread.setContextClassLoader(oldLoader);
+		}
+	}
+
+	/**
+	 * Closes the class loader of this context. No simulations can be run
+	 * in the context after this.
+	 * @throws SimError if the class loader can't be closed
+	 */
+	public void close() {
+		try {
+			this.loader.close();
+		} catch (IOException e) {
+			throw new SimError("Can't close the simulation context: " + e);
+		}
+	}
+
+	/**
+	 * Returns the class path entries of this JVM as URLs
+	 * @return the class path URLs
+	 */
+	private static URL[] getClassPathUrls() {
+		String cp = System.getProperty("java.class.path");
+		List<URL> urls = new ArrayList<URL>();
+
+		for (String entry : cp.split(File.pathSeparator)) {
+			if (entry.length() == 0) {
+				continue;
+			}
+			try {
+				urls.add(new File(entry).toURI().toURL());
+			} catch (MalformedURLException e) {
+				throw new SimError("Invalid class path entry " + entry);
+			}
+		}
+
+		return urls.toArray(new URL[urls.size()]);
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for timers that fire at given simulation
+ * times. The time is divided into ticks of fixed length and the wheel has
+ * a few levels of 64 slots: the first level has a slot for each of the
+ * next ticks, the second for each of the next 64 tick spans and so on.
+ * Timers are moved to the lower levels when the time reaches their span,
+ * so scheduling, cancelling and firing a timer takes constant (amortized)
+ * time regardless of the number of timers.
+ * @param <T> Type of the items the timers are for
+ */
+public class TimingWheel<T> {
+	private static final int SLOT_BITS = 6;
+	private static final int NROF_SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = NROF_SLOTS - 1;
+	/** number of levels; timers further in future are in an overflow list */
+	private static final int NROF_LEVELS = 4;
+
+	private final double tickLength;
+	/** first timers of the slot lists of each level (and the overflow) */
+	private final Timer<T>[][] slots;
+	/** number of timers on each level */
+	private final int[] levelSizes;
+	/** the current tick; timers of the earlier ticks have fired */
+	private long tick;
+	private int size;
+	private long nextSeq;
+
+	/**
+	 * Creates a new, empty, timing wheel
+	 * @param tickLength Length of a tick (simulated seconds). Timers fire
+	 * at their exact times regardless of the tick length, but timers of the
+	 * same tick are kept in the same list.
+	 */
+	public TimingWheel(double tickLength) {
+		this.tickLength = tickLength;
+		this.slots = createSlots();
+		this.levelSizes = new int[NROF_LEVELS + 1];
+		this.tick = tickOf(SimClock.getTime());
+	}
+
+	/**
+	 * Creates the slot arrays of the levels and the overflow list
+	 * @return The slot arrays
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Timer<T>[][] createSlots() {
+		Timer<?>[][] slots = new Timer<?>[NROF_LEVELS + 1][];
+		for (int i = 0; i < NROF_LEVELS; i++) {
+			slots[i] = new Timer<?>[NROF_SLOTS];
+		}
+		slots[NROF_LEVELS] = new Timer<?>[1];
+		return (Timer<T>[][])slots;
+	}
+
+	/**
+	 * Schedules a timer
+	 * @param item The item the timer is for
+	 * @param time The time when the timer fires. Timers with times that
+	 * have already passed fire on the next {@link #advance(double)}.
+	 * @return The timer
+	 */
+	public Timer<T> schedule(T item, double time) {
+		Timer<T> timer = new Timer<T>(item, time, nextSeq++);
+		place(timer);
+		size++;
+		return timer;
+	}
+
+	/**
+	 * Cancels a timer. Nothing is done if the timer has already fired or
+	 * been cancelled.
+	 * @param timer The timer
+	 */
+	public void cancel(Timer<T> timer) {
+		if (timer.level < 0) {
+			return;
+		}
+		unlink(timer);
+		size--;
+	}
+
+	/**
+	 * Advances the wheel to the given time and returns the items of the
+	 * timers that fire, i.e., whose time is not after the given time.
+	 * @param now The time to advance to
+	 * @return The items of the fired timers in the order of their times
+	 * (timers with equal times in the order they were scheduled)
+	 */
+	public List<T> advance(double now) {
+		long target = tickOf(now);
+		List<Timer<T>> fired = null;
+
+		while (true) {
+			Timer<T> t = slots[0][(int)(tick & SLOT_MASK)];
+			while (t != null) {
+				Timer<T> next = t.next;
+				if (t.time <= now) {
+					if (fired == null) {
+						fired = new ArrayList<Timer<T>>();
+					}
+					unlink(t);
+					size--;
+					fired.add(t);
+				}
+				t = next;
+			}
+
+			if (tick >= target) {
+				break;
+			}
+			if (size == 0) {
+				tick = target;
+				break;
+			}
+			if (levelSizes[0] == 0) {
+				/* nothing to fire before the next span of the first level */
+				long nextSpan = ((tick >> SLOT_BITS) + 1) << SLOT_BITS;
+				if (nextSpan > target) {
+					tick = target;
+					break;
+				}
+				tick = nextSpan;
+			}
+			else {
+				tick++;
+			}
+			cascade();
+		}
+
+		if (fired == null) {
+			return Collections.emptyList();
+		}
+		if (fired.size() > 1) {
+			Collections.sort(fired, new Comparator<Timer<T>>() {
+				public int compare(Timer<T> t1, Timer<T> t2) {
+					int c = Double.compare(t1.time, t2.time);
+					return c != 0 ? c : Long.compare(t1.seq, t2.seq);
+				}
+			});
+		}
+		List<T> items = new ArrayList<T>(fired.size());
+		for (Timer<T> t : fired) {
+			items.add(t.item);
+		}
+		return items;
+	}
+
+	/**
+	 * Returns a lower bound for the time of the next timer. The bound is
+	 * exact if the timer is in the current span of the first level.
+	 * @return The time or {@link Double#MAX_VALUE} if there are no timers
+	 */
+	public double getNextTimeBound() {
+		if (size == 0) {
+			return Double.MAX_VALUE;
+		}
+		if (levelSizes[0] > 0) {
+			for (int i = (int)(tick & SLOT_MASK); i < NROF_SLOTS; i++) {
+				if (slots[0][i] != null) {
+					double min = Double.MAX_VALUE;
+					for (Timer<T> t = slots[0][i]; t != null; t = t.next) {
+						min = Math.min(min, t.time);
+					}
+					return min;
+				}
+			}
+		}
+		for (int level = 1; level < NROF_LEVELS; level++) {
+			if (levelSizes[level] == 0) {
+				continue;
+			}
+			int shift = SLOT_BITS * level;
+			int digit = (int)((tick >> shift) & SLOT_MASK);
+			for (int i = digit + 1; i < NROF_SLOTS; i++) {
+				if (slots[level][i] != null) {
+					long spanStart = ((tick >> (shift + SLOT_BITS)) <<
+							(shift + SLOT_BITS)) | ((long)i << shift);
+					return spanStart * tickLength;
+				}
+			}
+		}
+		int shift = SLOT_BITS * NROF_LEVELS;
+		return (((tick >> shift) + 1) << shift) * tickLength;
+	}
+
+	/**
+	 * Returns the number of timers that haven't fired or been cancelled
+	 * @return The number of timers
+	 */
+	public int size() {
+		return size;
+	}
+
+	private long tickOf(double time) {
+		double t = Math.floor(time / tickLength);
+		return t >= Long.MAX_VALUE ? Long.MAX_VALUE : (long)t;
+	}
+
+	/**
+	 * Puts a timer to the slot of the lowest level whose current span
+	 * includes the timer's tick
+	 */
+	private void place(Timer<T> timer) {
+		long k = Math.max(tickOf(timer.time), tick);
+		int level = 0;
+		while (level < NROF_LEVELS &&
+				(k >> (SLOT_BITS * (level + 1))) !=
+				(tick >> (SLOT_BITS * (level + 1)))) {
+			level++;
+		}
+		int slot = level == NROF_LEVELS ? 0 :
+			(int)((k >> (SLOT_BITS * level)) & SLOT_MASK);
+
+		timer.level = level;
+		timer.slot = slot;
+		timer.prev = null;
+		timer.next = slots[level][slot];
+		if (timer.next != null) {
+			timer.next.prev = timer;
+		}
+		slots[level][slot] = timer;
+		levelSizes[level]++;
+	}
+
+	private void unlink(Timer<T> timer) {
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		}
+		else {
+			slots[timer.level][timer.slot] = timer.next;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer.prev;
+		}
+		levelSizes[timer.level]--;
+		timer.level = -1;
+		timer.prev = null;
+		timer.next = null;
+	}
+
+	/**
+	 * Moves the timers of the spans that begin at the current tick to the
+	 * lower levels
+	 */
+	private void cascade() {
+		for (int level = NROF_LEVELS; level > 0; level--) {
+			int shift = SLOT_BITS * level;
+			if ((tick & ((1L << shift) - 1)) != 0) {
+				continue;
+			}
+			int slot = level == NROF_LEVELS ? 0 :
+				(int)((tick >> shift) & SLOT_MASK);
+			Timer<T> t = slots[level][slot];
+			slots[level][slot] = null;
+			while (t != null) {
+				Timer<T> next = t.next;
+				levelSizes[level]--;
+				place(t);
+				t = next;
+			}
+		}
+	}
+
+	/**
+	 * A scheduled timer
+	 * @param <T> Type of the item
+	 */
+	public static class Timer<T> {
+		private final T item;
+		private final double time;
+		private final long seq;
+		private Timer<T> prev;
+		private Timer<T> next;
+		/** level of the timer's slot or -1 if the timer isn't scheduled */
+		private int level;
+		private int slot;
+
+		private Timer(T item, double time, long seq) {
+			this.item = item;
+			this.time = time;
+			this.seq = seq;
+		}
+
+		/**
+		 * Returns the item of the timer
+		 * @return The item
+		 */
+		public T getItem() {
+			return item;
+		}
+
+		/**
+		 * Returns the time when the timer fires
+		 * @return The time
+		 */
+		public double getTime() {
+			return time;
+		}
+	}
+}
@@ -4,15 +4,21 @@
  */
 package core;
 
+import input.EventCalendar;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
 import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * World contains all the nodes and is responsible for updating their
@@ -42,10 +48,79 @@ public class World {
 	/** should the update order of nodes be randomized -setting's default value
 	 * ({@value}) */
 	public static final boolean DEF_RANDOMIZE_UPDATES = true;
+	/**
+	 * Should the simulation clock jump over update intervals where nothing
+	 * can happen -setting id ({@value}). Boolean (true/false) variable.
+	 * Only has effect when connections are not simulated, all nodes are
+	 * static (see {@link DTNHost#isStatic()}) and there are no update
+	 * listeners; otherwise every update interval is run as usual.
+	 * Default is {@link #DEF_NEXT_EVENT_ADVANCE}.
+	 */
+	public static final String NEXT_EVENT_ADVANCE_S = "nextEventAdvance";
+	/** should the clock jump to the next due event -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_NEXT_EVENT_ADVANCE = false;
+	/**
+	 * Should only the hosts touched by an external event (and hosts with
+	 * ongoing transfers) be updated after the event -setting id ({@value}).
+	 * Boolean (true/false) variable. If disabled, or if the event doesn't
+	 * mark any hosts (see {@link #markDirty(DTNHost)}), all hosts are updated
+	 * after every event. All hosts are still updated on every update
+	 * interval. Default is {@link #DEF_DIRTY_HOST_UPDATES}.
+	 */
+	public static final String DIRTY_HOST_UPDATES_S = "dirtyHostUpdates";
+	/** should only the touched hosts be updated after events -setting's
+	 * default value ({@value}) */
+	public static final boolean DEF_DIRTY_HOST_UPDATES = false;
+	/**
+	 * Should hosts be moved in parallel -setting id ({@value}). Boolean
+	 * (true/false) variable. If enabled, every host's movement model gets
+	 * its own random number stream (derived from the movement model rng
+	 * seed and the host's address) so the results don't depend on the
+	 * number of threads. Hosts are moved in parallel only if all of them
+	 * support it (see {@link DTNHost#canMoveInParallel()}). Working day
+	 * movement and the map based movement models share state between the
+	 * hosts, so scenarios that use them are always moved sequentially.
+	 * Default is {@link #DEF_PARALLEL_MOVEMENT}.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	/** should the hosts be moved in parallel -setting's default value
+	 * ({@value}) */
+	public static final boolean DEF_PARALLEL_MOVEMENT = false;
+	/**
+	 * Number of threads to use for parallel movement -setting id
+	 * ({@value}). Integer value. Value 0 uses the common fork-join pool
+	 * (one thread per processor). Default is 0.
+	 */
+	public static final String MOVEMENT_THREADS_S = "movementThreads";
+	/**
+	 * Should neighbor discovery be done in two phases -setting id
+	 * ({@value}). Boolean (true/false) variable. If enabled, the locations
+	 * of all hosts' interfaces in the connectivity grid are updated first,
+	 * then the interfaces in range are searched in parallel, and finally
+	 * the connections are updated host by host like before. The connections
+	 * are created and torn down in the same order as without this
+	 * optimization. Default is {@link #DEF_PARALLEL_DISCOVERY}.
+	 * @see ConnectivityGrid
+	 */
+	public static final String PARALLEL_DISCOVERY_S = "parallelDiscovery";
+	/** should the neighbor discovery be done in two phases -setting's
+	 * default value ({@value}) */
+	public static final boolean DEF_PARALLEL_DISCOVERY = false;
+	/**
+	 * Number of threads to use for parallel neighbor discovery -setting id
+	 * ({@value}). Integer value. Value 0 uses the common fork-join pool
+	 * (one thread per processor). Default is 0.
+	 */
+	public static final String DISCOVERY_THREADS_S = "discoveryThreads";
+	/** number of hosts that are moved as one parallel task ({@value}) */
+	private static final int MOVEMENT_TASK_SIZE = 64;
+	/** how many activity-free update intervals must pass before the clock
+	 * is allowed to jump ({@value}) */
+	private static final int IDLE_INTERVALS_BEFORE_ADVANCE = 2;
 
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
@@ -61,10 +136,41 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** Calendar of all the event queues (including scheduled updates) */
+	private EventCalendar eventCalendar;
 
 	/** single ConnectivityCell's size is biggest radio range times this */
 	private int conCellSizeMult;
 
+	/** is jumping to the next due event enabled */
+	private boolean nextEventAdvance;
+	/** end time of the simulation (no jumps are made past this) */
+	private double endTime;
+	/** counts message and connection events if next event advance is used,
+	 * null if not */
+	private ActivityMonitor activityMonitor;
+	/** activity count seen at the end of the previous update */
+	private int lastActivityCount;
+	/** number of successive update intervals without any activity */
+	private int idleIntervals;
+
+	/** hosts marked by the event that is being processed (null if dirty
+	 * host updates are not used) */
+	private Set<DTNHost> dirtyHosts;
+	/** hosts that had ongoing transfers after their latest update (null if
+	 * dirty host updates are not used) */
+	private Set<DTNHost> transferringHosts;
+	/** reused list of hosts to update after an event */
+	private List<DTNHost> hostsToUpdate;
+	/** pool for moving hosts in parallel (null if not used) */
+	private ForkJoinPool movementPool;
+	/** optimizers with an ongoing neighbor discovery round (null if two
+	 * phase neighbor discovery is not used) */
+	private Set<ConnectivityOptimizer> discoveryOptimizers;
+	/** pool for the neighbor discovery (null to discover in the simulation
+	 * thread) */
+	private ForkJoinPool discoveryPool;
+
 	/**
 	 * Constructor.
 	 */
@@ -77,12 +183,17 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;		
 
+		this.eventCalendar = new EventCalendar();
+		this.eventCalendar.addQueue(this.scheduledUpdates);
+		for (EventQueue eq : eventQueues) {
+			this.eventCalendar.addQueue(eq);
+		}
+
 		setNextEventQueue();
 		initSettings();
 	}
@@ -117,6 +228,118 @@ public class World {
 			throw new SettingsError("Too small value (" + conCellSizeMult +
 					") for " + SETTINGS_NS + "." + CELL_SIZE_MULT_S);
 		}
+
+		this.nextEventAdvance = DEF_NEXT_EVENT_ADVANCE;
+		if (s.contains(NEXT_EVENT_ADVANCE_S)) {
+			this.nextEventAdvance = s.getBoolean(NEXT_EVENT_ADVANCE_S);
+		}
+		if (this.nextEventAdvance) {
+			this.nextEventAdvance = !simulateConnections && allHostsStatic();
+		}
+
+		boolean dirtyUpdates = DEF_DIRTY_HOST_UPDATES;
+		if (s.contains(DIRTY_HOST_UPDATES_S)) {
+			dirtyUpdates = s.getBoolean(DIRTY_HOST_UPDATES_S);
+		}
+		if (dirtyUpdates) {
+			this.dirtyHosts = new LinkedHashSet<DTNHost>();
+			this.transferringHosts = new LinkedHashSet<DTNHost>();
+			this.hostsToUpdate = new ArrayList<DTNHost>();
+		}
+
+		boolean parallelMovement = DEF_PARALLEL_MOVEMENT;
+		if (s.contains(PARALLEL_MOVEMENT_S)) {
+			parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S);
+		}
+		if (parallelMovement) {
+			initParallelMovement(s);
+		}
+
+		boolean parallelDiscovery = DEF_PARALLEL_DISCOVERY;
+		if (s.contains(PARALLEL_DISCOVERY_S)) {
+			parallelDiscovery = s.getBoolean(PARALLEL_DISCOVERY_S);
+		}
+		if (parallelDiscovery && simulateConnections) {
+			this.discoveryOptimizers =
+				new LinkedHashSet<ConnectivityOptimizer>();
+			this.discoveryPool = createPool(s, DISCOVERY_THREADS_S);
+		}
+
+		Settings sc = new Settings(SimScenario.SCENARIO_NS);
+		this.endTime = Double.MAX_VALUE;
+		if (this.nextEventAdvance && sc.contains(SimScenario.END_TIME_S)) {
+			this.endTime = sc.getDouble(SimScenario.END_TIME_S);
+		}
+	}
+
+	/**
+	 * Gives every host's movement model its own rng stream and sets up the
+	 * thread pool for moving the hosts in parallel
+	 * @param s The settings object for optimization settings
+	 */
+	private void initParallelMovement(Settings s) {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).useOwnMovementRng();
+		}
+		this.movementPool = createPool(s, MOVEMENT_THREADS_S);
+	}
+
+	/**
+	 * Creates a thread pool with the number of threads given in settings
+	 * @param s The settings object for optimization settings
+	 * @param threadsSetting Name of the number of threads -setting
+	 * @return The common pool if the number of threads is 0 (or not set),
+	 * null if it is 1 and a new pool otherwise
+	 */
+	private ForkJoinPool createPool(Settings s, String threadsSetting) {
+		int nrofThreads = 0;
+		if (s.contains(threadsSetting)) {
+			nrofThreads = s.getInt(threadsSetting);
+		}
+		if (nrofThreads < 0) {
+			throw new SettingsError("Invalid value (" + nrofThreads +
+					") for " + SETTINGS_NS + "." + threadsSetting);
+		}
+
+		if (nrofThreads == 0) {
+			return ForkJoinPool.commonPool();
+		}
+		else if (nrofThreads > 1) {
+			return new ForkJoinPool(nrofThreads);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if none of the hosts can ever move or change activeness
+	 * @return true if all hosts are static
+	 */
+	private boolean allHostsStatic() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			if (!hosts.get(i).isStatic()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts monitoring message and connection activity so that the
+	 * simulation clock can jump over update intervals where nothing
+	 * happens. Does nothing if next event advance is not enabled
+	 * (see {@link #NEXT_EVENT_ADVANCE_S}).
+	 * @param msgListeners The message listener list shared with the routers
+	 * @param conListeners The connection listener list shared with the
+	 * network interfaces
+	 */
+	public void monitorActivity(List<MessageListener> msgListeners,
+			List<ConnectionListener> conListeners) {
+		if (!this.nextEventAdvance || this.activityMonitor != null) {
+			return;
+		}
+		this.activityMonitor = new ActivityMonitor();
+		msgListeners.add(this.activityMonitor);
+		conListeners.add(this.activityMonitor);
 	}
 
 	/**
@@ -142,23 +365,13 @@ public class World {
 	}
 
 	/**
-	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * Sets the time of the next event in any of the event queues. The
+	 * next event itself is taken from the event calendar that keeps the
+	 * queues ordered by their next event's time.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.nextEventQueue = this.eventCalendar;
+		this.nextQueueEventTime = this.eventCalendar.nextEventsTime();
 	}
 
 	/** 
@@ -167,6 +380,10 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
+		if (canSkipIntervals()) {
+			skipIdleIntervals();
+		}
+
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
 		setNextEventQueue();
@@ -176,7 +393,12 @@ public class World {
 			simClock.setTime(this.nextQueueEventTime);
 			ExternalEvent ee = this.nextEventQueue.nextEvent();
 			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
+			if (this.dirtyHosts != null && this.dirtyHosts.size() > 0) {
+				updateDirtyHosts();
+			}
+			else {
+				updateHosts(); // update all hosts after every event
+			}
 			setNextEventQueue();
 		}
 
@@ -189,6 +411,57 @@ public class World {
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
 		}
+
+		if (this.activityMonitor != null) {
+			int count = this.activityMonitor.getCount();
+			if (count == this.lastActivityCount) {
+				this.idleIntervals++;
+			}
+			else {
+				this.idleIntervals = 0;
+				this.lastActivityCount = count;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the clock may jump over idle update intervals before
+	 * the next update
+	 * @return true if idle intervals can be skipped
+	 */
+	private boolean canSkipIntervals() {
+		return this.activityMonitor != null && this.updateListeners.isEmpty()
+			&& this.idleIntervals >= IDLE_INTERVALS_BEFORE_ADVANCE;
+	}
+
+	/**
+	 * Advances the simulation clock over the update intervals that end
+	 * before the next external event or the next time any router needs an
+	 * update. The clock is advanced in the same steps as in normal updates
+	 * (and the update order is shuffled for every skipped step) so the
+	 * results are identical to running every update interval.
+	 */
+	private void skipIdleIntervals() {
+		setNextEventQueue();
+		double due = this.nextQueueEventTime;
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			double wakeup = hosts.get(i).getRouter().getNextWakeupTime();
+			if (wakeup < due) {
+				due = wakeup;
+			}
+		}
+
+		/* leave one whole interval of margin for rounding errors */
+		double time = SimClock.getTime();
+		while (time + 2 * this.updateInterval < due &&
+				time + this.updateInterval < this.endTime) {
+			time += this.updateInterval;
+			if (this.updateOrder != null) {
+				simClock.setTime(time);
+				shuffleUpdateOrder();
+			}
+		}
+		simClock.setTime(time);
 	}
 
 	/**
@@ -198,25 +471,155 @@ public class World {
 	 */
 	private void updateHosts() {
 		if (this.updateOrder == null) { // randomizing is off
+			startDiscovery(hosts);
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				hosts.get(i).update(simulateConnections);
+				updateHost(hosts.get(i));
 			}
 		}
 		else { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() : 
 				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
+			shuffleUpdateOrder();
+			startDiscovery(this.updateOrder);
 			for (int i=0, n = hosts.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				updateHost(this.updateOrder.get(i));
 			}			
 		}
+		endDiscovery();
+	}
+
+	/**
+	 * Updates the hosts marked dirty by the latest event and the hosts that
+	 * had ongoing transfers after their previous update. The hosts are
+	 * updated in the order they were marked.
+	 */
+	private void updateDirtyHosts() {
+		this.hostsToUpdate.addAll(this.dirtyHosts);
+		for (DTNHost host : this.transferringHosts) {
+			if (!this.dirtyHosts.contains(host)) {
+				this.hostsToUpdate.add(host);
+			}
+		}
+		this.dirtyHosts.clear();
+
+		startDiscovery(this.hostsToUpdate);
+		for (int i=0, n = this.hostsToUpdate.size(); i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			updateHost(this.hostsToUpdate.get(i));
+		}
+		endDiscovery();
+		this.hostsToUpdate.clear();
+	}
+
+	/**
+	 * Runs the first phase of two-phase neighbor discovery (if it is
+	 * enabled): updates the grid locations of the active hosts' interfaces
+	 * in the given order and finds the interfaces in range of them
+	 * @param hostList The hosts in the order they are going to be updated
+	 */
+	private void startDiscovery(List<DTNHost> hostList) {
+		if (this.discoveryOptimizers == null) {
+			return;
+		}
+
+		for (int i=0, n = hostList.size(); i < n; i++) {
+			DTNHost host = hostList.get(i);
+			if (!host.isActive()) {
+				continue; // inactive hosts are not updated
+			}
+			for (NetworkInterface ni : host.getInterfaces()) {
+				ConnectivityOptimizer optimizer = ni.getOptimizer();
+				if (!optimizer.supportsDiscovery()) {
+					continue;
+				}
+				if (this.discoveryOptimizers.add(optimizer)) {
+					optimizer.startDiscovery();
+				}
+				optimizer.updateLocationForDiscovery(ni);
+			}
+		}
+
+		for (ConnectivityOptimizer optimizer : this.discoveryOptimizers) {
+			optimizer.findInterfacesInRange(this.discoveryPool);
+		}
+	}
+
+	/**
+	 * Ends the neighbor discovery round started with
+	 * {@link #startDiscovery(List)}
+	 */
+	private void endDiscovery() {
+		if (this.discoveryOptimizers == null) {
+			return;
+		}
+		for (ConnectivityOptimizer optimizer : this.discoveryOptimizers) {
+			optimizer.endDiscovery();
+		}
+		this.discoveryOptimizers.clear();
+	}
+
+	/**
+	 * Updates a single host and, if dirty host updates are used, keeps
+	 * track of whether the host has ongoing transfers after the update
+	 * @param host The host to update
+	 */
+	private void updateHost(DTNHost host) {
+		host.update(simulateConnections);
+
+		if (this.transferringHosts == null) {
+			return;
+		}
+		if (hasTransfers(host)) {
+			this.transferringHosts.add(host);
+		}
+		else {
+			this.transferringHosts.remove(host);
+		}
+	}
+
+	/**
+	 * Returns true if any of the host's connections has a message on fly
+	 * (including transfers that have not been finalized yet)
+	 * @param host The host to check
+	 * @return true if the host has ongoing transfers
+	 */
+	private boolean hasTransfers(DTNHost host) {
+		List<Connection> connections = host.getConnections();
+		for (int i=0, n = connections.size(); i < n; i++) {
+			if (connections.get(i).getMessage() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks a host to be updated after the external event that is being
+	 * processed. Has no effect unless dirty host updates are enabled
+	 * (see {@link #DIRTY_HOST_UPDATES_S}).
+	 * @param host The host that was touched by the event
+	 */
+	public void markDirty(DTNHost host) {
+		if (this.dirtyHosts != null) {
+			this.dirtyHosts.add(host);
+		}
+	}
+
+	/**
+	 * Shuffles the update order of the hosts using the current (integer)
+	 * simulation time as the seed
+	 */
+	private void shuffleUpdateOrder() {
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng);
 	}
 
 	/**
@@ -224,12 +627,68 @@ public class World {
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.movementPool != null && canMoveHostsInParallel()) {
+			this.movementPool.invoke(new MoveTask(0, hosts.size(),
+					timeIncrement));
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
 	}
 
+	/**
+	 * Returns true if all hosts can be moved in parallel
+	 * @return true if all hosts can be moved in parallel
+	 */
+	private boolean canMoveHostsInParallel() {
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			if (!hosts.get(i).canMoveInParallel()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Task that moves a range of hosts, splitting the range into subtasks
+	 * if it is large
+	 */
+	private class MoveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+		private double timeIncrement;
+
+		/**
+		 * Constructor.
+		 * @param from Index of the first host to move
+		 * @param to Index of the last host to move + 1
+		 * @param timeIncrement The time how long the hosts should move
+		 */
+		public MoveTask(int from, int to, double timeIncrement) {
+			this.from = from;
+			this.to = to;
+			this.timeIncrement = timeIncrement;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= MOVEMENT_TASK_SIZE) {
+				for (int i = from; i < to; i++) {
+					hosts.get(i).move(timeIncrement);
+				}
+				return;
+			}
+
+			int middle = (from + to) / 2;
+			invokeAll(new MoveTask(from, middle, timeIncrement),
+					new MoveTask(middle, to, timeIncrement));
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -286,5 +745,54 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		eventCalendar.queueChanged(scheduledUpdates);
+	}
+	/**
+	 * Counts message and connection events. Used for detecting update
+	 * intervals where nothing happens.
+	 */
+	private static class ActivityMonitor implements MessageListener,
+			ConnectionListener {
+		private int count;
+
+		/**
+		 * Returns the number of events seen so far
+		 * @return the number of events seen so far
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		public void newMessage(Message m) {
+			count++;
+		}
+
+		public void messageTransferStarted(Message m, DTNHost from,
+				DTNHost to) {
+			count++;
+		}
+
+		public void messageDeleted(Message m, DTNHost where,
+				boolean dropped) {
+			count++;
+		}
+
+		public void messageTransferAborted(Message m, DTNHost from,
+				DTNHost to) {
+			count++;
+		}
+
+		public void messageTransferred(Message m, DTNHost from, DTNHost to,
+				boolean firstDelivery) {
+			count++;
+		}
+
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			count++;
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			count++;
+		}
 	}
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a compact binary trace file created with
+ * {@link BinaryTraceWriter}. Unlike the files of {@link BinaryEventsReader},
+ * the trace files don't depend on the serialized form of the event classes,
+ * take only a fraction of the space of the text traces, and support seeking
+ * to a start time.
+ * </P>
+ * <P>
+ * Format (version {@value #VERSION}, all fixed size values big-endian):<BR>
+ * <TT>
+ * header: magic ({@value #MAGIC}) version(int)<BR>
+ * blocks: [nrofEvents(varint) timeScale(byte) events...]...<BR>
+ * string table: nrofStrings(varint) [length(varint) UTF-8 bytes]...<BR>
+ * block index: nrofBlocks(varint)
+ * [offset(long) length(int) firstTime(double) nrofEvents(int)]...<BR>
+ * footer: stringTableOffset(long) indexOffset(long) nrofEvents(long)
+ * </TT>
+ * </P><P>
+ * Every event starts with a type byte and the time. If the time scale of
+ * the block is 0-9, the times are stored as zigzag-encoded varint
+ * differences of the times multiplied by 10^timeScale (the first one is
+ * relative to zero). Otherwise the times are stored as doubles. The type
+ * byte is followed by the host addresses (varints), the index of the
+ * message id or the index of the interface id plus one (0 for no interface)
+ * in the string table (varint), and, for message creation events, the size
+ * and the response size (varints).
+ * </P>
+ */
+public class BinaryTraceReader implements ExternalEventsReader {
+	/** Magic string in the beginning of the trace files ({@value}) */
+	public static final String MAGIC = "ONETRACE";
+	/** Version of the trace file format ({@value}) */
+	public static final int VERSION = 1;
+	/** Extension of the binary trace files ({@value}) */
+	public static final String TRACE_EXT = ".bintrace";
+
+	/** time scale value for blocks whose times are stored as doubles */
+	static final int RAW_TIMES = 0xFF;
+	/** size of the footer in bytes */
+	static final int FOOTER_SIZE = 24;
+
+	/** event type codes */
+	static final int CONN_DOWN = 0;
+	static final int CONN_UP = 1;
+	static final int CREATE = 2;
+	static final int SEND = 3;
+	static final int DELIVERED = 4;
+	static final int ABORT = 5;
+	static final int DROP = 6;
+	static final int REMOVE = 7;
+
+	/** exact powers of ten for the time scales */
+	static final double[] SCALES = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+		1e8, 1e9};
+
+	private RandomAccessFile file;
+	private String[] strings;
+	private long[] blockOffsets;
+	private int[] blockLengths;
+	private double[] blockTimes;
+	private long nrofEvents;
+
+	/** index of the next block to load */
+	private int nextBlock;
+	/** the loaded block and the decoding state */
+	private byte[] block;
+	private int pos;
+	private int eventsLeftInBlock;
+	private int timeScale;
+	private long ticks;
+	/** events before this time are skipped */
+	private double startTime;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public BinaryTraceReader(File eventsFile) {
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			readHeader(eventsFile);
+
+			file.seek(file.length() - FOOTER_SIZE);
+			long stringTableOffset = file.readLong();
+			long indexOffset = file.readLong();
+			this.nrofEvents = file.readLong();
+
+			/* the string table and the index are read in one go */
+			byte[] tail = new byte[(int)(file.length() - FOOTER_SIZE -
+					stringTableOffset)];
+			file.seek(stringTableOffset);
+			file.readFully(tail);
+			this.block = tail;
+			this.pos = 0;
+			readStringTable();
+			this.pos = (int)(indexOffset - stringTableOffset);
+			readIndex();
+		} catch (IOException e) {
+			throw new SimError("Invalid binary trace file " +
+					eventsFile.getAbsolutePath(), e);
+		}
+
+		this.block = new byte[0];
+		this.pos = 0;
+		this.eventsLeftInBlock = 0;
+		this.nextBlock = 0;
+		this.startTime = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Checks if the given file is a binary trace file
+	 * @param file The file to check
+	 * @return True if the file starts with the trace file magic string
+	 */
+	public static boolean isTraceFile(File file) {
+		byte[] magic = new byte[MAGIC.length()];
+		try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+			if (f.length() < magic.length) {
+				return false;
+			}
+			f.readFully(magic);
+		} catch (IOException e) {
+			return false;
+		}
+		return Arrays.equals(magic, MAGIC.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Moves the reader so that the next event read is the first event whose
+	 * time is at least the given time. Only the block that contains the
+	 * time is decoded.
+	 * @param time The time to seek to
+	 */
+	public void seek(double time) {
+		/* the last block that starts before the time */
+		int index = Arrays.binarySearch(blockTimes, time);
+		if (index < 0) {
+			index = -index - 2;
+		}
+		else {
+			while (index > 0 && blockTimes[index - 1] == time) {
+				index--; // events with the same time may span blocks
+			}
+			index--;
+		}
+		this.nextBlock = Math.max(index, 0);
+		this.eventsLeftInBlock = 0;
+		this.startTime = time;
+	}
+
+	/**
+	 * Returns the total number of events in the trace
+	 * @return The number of events
+	 */
+	public long getNrofEvents() {
+		return this.nrofEvents;
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+
+		try {
+			while (events.size() < nrof) {
+				if (eventsLeftInBlock == 0) {
+					if (nextBlock == blockOffsets.length) {
+						break; // all events read
+					}
+					loadBlock(nextBlock++);
+				}
+				ExternalEvent ee = readEvent();
+				if (ee.getTime() >= startTime) {
+					events.add(ee);
+				}
+			}
+		} catch (IOException e) {
+			throw new SimError(e);
+		} catch (RuntimeException e) {
+			throw new SimError("Corrupted binary trace file", e);
+		}
+
+		return events;
+	}
+
+	private void readHeader(File eventsFile) throws IOException {
+		if (!isTraceFile(eventsFile)) {
+			throw new IOException("Not a binary trace file");
+		}
+		file.seek(MAGIC.length());
+		int version = file.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported trace file version " + version);
+		}
+	}
+
+	private void readStringTable() {
+		int nrof = readVarInt();
+		this.strings = new String[nrof];
+		for (int i = 0; i < nrof; i++) {
+			int length = readVarInt();
+			strings[i] = new String(block, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+		}
+	}
+
+	private void readIndex() {
+		int nrof = readVarInt();
+		this.blockOffsets = new long[nrof];
+		this.blockLengths = new int[nrof];
+		this.blockTimes = new double[nrof];
+		for (int i = 0; i < nrof; i++) {
+			blockOffsets[i] = readLong();
+			blockLengths[i] = readInt();
+			blockTimes[i] = Double.longBitsToDouble(readLong());
+			readInt(); // number of events in the block
+		}
+	}
+
+	/**
+	 * Reads a block of events to memory
+	 * @param index Index of the block
+	 */
+	private void loadBlock(int index) throws IOException {
+		int length = blockLengths[index];
+		if (block.length < length) {
+			block = new byte[length];
+		}
+		file.seek(blockOffsets[index]);
+		file.readFully(block, 0, length);
+		pos = 0;
+		eventsLeftInBlock = readVarInt();
+		timeScale = block[pos++] & 0xFF;
+		ticks = 0;
+	}
+
+	/**
+	 * Decodes the next event of the loaded block
+	 * @return The event
+	 */
+	private ExternalEvent readEvent() {
+		int type = block[pos++];
+		double time;
+		if (timeScale == RAW_TIMES) {
+			time = Double.longBitsToDouble(readLong());
+		}
+		else {
+			long delta = readVarLong();
+			ticks += (delta >>> 1) ^ -(delta & 1);
+			time = ticks / SCALES[timeScale];
+		}
+		eventsLeftInBlock--;
+
+		int from = readVarInt();
+		if (type == DROP || type == REMOVE) {
+			return new MessageDeleteEvent(from, strings[readVarInt()], time,
+					type == DROP);
+		}
+
+		int to = readVarInt();
+		switch (type) {
+		case CONN_DOWN:
+		case CONN_UP:
+			int interfaceIndex = readVarInt();
+			return new ConnectionEvent(from, to, interfaceIndex == 0 ? null :
+				strings[interfaceIndex - 1], type == CONN_UP, time);
+		case CREATE:
+			String id = strings[readVarInt()];
+			int size = readVarInt();
+			return new MessageCreateEvent(from, to, id, size, readVarInt(),
+					time);
+		case SEND:
+			return new MessageRelayEvent(from, to, strings[readVarInt()], time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(from, to, strings[readVarInt()], time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(from, to, strings[readVarInt()], time,
+					MessageRelayEvent.ABORTED);
+		default:
+			throw new SimError("Unknown event type " + type);
+		}
+	}
+
+	private int readVarInt() {
+		return (int)readVarLong();
+	}
+
+	private long readVarLong() {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = block[pos++];
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private int readInt() {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (block[pos++] & 0xFF);
+		}
+		return value;
+	}
+
+	private long readLong() {
+		return ((long)readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+	}
+
+	public void close() {
+		try {
+			this.file.close();
+		}
+		catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+}
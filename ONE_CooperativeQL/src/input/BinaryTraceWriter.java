@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * Writes external events to a binary trace file that can be read with
+ * {@link BinaryTraceReader}. The events must be written in the order of
+ * their times. Can also be run from the command line for converting
+ * standard-format event files to binary trace files:<BR>
+ * <TT>java input.BinaryTraceWriter &lt;input file&gt; [output file]</TT>
+ */
+public class BinaryTraceWriter {
+	/** Default number of events in a block ({@value}) */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	private DataOutputStream out;
+	private long offset;
+	private int blockSize;
+	private List<ExternalEvent> events;
+	private double lastTime;
+	private long nrofEvents;
+
+	/** the strings of the string table and their indices */
+	private List<String> strings;
+	private HashMap<String, Integer> stringIndices;
+
+	/** the block index */
+	private List<long[]> blocks;
+
+	/** buffer where the blocks are encoded */
+	private ByteArrayOutputStream blockBytes;
+
+	/**
+	 * Creates a writer that writes blocks of the default size
+	 * @param fileName Path to the file where the events are written to
+	 * @throws IOException if the file can't be created
+	 */
+	public BinaryTraceWriter(String fileName) throws IOException {
+		this(fileName, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a writer
+	 * @param fileName Path to the file where the events are written to
+	 * @param blockSize Number of events in a block
+	 * @throws IOException if the file can't be created
+	 */
+	public BinaryTraceWriter(String fileName, int blockSize)
+			throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName)));
+		this.blockSize = blockSize;
+		this.events = new ArrayList<ExternalEvent>(blockSize);
+		this.lastTime = Double.NEGATIVE_INFINITY;
+		this.strings = new ArrayList<String>();
+		this.stringIndices = new HashMap<String, Integer>();
+		this.blocks = new ArrayList<long[]>();
+		this.blockBytes = new ByteArrayOutputStream();
+
+		out.write(BinaryTraceReader.MAGIC.getBytes(StandardCharsets.US_ASCII));
+		out.writeInt(BinaryTraceReader.VERSION);
+		offset = out.size();
+	}
+
+	/**
+	 * Writes an event to the trace
+	 * @param ee The event
+	 * @throws IOException if the writing fails
+	 * @throws SimError if the event is earlier than the previous event
+	 */
+	public void write(ExternalEvent ee) throws IOException {
+		if (ee.getTime() < lastTime) {
+			throw new SimError("Event " + ee + " is earlier than the " +
+					"previous event (" + lastTime + ")");
+		}
+		lastTime = ee.getTime();
+		events.add(ee);
+		nrofEvents++;
+		if (events.size() == blockSize) {
+			writeBlock();
+		}
+	}
+
+	/**
+	 * Writes a list of events to the trace
+	 * @param events The events
+	 * @throws IOException if the writing fails
+	 */
+	public void write(List<ExternalEvent> events) throws IOException {
+		for (ExternalEvent ee : events) {
+			write(ee);
+		}
+	}
+
+	/**
+	 * Writes the rest of the events, the string table and the block index
+	 * and closes the file
+	 * @throws IOException if the writing fails
+	 */
+	public void close() throws IOException {
+		if (events.size() > 0) {
+			writeBlock();
+		}
+
+		long stringTableOffset = offset;
+		blockBytes.reset();
+		DataOutputStream table = new DataOutputStream(blockBytes);
+		writeVarLong(table, strings.size());
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(table, bytes.length);
+			table.write(bytes);
+		}
+		long indexOffset = stringTableOffset + blockBytes.size();
+		writeVarLong(table, blocks.size());
+		for (long[] b : blocks) {
+			table.writeLong(b[0]);
+			table.writeInt((int)b[1]);
+			table.writeLong(b[2]);
+			table.writeInt((int)b[3]);
+		}
+		blockBytes.writeTo(out);
+
+		out.writeLong(stringTableOffset);
+		out.writeLong(indexOffset);
+		out.writeLong(nrofEvents);
+		out.close();
+	}
+
+	/**
+	 * Encodes the buffered events to a block and writes it to the file
+	 */
+	private void writeBlock() throws IOException {
+		int timeScale = findTimeScale();
+		blockBytes.reset();
+		DataOutputStream block = new DataOutputStream(blockBytes);
+		writeVarLong(block, events.size());
+		block.writeByte(timeScale);
+
+		long ticks = 0;
+		for (ExternalEvent ee : events) {
+			block.writeByte(getType(ee));
+			if (timeScale == BinaryTraceReader.RAW_TIMES) {
+				block.writeLong(Double.doubleToLongBits(ee.getTime()));
+			}
+			else {
+				long t = Math.round(ee.getTime() *
+						BinaryTraceReader.SCALES[timeScale]);
+				long delta = t - ticks;
+				writeVarLong(block, (delta << 1) ^ (delta >> 63));
+				ticks = t;
+			}
+			writeFields(block, ee);
+		}
+
+		double firstTime = events.get(0).getTime();
+		blocks.add(new long[] {offset, blockBytes.size(),
+				Double.doubleToLongBits(firstTime), events.size()});
+		blockBytes.writeTo(out);
+		offset += blockBytes.size();
+		events.clear();
+	}
+
+	/**
+	 * Finds the smallest time scale with which all the times of the
+	 * buffered events can be stored exactly
+	 * @return The time scale or {@link BinaryTraceReader#RAW_TIMES} if
+	 * there's no such time scale
+	 */
+	private int findTimeScale() {
+		for (int scale = 0; scale < BinaryTraceReader.SCALES.length; scale++) {
+			double multiplier = BinaryTraceReader.SCALES[scale];
+			boolean exact = true;
+			for (int i = 0, n = events.size(); exact && i < n; i++) {
+				double time = events.get(i).getTime();
+				long t = Math.round(time * multiplier);
+				exact = Math.abs(t) < (1L << 53) && t / multiplier == time;
+			}
+			if (exact) {
+				return scale;
+			}
+		}
+		return BinaryTraceReader.RAW_TIMES;
+	}
+
+	private int getType(ExternalEvent ee) {
+		if (ee instanceof ConnectionEvent) {
+			return ((ConnectionEvent)ee).isUp ? BinaryTraceReader.CONN_UP :
+				BinaryTraceReader.CONN_DOWN;
+		}
+		else if (ee instanceof MessageCreateEvent) {
+			return BinaryTraceReader.CREATE;
+		}
+		else if (ee instanceof MessageDeleteEvent) {
+			return ((MessageDeleteEvent)ee).isDrop() ? BinaryTraceReader.DROP :
+				BinaryTraceReader.REMOVE;
+		}
+		else if (ee instanceof MessageRelayEvent) {
+			switch (((MessageRelayEvent)ee).getStage()) {
+			case MessageRelayEvent.SENDING:
+				return BinaryTraceReader.SEND;
+			case MessageRelayEvent.TRANSFERRED:
+				return BinaryTraceReader.DELIVERED;
+			case MessageRelayEvent.ABORTED:
+				return BinaryTraceReader.ABORT;
+			}
+		}
+		throw new SimError("Can't store event " + ee + " to a binary trace");
+	}
+
+	private void writeFields(DataOutputStream block, ExternalEvent ee)
+			throws IOException {
+		if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			writeVarLong(block, ce.fromAddr);
+			writeVarLong(block, ce.toAddr);
+			writeVarLong(block, ce.interfaceId == null ? 0 :
+				getStringIndex(ce.interfaceId) + 1);
+			return;
+		}
+
+		MessageEvent me = (MessageEvent)ee;
+		writeVarLong(block, me.fromAddr);
+		if (!(me instanceof MessageDeleteEvent)) {
+			writeVarLong(block, me.toAddr);
+		}
+		writeVarLong(block, getStringIndex(me.id));
+		if (me instanceof MessageCreateEvent) {
+			MessageCreateEvent mce = (MessageCreateEvent)me;
+			writeVarLong(block, mce.getSize());
+			writeVarLong(block, mce.getResponseSize());
+		}
+	}
+
+	private int getStringIndex(String s) {
+		Integer index = stringIndices.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.add(s);
+			stringIndices.put(s, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes an int (as an unsigned value) or a non-negative long as
+	 * a varint
+	 */
+	private static void writeVarLong(DataOutputStream out, long value)
+			throws IOException {
+		if (value < 0 && value >= Integer.MIN_VALUE) {
+			value &= 0xFFFFFFFFL; // negative int
+		}
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Converts a standard-format external events file to a binary trace
+	 * @param args The input file and, optionally, the output file (default
+	 * is the input file with the {@link BinaryTraceReader#TRACE_EXT}
+	 * extension)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: java input.BinaryTraceWriter " +
+					"<input file> [output file]");
+			System.exit(1);
+		}
+		String outFile = args.length > 1 ? args[1] :
+			args[0] + BinaryTraceReader.TRACE_EXT;
+
+		long start = System.currentTimeMillis();
+		ExternalEventsReader reader = new MappedEventsReader(new File(args[0]));
+		BinaryTraceWriter writer = new BinaryTraceWriter(outFile);
+		List<ExternalEvent> events;
+		while ((events = reader.readEvents(DEFAULT_BLOCK_SIZE)).size() > 0) {
+			writer.write(events);
+		}
+		reader.close();
+		writer.close();
+
+		System.out.println("Wrote " + writer.nrofEvents + " events to " +
+				outFile + " (" + new File(outFile).length() + " bytes) in " +
+				(System.currentTimeMillis() - start) / 1000.0 + "s");
+	}
+}
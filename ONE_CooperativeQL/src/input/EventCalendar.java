@@ -0,0 +1,251 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Event calendar that merges multiple event queues into one. The queues are
+ * kept in a binary heap keyed by their next event's time, so finding and
+ * dispatching the next event costs O(log n) for n queues. Events with the
+ * same time are returned in the order the queues were added.
+ * <P>
+ * Queues of the known event sources ({@link ExternalEventsQueue},
+ * {@link MessageEventGenerator} and {@link ScheduledUpdatesQueue}) are
+ * assumed to change their next event's time only when an event is taken
+ * from them, or when the change is reported with
+ * {@link #queueChanged(EventQueue)}. All other queues are checked on every
+ * call.
+ */
+public class EventCalendar implements EventQueue {
+	/** the heap of predictable queues */
+	private List<Entry> heap;
+	/** queues whose next event time may change at any time */
+	private List<Entry> polled;
+	/** heap entries of the predictable queues */
+	private Map<EventQueue, Entry> heapEntries;
+	/** number of queues added so far (used for tie-breaking) */
+	private int nrofQueues;
+
+	/**
+	 * Creates an empty calendar
+	 */
+	public EventCalendar() {
+		this.heap = new ArrayList<Entry>();
+		this.polled = new ArrayList<Entry>();
+		this.heapEntries = new IdentityHashMap<EventQueue, Entry>();
+		this.nrofQueues = 0;
+	}
+
+	/**
+	 * Adds an event queue to the calendar. If multiple queues have events
+	 * with the same time, the events of the queue that was added first are
+	 * returned first.
+	 * @param eq The queue to add
+	 */
+	public void addQueue(EventQueue eq) {
+		addQueue(eq, isPredictable(eq));
+	}
+
+	/**
+	 * Adds an event queue to the calendar.
+	 * @param eq The queue to add
+	 * @param predictable If true, the queue's next event time must change
+	 * only when an event is taken from it or when the change is reported
+	 * with {@link #queueChanged(EventQueue)}. If false, the time is checked
+	 * on every call.
+	 * @see #addQueue(EventQueue)
+	 */
+	public void addQueue(EventQueue eq, boolean predictable) {
+		Entry e = new Entry(eq, this.nrofQueues++);
+		if (predictable) {
+			e.index = heap.size();
+			heap.add(e);
+			siftUp(e.index);
+			heapEntries.put(eq, e);
+		}
+		else {
+			polled.add(e);
+		}
+	}
+
+	/**
+	 * Tells the calendar that the next event time of a queue may have
+	 * changed without taking an event from it (e.g., a new update was
+	 * scheduled to a {@link ScheduledUpdatesQueue}).
+	 * @param eq The queue whose time may have changed
+	 */
+	public void queueChanged(EventQueue eq) {
+		Entry e = heapEntries.get(eq);
+		if (e != null) {
+			rekey(e);
+		}
+	}
+
+	/**
+	 * Returns the next event from the queue that has the earliest event
+	 * (or an ExternalEvent with time Double.MAX_VALUE if there are no events
+	 * left)
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		Entry e = nextEntry();
+		if (e == null) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ExternalEvent ee = e.queue.nextEvent();
+		if (e.index >= 0) {
+			rekey(e);
+		}
+		return ee;
+	}
+
+	/**
+	 * Returns the time of the earliest event in any of the queues
+	 * @return The next event's time or Double.MAX_VALUE if there are no
+	 * events left
+	 */
+	public double nextEventsTime() {
+		Entry e = nextEntry();
+		if (e == null) {
+			return Double.MAX_VALUE;
+		}
+		return e.time;
+	}
+
+	/**
+	 * Returns the entry of the queue that has the next event
+	 * @return the entry with the next event or null if there are no queues
+	 */
+	private Entry nextEntry() {
+		Entry next = null;
+
+		if (heap.size() > 0) {
+			/* make sure the root's time is still valid */
+			Entry root = heap.get(0);
+			while (root.time != root.queue.nextEventsTime()) {
+				rekey(root);
+				root = heap.get(0);
+			}
+			next = root;
+		}
+
+		for (int i=0, n=polled.size(); i<n; i++) {
+			Entry e = polled.get(i);
+			e.time = e.queue.nextEventsTime();
+			if (next == null || e.compareTo(next) < 0) {
+				next = e;
+			}
+		}
+
+		return next;
+	}
+
+	/**
+	 * Updates an entry's time and moves it to the right place in the heap
+	 * @param e The entry to update
+	 */
+	private void rekey(Entry e) {
+		double old = e.time;
+		e.time = e.queue.nextEventsTime();
+		if (e.time < old) {
+			siftUp(e.index);
+		}
+		else {
+			siftDown(e.index);
+		}
+	}
+
+	private void siftUp(int i) {
+		Entry e = heap.get(i);
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			Entry p = heap.get(parent);
+			if (p.compareTo(e) <= 0) {
+				break;
+			}
+			set(i, p);
+			i = parent;
+		}
+		set(i, e);
+	}
+
+	private void siftDown(int i) {
+		Entry e = heap.get(i);
+		int n = heap.size();
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n &&
+					heap.get(child + 1).compareTo(heap.get(child)) < 0) {
+				child++;
+			}
+			Entry c = heap.get(child);
+			if (e.compareTo(c) <= 0) {
+				break;
+			}
+			set(i, c);
+			i = child;
+		}
+		set(i, e);
+	}
+
+	private void set(int i, Entry e) {
+		heap.set(i, e);
+		e.index = i;
+	}
+
+	/**
+	 * Returns true if the queue's next event time can only change when an
+	 * event is taken from it (or when told with
+	 * {@link #queueChanged(EventQueue)})
+	 * @param eq The queue to check
+	 * @return true for queues that can be kept in the heap
+	 */
+	private static boolean isPredictable(EventQueue eq) {
+		return eq instanceof ExternalEventsQueue ||
+			eq instanceof MessageEventGenerator ||
+			eq instanceof ScheduledUpdatesQueue;
+	}
+
+	public String toString() {
+		return "EventCalendar with " + nrofQueues + " queues, next event @ " +
+			nextEventsTime();
+	}
+
+	/**
+	 * A queue and its cached next event time
+	 */
+	private static class Entry implements Comparable<Entry> {
+		private EventQueue queue;
+		private double time;
+		private int order;
+		/** index in the heap (-1 for polled queues) */
+		private int index;
+
+		public Entry(EventQueue queue, int order) {
+			this.queue = queue;
+			this.order = order;
+			this.time = queue.nextEventsTime();
+			this.index = -1;
+		}
+
+		public int compareTo(Entry other) {
+			if (this.time < other.time) {
+				return -1;
+			}
+			else if (this.time > other.time) {
+				return 1;
+			}
+			return this.order - other.order;
+		}
+	}
+}
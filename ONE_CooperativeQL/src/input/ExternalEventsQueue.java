@@ -21,6 +21,10 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** time of the first event to read -setting id ({@value}). Events
+	 * before this time are skipped. Binary trace files seek directly to the
+	 * time. */
+	public static final String START_TIME_SETTING = "startTime";
 	
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
@@ -31,12 +35,16 @@ public class ExternalEventsQueue implements EventQueue {
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
+	private double startTime = 0;
 	
 	/**
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
-	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is a binary trace file (see {@link BinaryTraceReader}), it is
+	 * read as such. If file ends with extension defined in
+	 * {@link BinaryEventsReader#BINARY_EXT} the file is assumed to be a
+	 * binary file. Otherwise the file is read with a
+	 * {@link MappedEventsReader}.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
@@ -47,8 +55,9 @@ public class ExternalEventsQueue implements EventQueue {
 	}
 	
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PATH_SETTING} and {@link #START_TIME_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,6 +67,9 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		if (s.contains(START_TIME_SETTING)) {
+			this.startTime = s.getDouble(START_TIME_SETTING);
+		}
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
@@ -77,11 +89,16 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (BinaryTraceReader.isTraceFile(eventsFile)) {
+			BinaryTraceReader traceReader = new BinaryTraceReader(eventsFile);
+			traceReader.seek(startTime);
+			this.reader = traceReader;
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
-			this.reader = new StandardEventsReader(eventsFile);
+			this.reader = new MappedEventsReader(eventsFile);
 		}
 		
 		this.queue = readEvents(nrofPreload);
@@ -151,6 +168,22 @@ public class ExternalEventsQueue implements EventQueue {
 		}
 		
 		List<ExternalEvent> events = reader.readEvents(nrof);
+		while (events.size() > 0 &&
+				events.get(0).getTime() < startTime) {
+			/* skip the events before the start time */
+			int first = 0;
+			while (first < events.size() &&
+					events.get(first).getTime() < startTime) {
+				first++;
+			}
+			if (first < events.size()) {
+				events = new ArrayList<ExternalEvent>(
+						events.subList(first, events.size()));
+			}
+			else {
+				events = reader.readEvents(nrof);
+			}
+		}
 		
 		if (nrof > 0 && events.size() == 0) {
 			reader.close();
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * External events reader for standard-format events that maps the events
+ * file to memory and parses the events directly from the mapped bytes.
+ * The accepted syntax is the same as with {@link StandardEventsReader}, but
+ * no intermediate strings are created for the lines, times, addresses or
+ * sizes, which makes reading large traces considerably faster.
+ * </P>
+ * <P>
+ * Large files are mapped in windows of {@link #DEFAULT_WINDOW_SIZE} bytes.
+ * The file is assumed to be UTF-8 (or ASCII) encoded.
+ * </P>
+ */
+public class MappedEventsReader implements ExternalEventsReader {
+	/** Default size of the mapped window ({@value} bytes) */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+	/** Maximum number of fields that are read from a line */
+	private static final int MAX_FIELDS = 8;
+	/** Powers of ten that can be represented exactly as doubles */
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+		1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+		1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private static final byte[] CREATE = bytes(StandardEventsReader.CREATE);
+	private static final byte[] SEND = bytes(StandardEventsReader.SEND);
+	private static final byte[] DELIVERED =
+		bytes(StandardEventsReader.DELIVERED);
+	private static final byte[] ABORT = bytes(StandardEventsReader.ABORT);
+	private static final byte[] DROP = bytes(StandardEventsReader.DROP);
+	private static final byte[] REMOVE = bytes(StandardEventsReader.REMOVE);
+	private static final byte[] CONNECTION =
+		bytes(StandardEventsReader.CONNECTION);
+	private static final byte[] CONNECTION_UP =
+		bytes(StandardEventsReader.CONNECTION_UP);
+	private static final byte[] CONNECTION_DOWN =
+		bytes(StandardEventsReader.CONNECTION_DOWN);
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long fileSize;
+	private int windowSize;
+	/** the mapped window and its offset in the file */
+	private MappedByteBuffer buffer;
+	private long bufferStart;
+	/** file offset of the next line */
+	private long position;
+	/** true if the previous line ended with '\r' at the end of the window
+	 * and a '\n' following it (in the next window) must be skipped */
+	private boolean skipLineFeed;
+
+	/** bounds of the current line and its fields (relative to the window) */
+	private int lineStart;
+	private int lineEnd;
+	private int[] fieldStarts;
+	private int[] fieldEnds;
+	private int nrofFields;
+	/** buffer for decoding the string fields */
+	private byte[] chars;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public MappedEventsReader(File eventsFile) {
+		this(eventsFile, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 * @param windowSize Number of bytes to map at once (grown automatically
+	 * if a line doesn't fit in the window)
+	 */
+	public MappedEventsReader(File eventsFile, int windowSize) {
+		this.windowSize = windowSize;
+		this.fieldStarts = new int[MAX_FIELDS];
+		this.fieldEnds = new int[MAX_FIELDS];
+		this.chars = new byte[64];
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			this.channel = file.getChannel();
+			this.fileSize = channel.size();
+			map(0);
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+	}
+
+	public List<ExternalEvent> readEvents(int nrof) {
+		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
+		int eventsRead = 0;
+
+		while (eventsRead < nrof && nextLine()) {
+			splitFields();
+			if (nrofFields == 0 || buffer.get(lineStart) == '#') {
+				// skip empty and comment lines
+				continue;
+			}
+
+			try {
+				events.add(parseEvent());
+				eventsRead++;
+			} catch (Exception e) {
+				throw new SimError("Can't parse external event " +
+						(eventsRead+1) + " from '" + getString(lineStart,
+								lineEnd) + "'", e);
+			}
+		}
+
+		return events;
+	}
+
+	/**
+	 * Parses an event from the fields of the current line
+	 * @return The event
+	 */
+	private ExternalEvent parseEvent() {
+		double time = getDouble(0);
+		checkFields(2);
+
+		if (fieldEquals(1, DROP) || fieldEquals(1, REMOVE)) {
+			checkFields(4);
+			return new MessageDeleteEvent(getHostAddress(3), getString(2),
+					time, fieldEquals(1, DROP));
+		}
+		else if (fieldEquals(1, CONNECTION)) {
+			checkFields(5);
+			int hostAddr = getHostAddress(2);
+			int host2Addr = getHostAddress(3);
+			boolean isUp;
+			if (fieldEqualsIgnoreCase(4, CONNECTION_UP)) {
+				isUp = true;
+			}
+			else if (fieldEqualsIgnoreCase(4, CONNECTION_DOWN)) {
+				isUp = false;
+			}
+			else {
+				throw new SimError("Unknown up/down value '" +
+						getString(4) + "'");
+			}
+
+			String interfaceId = null;
+			if (nrofFields > 5) {
+				interfaceId = getString(5);
+			}
+			return new ConnectionEvent(hostAddr, host2Addr, interfaceId,
+					isUp, time);
+		}
+
+		checkFields(5);
+		String msgId = getString(2);
+		int hostAddr = getHostAddress(3);
+		int host2Addr = getHostAddress(4);
+
+		if (fieldEquals(1, CREATE)) {
+			checkFields(6);
+			int size = getInt(5);
+			int respSize = 0;
+			if (nrofFields > 6 && isInt(6)) {
+				respSize = getInt(6);
+			}
+			return new MessageCreateEvent(hostAddr, host2Addr, msgId, size,
+					respSize, time);
+		}
+
+		int stage;
+		if (fieldEquals(1, SEND)) {
+			stage = MessageRelayEvent.SENDING;
+		}
+		else if (fieldEquals(1, DELIVERED)) {
+			stage = MessageRelayEvent.TRANSFERRED;
+		}
+		else if (fieldEquals(1, ABORT)) {
+			stage = MessageRelayEvent.ABORTED;
+		}
+		else {
+			throw new SimError("Unknown action '" + getString(1) +
+					"' in external events");
+		}
+		return new MessageRelayEvent(hostAddr, host2Addr, msgId, time, stage);
+	}
+
+	/**
+	 * Moves to the next line of the file
+	 * @return True if there was a line, false if the end of the file was
+	 * reached
+	 */
+	private boolean nextLine() {
+		if (skipLineFeed) {
+			skipLineFeed = false;
+			if (position < fileSize) {
+				if (position - bufferStart >= buffer.limit()) {
+					map(position);
+				}
+				if (buffer.get((int)(position - bufferStart)) == '\n') {
+					position++;
+				}
+			}
+		}
+		if (position >= fileSize) {
+			return false;
+		}
+
+		int end = (int)(position - bufferStart);
+		while (true) {
+			int limit = buffer.limit();
+			while (end < limit) {
+				byte b = buffer.get(end);
+				if (b == '\n' || b == '\r') {
+					break;
+				}
+				end++;
+			}
+			if (end < limit || bufferStart + limit >= fileSize) {
+				break;
+			}
+			/* the line continues after the window; map it from the start */
+			int lineLength = end - (int)(position - bufferStart);
+			if (lineLength >= windowSize / 2) {
+				windowSize = (int)Math.min(2L * windowSize, Integer.MAX_VALUE);
+			}
+			map(position);
+			end = lineLength;
+		}
+
+		lineStart = (int)(position - bufferStart);
+		lineEnd = end;
+		position = bufferStart + end;
+		if (end < buffer.limit()) { // skip the line terminator
+			position++;
+			if (buffer.get(end) == '\r') {
+				if (end + 1 < buffer.limit()) {
+					if (buffer.get(end + 1) == '\n') {
+						position++;
+					}
+				}
+				else {
+					/* the window ends at '\r'; the line still refers to this
+					 * window, so check for '\n' when reading the next line */
+					skipLineFeed = true;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Maps a window of the file starting from the given offset
+	 * @param start The offset
+	 */
+	private void map(long start) {
+		long size = Math.min(windowSize, fileSize - start);
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+		bufferStart = start;
+	}
+
+	/**
+	 * Finds the whitespace separated fields of the current line
+	 */
+	private void splitFields() {
+		nrofFields = 0;
+		int i = lineStart;
+		while (i < lineEnd && nrofFields < MAX_FIELDS) {
+			while (i < lineEnd && isWhitespace(buffer.get(i))) {
+				i++;
+			}
+			if (i == lineEnd) {
+				break;
+			}
+			fieldStarts[nrofFields] = i;
+			while (i < lineEnd && !isWhitespace(buffer.get(i))) {
+				i++;
+			}
+			fieldEnds[nrofFields] = i;
+			nrofFields++;
+		}
+	}
+
+	private void checkFields(int nrof) {
+		if (nrofFields < nrof) {
+			throw new SimError("Expected at least " + nrof + " fields");
+		}
+	}
+
+	private boolean fieldEquals(int field, byte[] value) {
+		int start = fieldStarts[field];
+		if (fieldEnds[field] - start != value.length) {
+			return false;
+		}
+		for (int i = 0; i < value.length; i++) {
+			if (buffer.get(start + i) != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean fieldEqualsIgnoreCase(int field, byte[] value) {
+		int start = fieldStarts[field];
+		if (fieldEnds[field] - start != value.length) {
+			return false;
+		}
+		for (int i = 0; i < value.length; i++) {
+			if (Character.toLowerCase(buffer.get(start + i)) !=
+					Character.toLowerCase(value[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a decimal number from a field. Plain decimal numbers that can
+	 * be parsed exactly are parsed from the bytes; others (e.g., ones with
+	 * exponents) with {@link Double#parseDouble(String)}.
+	 */
+	private double getDouble(int field) {
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+		boolean negative = false;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = 0;
+		boolean dot = false;
+		for (; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9' && digits < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (dot) {
+					decimals++;
+				}
+			}
+			else if (b == '.' && !dot) {
+				dot = true;
+			}
+			else {
+				digits = -1; // not a plain decimal number
+				break;
+			}
+		}
+
+		if (digits <= 0 || mantissa > (1L << 53) ||
+				decimals >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(getString(field));
+		}
+		double value = mantissa / POWERS_OF_TEN[decimals];
+		return negative ? -value : value;
+	}
+
+	private boolean isInt(int field) {
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			i++;
+		}
+		if (i == end || end - i > 10) {
+			return false;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				return false;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value <= Integer.MAX_VALUE;
+	}
+
+	private int getInt(int field) {
+		if (!isInt(field)) {
+			throw new NumberFormatException("For input string: \"" +
+					getString(field) + "\"");
+		}
+		int i = fieldStarts[field];
+		boolean negative = buffer.get(i) == '-';
+		if (negative || buffer.get(i) == '+') {
+			i++;
+		}
+		int value = 0;
+		for (; i < fieldEnds[field]; i++) {
+			value = value * 10 + (buffer.get(i) - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a host address from a hostId field (the numeric part after
+	 * optional non-numeric part).
+	 * @param field The field to parse the address from
+	 * @return The address
+	 * @throws SimError if no address could be parsed from the id
+	 */
+	private int getHostAddress(int field) {
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		int digitsStart = end;
+		while (digitsStart > start && isDigit(buffer.get(digitsStart - 1))) {
+			digitsStart--;
+		}
+
+		boolean valid = digitsStart < end && end - digitsStart <= 10;
+		for (int i = start; valid && i < digitsStart; i++) {
+			valid = !isDigit(buffer.get(i));
+		}
+		long address = 0;
+		for (int i = digitsStart; valid && i < end; i++) {
+			address = address * 10 + (buffer.get(i) - '0');
+		}
+		if (!valid || address > Integer.MAX_VALUE) {
+			throw new SimError("Invalid host ID '" + getString(field) + "'");
+		}
+		return (int)address;
+	}
+
+	private String getString(int field) {
+		return getString(fieldStarts[field], fieldEnds[field]);
+	}
+
+	private String getString(int start, int end) {
+		int length = end - start;
+		if (length > chars.length) {
+			chars = new byte[Math.max(length, 2 * chars.length)];
+		}
+		for (int i = 0; i < length; i++) {
+			chars[i] = buffer.get(start + i);
+		}
+		return new String(chars, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	public void close() {
+		buffer = null;
+		try {
+			file.close();
+		} catch (IOException e) {
+			throw new SimError(e.getMessage(), e);
+		}
+	}
+}
@@ -31,6 +31,22 @@ public class MessageCreateEvent extends MessageEvent {
 		this.size = size;
 		this.responseSize = responseSize;
 	}
+	
+	/**
+	 * Returns the size of the message
+	 * @return the size of the message
+	 */
+	int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * Returns the size of the requested response message
+	 * @return the size of the requested response message (or 0)
+	 */
+	int getResponseSize() {
+		return this.responseSize;
+	}
 
 	
 	/**
@@ -44,6 +60,7 @@ public class MessageCreateEvent extends MessageEvent {
 		Message m = new Message(from, to, this.id, this.size);
 		m.setResponseSize(this.responseSize);
 		from.createNewMessage(m);
+		world.markDirty(from);
 	}
 	
 	@Override
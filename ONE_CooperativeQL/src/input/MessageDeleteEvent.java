@@ -31,6 +31,14 @@ public class MessageDeleteEvent extends MessageEvent {
 		this.drop = drop;
 	}
 	
+	/**
+	 * Returns true if the delete is caused by a drop
+	 * @return true if the delete is caused by a drop
+	 */
+	boolean isDrop() {
+		return this.drop;
+	}
+	
 	/**
 	 * Deletes the message
 	 */
@@ -49,6 +57,7 @@ public class MessageDeleteEvent extends MessageEvent {
 		} else {
 			host.deleteMessage(id, drop);
 		}
+		world.markDirty(host);
 	}
 
 	@Override
@@ -38,6 +38,14 @@ public class MessageRelayEvent extends MessageEvent {
 		this.stage = stage;
 	}
 	
+	/**
+	 * Returns the stage of the event
+	 * @return the stage (SENDING, TRANSFERRED, or ABORTED)
+	 */
+	int getStage() {
+		return this.stage;
+	}
+	
 	/**
 	 * Relays the message
 	 */
@@ -59,6 +67,8 @@ public class MessageRelayEvent extends MessageEvent {
 		default:
 			assert false : "Invalid stage (" + stage + ") for " + this;
 		}
+		world.markDirty(from);
+		world.markDirty(to);
 	}
 	
 	@Override
@@ -5,8 +5,12 @@
 package interfaces;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import movement.MovementModel;
 
@@ -36,15 +40,55 @@ import core.Settings;
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
  * from zero to conserve memory. 
+ * </P>
+ * <P>
+ * The grid also supports two-phase neighbor discovery (see
+ * {@link #startDiscovery()}): the locations of all interfaces that are going
+ * to be updated are updated first, and then the interfaces in range of each
+ * of them are searched in parallel, one stripe of grid rows per task. When
+ * the interfaces are updated after that, {@link #getNearInterfaces}
+ * returns the interfaces in range in the same order as it would have
+ * returned the near interfaces when every interface updates its location
+ * just before the query. This way the connections are created in the same
+ * order as without the discovery phase.
+ * </P>
+ * <P>
+ * The grid information of the interfaces is indexed by the interfaces'
+ * network addresses, and near interfaces can be visited (see
+ * {@link #forEachNearInterface}) without allocating any objects.
+ * </P>
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
+	/** how many interfaces are searched for in one parallel task */
+	private static final int DISCOVERY_TASK_SIZE = 64;
 	private GridCell[][] cells;
-	private HashMap<NetworkInterface,GridCell> ginterfaces;
+	/** grid entries of the interfaces indexed by the network address */
+	private GridEntry[] entries;
+	/** all interfaces in the grid */
+	private List<NetworkInterface> ginterfaces;
 	private int cellSize;
 	private int rows;
 	private int cols;
 	private static int worldSizeX;
 	private static int worldSizeY;
+	/** sequence number of the next addition to a cell; the interfaces of a
+	 * cell are always in the order of their sequence numbers */
+	private long nextSeqNo;
+	/** number of the latest discovery round */
+	private int discoveryRound;
+	/** is a discovery round going on */
+	private boolean discovering;
+	/** update rank of the next interface in the discovery round */
+	private int nextRank;
+	/** entries of the interfaces updated in the discovery round */
+	private ArrayList<GridEntry> discovered;
+	/** the discovered entries sorted by the row of their cell */
+	private GridEntry[] discoveredByRow;
+	/** reused buffer for counting the discovered entries of each row */
+	private int[] rowStarts;
+	/** reused buffers for sorting the discovered interfaces */
+	private int[] sortCellIndexes;
+	private long[] sortSeqNos;
 
 	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
@@ -77,10 +121,16 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 
 		for (int i=0; i<rows+2; i++) {
 			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
+				this.cells[i][j] = new GridCell(i, j);
 			}
 		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		entries = new GridEntry[0];
+		ginterfaces = new ArrayList<NetworkInterface>();
+		discovered = new ArrayList<GridEntry>();
+		discoveredByRow = new GridEntry[0];
+		rowStarts = new int[rows + 3];
+		sortCellIndexes = new int[0];
+		sortSeqNos = new long[0];
 	}
 
 	/**
@@ -109,7 +159,27 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	public void addInterface(NetworkInterface ni) {
 		GridCell c = cellFromCoord(ni.getLocation());
 		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+
+		int address = ni.getAddress();
+		if (address >= entries.length) {
+			entries = Arrays.copyOf(entries,
+					Math.max(address + 1, 2 * entries.length));
+		}
+		entries[address] = new GridEntry(ni, c, nextSeqNo++);
+		ginterfaces.add(ni);
+	}
+
+	/**
+	 * Returns the grid entry of an interface
+	 * @param ni The interface
+	 * @return The entry or null if the interface is not in the grid
+	 */
+	private GridEntry getEntry(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address >= entries.length) {
+			return null;
+		}
+		return entries[address];
 	}
 
 	/** 
@@ -117,9 +187,10 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		GridEntry e = getEntry(ni);
+		if (e != null) {
+			e.cell.removeInterface(ni);
+			entries[ni.getAddress()] = null;
 		}
 		ginterfaces.remove(ni);
 	}
@@ -139,42 +210,201 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
+		GridEntry e = getEntry(ni);
 		GridCell newCell = cellFromCoord(ni.getLocation());
 
-		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+		if (newCell != e.cell) {
+			e.cell.moveInterface(ni, newCell);
+			e.cell = newCell;
+			e.seqNo = nextSeqNo++;
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Returns true; the grid supports two-phase neighbor discovery
+	 * @return true
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	@Override
+	public boolean supportsDiscovery() {
+		return true;
+	}
+
+	/**
+	 * Starts a new neighbor discovery round. After this, the locations of
+	 * the interfaces that are going to be updated must be updated using
+	 * {@link #updateLocationForDiscovery(NetworkInterface)} in the order the
+	 * interfaces are updated, and then {@link #findInterfacesInRange} must
+	 * be called before updating the interfaces.
+	 */
+	public void startDiscovery() {
+		this.discoveryRound++;
+		this.nextRank = 0;
+		this.discovered.clear();
+		this.discovering = true;
+	}
+
+	/**
+	 * Updates an interface's position in the grid for the discovery round.
+	 * The interface's position before the update is remembered so that the
+	 * interfaces updated before it still see it in its old cell.
+	 * @param ni The interface to update
+	 */
+	public void updateLocationForDiscovery(NetworkInterface ni) {
+		GridEntry e = getEntry(ni);
+		e.prevCell = e.cell;
+		e.prevSeqNo = e.seqNo;
+		e.rank = nextRank++;
+		e.round = discoveryRound;
+		updateLocation(ni);
+		discovered.add(e);
+	}
+
+	/**
+	 * Finds the interfaces that are in range of every interface whose
+	 * location was updated in this discovery round. The interfaces are
+	 * sorted by their row in the grid so that every task searches a
+	 * stripe of rows.
+	 * @param pool The pool to run the search in or null to search in
+	 * the calling thread
+	 */
+	public void findInterfacesInRange(ForkJoinPool pool) {
+		sortDiscoveredByRow();
+		if (pool == null) {
+			findInterfacesInRange(0, discovered.size());
+		}
+		else {
+			pool.invoke(new StripeTask(0, discovered.size()));
+		}
+	}
+
+	/**
+	 * Ends the discovery round. After this, near interfaces are again
+	 * searched on every query.
+	 */
+	public void endDiscovery() {
+		this.discovering = false;
+	}
+
+	/**
+	 * Finds the interfaces in range for a range of the interfaces updated
+	 * in this discovery round
+	 * @param from Index of the first interface's entry
+	 * @param to Index of the last interface's entry + 1
+	 */
+	private void findInterfacesInRange(int from, int to) {
+		for (int i = from; i < to; i++) {
+			GridEntry e = discoveredByRow[i];
+			e.inRange.clear();
+			for (int row = e.cell.row - 1; row <= e.cell.row + 1; row++) {
+				for (int col = e.cell.col - 1; col <= e.cell.col + 1; col++) {
+					ArrayList<NetworkInterface> cellInterfaces =
+						cells[row][col].getInterfaces();
+					for (int j=0, n = cellInterfaces.size(); j < n; j++) {
+						NetworkInterface other = cellInterfaces.get(j);
+						if (other == e.ni || isWithinRange(e.ni, other)) {
+							e.inRange.add(other);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sorts the discovered entries by their row (counting sort that keeps
+	 * the update order within a row)
+	 */
+	private void sortDiscoveredByRow() {
+		int n = discovered.size();
+		if (discoveredByRow.length < n) {
+			discoveredByRow = new GridEntry[Math.max(n,
+					2 * discoveredByRow.length)];
+		}
+
+		Arrays.fill(rowStarts, 0);
+		for (int i=0; i < n; i++) {
+			rowStarts[discovered.get(i).cell.row + 1]++;
+		}
+		for (int row = 1; row < rowStarts.length; row++) {
+			rowStarts[row] += rowStarts[row - 1];
+		}
+		for (int i=0; i < n; i++) {
+			GridEntry e = discovered.get(i);
+			discoveredByRow[rowStarts[e.cell.row]++] = e;
+		}
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Returns true if two interfaces are within each other's radio range
+	 * @param ni The first interface
+	 * @param other The second interface
+	 * @return true if the interfaces are in range
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private static boolean isWithinRange(NetworkInterface ni,
+			NetworkInterface other) {
+		double range = Math.min(ni.getTransmitRange(),
+				other.getTransmitRange());
+		return ni.getLocation().distanceSquared(other.getLocation()) <=
+			range * range;
+	}
+
+	/**
+	 * Returns the interfaces found in range of an interface in the
+	 * discovery round, in the order they would be found from the neighbor
+	 * cells if the locations were updated interface by interface. The
+	 * interface itself is included.
+	 * @param e The grid entry of the interface
+	 * @return The interfaces in range (a list that is reused in the
+	 * following calls)
+	 */
+	private List<NetworkInterface> getDiscoveredInterfaces(GridEntry e) {
+		int n = e.inRange.size();
+		ArrayList<NetworkInterface> near = e.near;
+		if (sortCellIndexes.length < n) {
+			sortCellIndexes = new int[Math.max(n, 2 * sortCellIndexes.length)];
+			sortSeqNos = new long[sortCellIndexes.length];
+		}
+		int[] cellIndexes = sortCellIndexes;
+		long[] seqNos = sortSeqNos;
+		near.clear();
+
+		for (int j=0; j < n; j++) {
+			NetworkInterface other = e.inRange.get(j);
+			GridEntry oe = getEntry(other);
+			GridCell cell = oe.cell;
+			long seqNo = oe.seqNo;
+			if (oe.round == discoveryRound && oe.rank > e.rank) {
+				/* not updated yet at the time of the query */
+				cell = oe.prevCell;
+				seqNo = oe.prevSeqNo;
+			}
+
+			int dRow = cell.row - e.cell.row;
+			int dCol = cell.col - e.cell.col;
+			if (dRow < -1 || dRow > 1 || dCol < -1 || dCol > 1) {
+				continue; // not in a neighbor cell at the time of the query
+			}
+			int cellIndex = (dRow + 1) * 3 + (dCol + 1);
+
+			/* insertion sort by the cell's and the interface's order */
+			int i = near.size();
+			near.add(other);
+			while (i > 0 && (cellIndexes[i-1] > cellIndex ||
+					(cellIndexes[i-1] == cellIndex && seqNos[i-1] > seqNo))) {
+				near.set(i, near.get(i-1));
+				cellIndexes[i] = cellIndexes[i-1];
+				seqNos[i] = seqNos[i-1];
+				i--;
+			}
+			near.set(i, other);
+			cellIndexes[i] = cellIndex;
+			seqNos[i] = seqNo;
+		}
+
+		return near;
 	}
 
+
 	/**
 	 * Get the cell having the specific coordinates
 	 * @param c Coordinates
@@ -195,27 +425,43 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return ginterfaces;
 	}
 
 	/**
-	 * Returns all interfaces using the same technology and channel that are in
-	 * neighboring cells
+	 * Passes all interfaces in the neighboring cells of the interface (and
+	 * the interface itself) to the visitor, cell by cell. During a
+	 * discovery round, only the interfaces found in range are visited.
+	 * The grid must not be modified by the visitor.
 	 */
-	public Collection<NetworkInterface> getNearInterfaces(
-			NetworkInterface netinterf) {
-		ArrayList<NetworkInterface> ni = new ArrayList<NetworkInterface>();
-		ni.clear();
-
-		GridCell loc = (GridCell)ginterfaces.get(netinterf);
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(netinterf.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				ni.addAll(neighbors[i].getInterfaces());
+	public void forEachNearInterface(NetworkInterface netinterf,
+			NeighborVisitor visitor) {
+		GridEntry loc = getEntry(netinterf);
+		if (loc == null) {
+			return;
+		}
+
+		if (discovering && loc.round == discoveryRound) {
+			List<NetworkInterface> near = getDiscoveredInterfaces(loc);
+			for (int i=0, n = near.size(); i < n; i++) {
+				visitor.visit(near.get(i));
+			}
+			return;
+		}
+
+		// +1 due empty cells on both sides of the matrix
+		Coord c = netinterf.getLocation();
+		int row = (int)(c.getY()/cellSize) + 1;
+		int col = (int)(c.getX()/cellSize) + 1;
+		for (int i = row - 1; i <= row + 1; i++) {
+			for (int j = col - 1; j <= col + 1; j++) {
+				ArrayList<NetworkInterface> cellInterfaces =
+					cells[i][j].getInterfaces();
+				for (int k=0, n = cellInterfaces.size(); k < n; k++) {
+					visitor.visit(cellInterfaces.get(k));
+				}
 			}
 		}
-		return ni;
 	}
 
 
@@ -228,6 +474,66 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
 	}
 
+	/**
+	 * Task that finds the interfaces in range for a stripe of grid rows
+	 * (a range of the row-sorted discovery entries), splitting the stripe
+	 * if it has many interfaces
+	 */
+	private class StripeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;
+		private int to;
+
+		public StripeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= DISCOVERY_TASK_SIZE) {
+				findInterfacesInRange(from, to);
+				return;
+			}
+			int middle = (from + to) / 2;
+			invokeAll(new StripeTask(from, middle),
+					new StripeTask(middle, to));
+		}
+	}
+
+	/**
+	 * Grid information of a single interface
+	 */
+	private static class GridEntry {
+		/** the interface */
+		private NetworkInterface ni;
+		/** the cell the interface is in */
+		private GridCell cell;
+		/** sequence number of the interface's addition to the cell */
+		private long seqNo;
+		/** the cell before the update in the latest discovery round */
+		private GridCell prevCell;
+		/** the sequence number before the update in the latest discovery
+		 * round */
+		private long prevSeqNo;
+		/** the discovery round the interface was last updated in */
+		private int round;
+		/** update order of the interface in that discovery round */
+		private int rank;
+		/** interfaces found in range in that discovery round */
+		private ArrayList<NetworkInterface> inRange;
+		/** reused list for the interfaces in range in the update order */
+		private ArrayList<NetworkInterface> near;
+
+		public GridEntry(NetworkInterface ni, GridCell cell, long seqNo) {
+			this.ni = ni;
+			this.cell = cell;
+			this.seqNo = seqNo;
+			this.inRange = new ArrayList<NetworkInterface>();
+			this.near = new ArrayList<NetworkInterface>();
+		}
+	}
+
 	/**
 	 * A single cell in the cell grid. Contains the interfaces that are 
 	 * currently in that part of the grid.
@@ -236,10 +542,15 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		// how large array is initially chosen
 		private static final int EXPECTED_INTERFACE_COUNT = 5;
 		private ArrayList<NetworkInterface> interfaces;
+		/** row and column of the cell in the grid */
+		private int row;
+		private int col;
 
-		private GridCell() {
+		private GridCell(int row, int col) {
 			this.interfaces = new ArrayList<NetworkInterface>(
 					EXPECTED_INTERFACE_COUNT);
+			this.row = row;
+			this.col = col;
 		}
 
 		/**
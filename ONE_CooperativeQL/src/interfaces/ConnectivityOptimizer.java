@@ -1,18 +1,77 @@
-/* 
+/*
  * Copyright 2010 Aalto University, ComNet
- * Released under GPLv3. See LICENSE.txt for details. 
+ * Released under GPLv3. See LICENSE.txt for details.
  */
 package interfaces;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
 
+import core.DTNSim;
 import core.NetworkInterface;
+import core.Settings;
+import core.World;
 
 /**
  * A superclass for schemes for optimizing the location of possible contacts
- * with network interfaces of a specific range
+ * with network interfaces of a specific range. The scheme that is used
+ * can be selected with the {@link #OPTIMIZER_S} setting.
  */
 abstract public class ConnectivityOptimizer {
+	/**
+	 * Connectivity optimizer class -setting id ({@value}) in the
+	 * {@link World#SETTINGS_NS} namespace. Name of the class (in the
+	 * interfaces package) that is used for finding the interfaces near each
+	 * other. Default is {@link #DEF_OPTIMIZER}.
+	 */
+	public static final String OPTIMIZER_S = "connectivityOptimizer";
+	/** default connectivity optimizer class ({@value}) */
+	public static final String DEF_OPTIMIZER = "ConnectivityGrid";
+	/** package where to look for the optimizer classes */
+	private static final String OPTIMIZER_PACKAGE = "interfaces.";
+
+	/** optimizers created so far (other than grids) */
+	private static HashMap<Integer,ConnectivityOptimizer> optimizers;
+
+	static {
+		DTNSim.registerForReset(ConnectivityOptimizer.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		optimizers = new HashMap<Integer,ConnectivityOptimizer>();
+	}
+
+	/**
+	 * Returns the optimizer of the class given in the settings for the
+	 * interfaces with the given key. The same optimizer is returned for all
+	 * calls with the same key.
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @param range The largest radio range of the interfaces
+	 * @return The optimizer for the interfaces
+	 */
+	public static ConnectivityOptimizer getOptimizer(int key, double range) {
+		Settings s = new Settings(World.SETTINGS_NS);
+		String className = DEF_OPTIMIZER;
+		if (s.contains(OPTIMIZER_S)) {
+			className = s.getSetting(OPTIMIZER_S);
+		}
+
+		if (className.equals(DEF_OPTIMIZER)) {
+			return ConnectivityGrid.ConnectivityGridFactory(key, range);
+		}
+
+		ConnectivityOptimizer optimizer = optimizers.get(key);
+		if (optimizer == null) {
+			optimizer = (ConnectivityOptimizer)s.createIntializedObject(
+					OPTIMIZER_PACKAGE + className);
+			optimizers.put(key, optimizer);
+		}
+		return optimizer;
+	}
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -32,17 +91,75 @@ abstract public class ConnectivityOptimizer {
 
 	/**
 	 * Finds all network interfaces that might be located so that they can be
-	 * connected with the network interface
-	 * 
+	 * connected with the network interface. This implementation collects
+	 * the interfaces given by
+	 * {@link #forEachNearInterface(NetworkInterface, NeighborVisitor)}.
+	 *
 	 * @param ni network interface that needs to be connected
 	 * @return A collection of network interfaces within proximity
 	 */
-	abstract public Collection<NetworkInterface> getNearInterfaces(
-			NetworkInterface ni);
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> near =
+			new ArrayList<NetworkInterface>();
+		forEachNearInterface(ni, new NeighborVisitor() {
+			public void visit(NetworkInterface other) {
+				near.add(other);
+			}
+		});
+		return near;
+	}
+
+	/**
+	 * Passes all network interfaces that might be located so that they can
+	 * be connected with the network interface to the visitor, in the same
+	 * order as {@link #getNearInterfaces(NetworkInterface)} returns them.
+	 * Unlike getNearInterfaces, this method doesn't need to create a new
+	 * collection on every call.
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to pass the near interfaces to
+	 */
+	abstract public void forEachNearInterface(NetworkInterface ni,
+			NeighborVisitor visitor);
 
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Returns true if the optimizer supports two-phase neighbor discovery
+	 * (see {@link #startDiscovery()}). This implementation returns false.
+	 * @return true if two-phase neighbor discovery is supported
+	 */
+	public boolean supportsDiscovery() {
+		return false;
+	}
+
+	/**
+	 * Starts a new two-phase neighbor discovery round. This implementation
+	 * does nothing.
+	 */
+	public void startDiscovery() { }
+
+	/**
+	 * Updates the location of a network interface whose connections are
+	 * updated in the current discovery round. Must be called in the order
+	 * the interfaces are updated. This implementation does nothing.
+	 */
+	public void updateLocationForDiscovery(NetworkInterface ni) { }
+
+	/**
+	 * Finds the network interfaces in range of the interfaces updated in the
+	 * current discovery round. This implementation does nothing.
+	 * @param pool The pool to run the search in (null to search in the
+	 * calling thread)
+	 */
+	public void findInterfacesInRange(ForkJoinPool pool) { }
+
+	/**
+	 * Ends the current discovery round. This implementation does nothing.
+	 */
+	public void endDiscovery() { }
 }
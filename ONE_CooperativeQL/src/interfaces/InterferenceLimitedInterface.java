@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.Connection;
 import core.DTNHost;
 import core.NetworkInterface;
@@ -21,6 +19,12 @@ import core.VBRConnection;
 public class InterferenceLimitedInterface extends NetworkInterface {
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
+	/** tries to connect to every interface it visits */
+	private NeighborVisitor connector = new NeighborVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
 
 	public InterferenceLimitedInterface(Settings s) {
 		super(s);
@@ -95,10 +99,7 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		optimizer.forEachNearInterface(this, this.connector);
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
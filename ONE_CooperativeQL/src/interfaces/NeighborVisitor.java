@@ -0,0 +1,21 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package interfaces;
+
+import core.NetworkInterface;
+
+/**
+ * Interface for classes that want to go through the network interfaces
+ * found near another interface by a {@link ConnectivityOptimizer}
+ */
+public interface NeighborVisitor {
+
+	/**
+	 * Method is called for every network interface that is near the
+	 * interface whose neighbors are visited
+	 * @param ni The near network interface
+	 */
+	public void visit(NetworkInterface ni);
+}
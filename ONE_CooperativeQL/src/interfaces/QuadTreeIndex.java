@@ -0,0 +1,390 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import movement.MovementModel;
+import core.Coord;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+
+/**
+ * <P>
+ * Adaptive quadtree index of network interfaces. The world is divided into
+ * four quadrants whenever more than {@link #LEAF_CAPACITY_S} interfaces are
+ * located in the same area, and the quadrants are merged again when the
+ * interfaces move away. The resolution of the index thus follows the density
+ * of the interfaces and, unlike {@link ConnectivityGrid}, doesn't depend on
+ * the radio ranges, which makes it suitable for interfaces with very
+ * different ranges.
+ * </P>
+ * <P>
+ * The size of the indexed area is read from the
+ * {@link MovementModel#WORLD_SIZE} setting. Interfaces outside of the world
+ * are indexed at the nearest point of the world.
+ * </P>
+ */
+public class QuadTreeIndex extends ConnectivityOptimizer {
+	/**
+	 * Leaf capacity -setting id ({@value}). Number of interfaces a node
+	 * can hold before it is divided into quadrants. Default is
+	 * {@link #DEF_LEAF_CAPACITY}.
+	 */
+	public static final String LEAF_CAPACITY_S = "quadTreeLeafCapacity";
+	/**
+	 * Maximum depth -setting id ({@value}). Maximum number of times the
+	 * world is divided. Default is {@link #DEF_MAX_DEPTH}.
+	 */
+	public static final String MAX_DEPTH_S = "quadTreeMaxDepth";
+	/** default leaf capacity ({@value}) */
+	public static final int DEF_LEAF_CAPACITY = 8;
+	/** default maximum depth ({@value}) */
+	public static final int DEF_MAX_DEPTH = 10;
+
+	private final int leafCapacity;
+	private final int maxDepth;
+	private final double worldMaxX;
+	private final double worldMaxY;
+	private Node root;
+
+	/** the interfaces, their coordinates and leaves by address */
+	private NetworkInterface[] byAddress;
+	private double[] xs;
+	private double[] ys;
+	private Node[] leaves;
+	private List<NetworkInterface> interfaces;
+
+	/**
+	 * Creates a new, empty, index
+	 * @param s Settings where the leaf capacity and maximum depth are read
+	 */
+	public QuadTreeIndex(Settings s) {
+		this.leafCapacity = s.contains(LEAF_CAPACITY_S) ?
+				s.getInt(LEAF_CAPACITY_S) : DEF_LEAF_CAPACITY;
+		this.maxDepth = s.contains(MAX_DEPTH_S) ?
+				s.getInt(MAX_DEPTH_S) : DEF_MAX_DEPTH;
+		if (leafCapacity < 1) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(LEAF_CAPACITY_S));
+		}
+		if (maxDepth < 1) {
+			throw new SettingsError("Invalid value for " +
+					s.getFullPropertyName(MAX_DEPTH_S));
+		}
+
+		Settings mvs = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+		int [] worldSize = mvs.getCsvInts(MovementModel.WORLD_SIZE, 2);
+		this.worldMaxX = worldSize[0];
+		this.worldMaxY = worldSize[1];
+
+		this.root = new Node(null, 0, 0, 0, worldMaxX, worldMaxY);
+		this.byAddress = new NetworkInterface[0];
+		this.xs = new double[0];
+		this.ys = new double[0];
+		this.leaves = new Node[0];
+		this.interfaces = new ArrayList<NetworkInterface>();
+	}
+
+	@Override
+	public void addInterface(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address < byAddress.length && byAddress[address] != null) {
+			return; // already in the index
+		}
+		if (address >= byAddress.length) {
+			int capacity = Math.max(address + 1, 2 * byAddress.length);
+			byAddress = Arrays.copyOf(byAddress, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			leaves = Arrays.copyOf(leaves, capacity);
+		}
+
+		byAddress[address] = ni;
+		setCoordinates(address, ni.getLocation());
+		interfaces.add(ni);
+		insert(address);
+	}
+
+	@Override
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface ni : interfaces) {
+			addInterface(ni);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the index
+	 * @param ni The interface to remove
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address >= byAddress.length || byAddress[address] == null) {
+			return;
+		}
+		remove(address);
+		byAddress[address] = null;
+		interfaces.remove(ni);
+	}
+
+	@Override
+	public void updateLocation(NetworkInterface ni) {
+		int address = ni.getAddress();
+		setCoordinates(address, ni.getLocation());
+		if (findLeaf(xs[address], ys[address]) != leaves[address]) {
+			remove(address);
+			insert(address);
+		}
+	}
+
+	/**
+	 * Passes all interfaces whose coordinates are both within the radio
+	 * range of the interface from its coordinates to the visitor. The
+	 * quadrants are visited in the order south-west, south-east, north-west,
+	 * north-east. The interface itself is included. The index must not be
+	 * modified by the visitor.
+	 */
+	@Override
+	public void forEachNearInterface(NetworkInterface ni,
+			NeighborVisitor visitor) {
+		int address = ni.getAddress();
+		if (address >= byAddress.length || byAddress[address] == null) {
+			return;
+		}
+		double range = ni.getTransmitRange();
+		double x = xs[address];
+		double y = ys[address];
+		visit(root, x - range, y - range, x + range, y + range, visitor);
+	}
+
+	@Override
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return this.interfaces;
+	}
+
+	/**
+	 * Visits the interfaces of the (sub)tree that are within the given area
+	 */
+	private void visit(Node node, double minX, double minY, double maxX,
+			double maxY, NeighborVisitor visitor) {
+		/* the nodes are compared using clamped coordinates */
+		if (clampX(maxX) < node.minX || clampX(minX) > node.maxX ||
+				clampY(maxY) < node.minY || clampY(minY) > node.maxY) {
+			return;
+		}
+
+		if (node.children != null) {
+			for (Node child : node.children) {
+				visit(child, minX, minY, maxX, maxY, visitor);
+			}
+			return;
+		}
+
+		for (int i = 0; i < node.size; i++) {
+			int address = node.addresses[i];
+			if (xs[address] >= minX && xs[address] <= maxX &&
+					ys[address] >= minY && ys[address] <= maxY) {
+				visitor.visit(byAddress[address]);
+			}
+		}
+	}
+
+	/**
+	 * Inserts an interface to the leaf of its coordinates and divides the
+	 * leaf if it gets too full
+	 */
+	private void insert(int address) {
+		Node leaf = findLeaf(xs[address], ys[address]);
+		leaf.add(address);
+		leaves[address] = leaf;
+		for (Node n = leaf.parent; n != null; n = n.parent) {
+			n.size++;
+		}
+
+		if (leaf.size > leafCapacity && leaf.depth < maxDepth) {
+			split(leaf);
+		}
+	}
+
+	/**
+	 * Removes an interface from its leaf and merges the quadrants that
+	 * don't have enough interfaces anymore
+	 */
+	private void remove(int address) {
+		Node leaf = leaves[address];
+		leaf.remove(address);
+		leaves[address] = null;
+		for (Node n = leaf.parent; n != null; n = n.parent) {
+			n.size--;
+		}
+
+		Node merged = null;
+		for (Node n = leaf.parent; n != null && n.size <= leafCapacity / 2;
+				n = n.parent) {
+			merged = n;
+		}
+		if (merged != null) {
+			merge(merged);
+		}
+	}
+
+	/**
+	 * Divides a leaf into quadrants
+	 */
+	private void split(Node leaf) {
+		double midX = (leaf.minX + leaf.maxX) / 2;
+		double midY = (leaf.minY + leaf.maxY) / 2;
+		int depth = leaf.depth + 1;
+		leaf.children = new Node[] {
+				new Node(leaf, depth, leaf.minX, leaf.minY, midX, midY),
+				new Node(leaf, depth, midX, leaf.minY, leaf.maxX, midY),
+				new Node(leaf, depth, leaf.minX, midY, midX, leaf.maxY),
+				new Node(leaf, depth, midX, midY, leaf.maxX, leaf.maxY)};
+
+		for (int i = 0; i < leaf.size; i++) {
+			int address = leaf.addresses[i];
+			Node child = leaf.childFor(clampX(xs[address]),
+					clampY(ys[address]));
+			child.add(address);
+			leaves[address] = child;
+		}
+		leaf.addresses = null;
+
+		for (Node child : leaf.children) {
+			if (child.size > leafCapacity && child.depth < maxDepth) {
+				split(child);
+			}
+		}
+	}
+
+	/**
+	 * Merges all the quadrants of a node into the node
+	 */
+	private void merge(Node node) {
+		int[] addresses = new int[Math.max(leafCapacity, 1)];
+		int size = collect(node, addresses, 0);
+		node.children = null;
+		node.addresses = addresses;
+		node.size = size;
+		for (int i = 0; i < size; i++) {
+			leaves[addresses[i]] = node;
+		}
+	}
+
+	/**
+	 * Collects the addresses of the interfaces in a (sub)tree
+	 * @return The number of addresses in the array after the collection
+	 */
+	private int collect(Node node, int[] addresses, int size) {
+		if (node.children == null) {
+			System.arraycopy(node.addresses, 0, addresses, size, node.size);
+			return size + node.size;
+		}
+		for (Node child : node.children) {
+			size = collect(child, addresses, size);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the leaf that the given point belongs to
+	 */
+	private Node findLeaf(double x, double y) {
+		Node node = root;
+		while (node.children != null) {
+			node = node.childFor(clampX(x), clampY(y));
+		}
+		return node;
+	}
+
+	private void setCoordinates(int address, Coord c) {
+		xs[address] = c.getX();
+		ys[address] = c.getY();
+	}
+
+	private double clampX(double x) {
+		return Math.max(0, Math.min(x, worldMaxX));
+	}
+
+	private double clampY(double y) {
+		return Math.max(0, Math.min(y, worldMaxY));
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 * @return a string representation of the index
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + interfaces.size() +
+			" interfaces";
+	}
+
+	/**
+	 * A node of the tree. Leaves hold the addresses of the interfaces in
+	 * their area and other nodes their four quadrants.
+	 */
+	private class Node {
+		private final Node parent;
+		private final int depth;
+		private final double minX;
+		private final double minY;
+		private final double maxX;
+		private final double maxY;
+		/** quadrants of the node, or null for leaves */
+		private Node[] children;
+		/** addresses of the interfaces in a leaf */
+		private int[] addresses;
+		/** number of interfaces in the (sub)tree */
+		private int size;
+
+		private Node(Node parent, int depth, double minX, double minY,
+				double maxX, double maxY) {
+			this.parent = parent;
+			this.depth = depth;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.addresses = new int[leafCapacity + 1];
+		}
+
+		/**
+		 * Returns the quadrant of the node that the given point belongs to
+		 */
+		private Node childFor(double x, double y) {
+			int index = 0;
+			if (x >= (minX + maxX) / 2) {
+				index += 1;
+			}
+			if (y >= (minY + maxY) / 2) {
+				index += 2;
+			}
+			return children[index];
+		}
+
+		private void add(int address) {
+			if (size == addresses.length) {
+				addresses = Arrays.copyOf(addresses, 2 * size);
+			}
+			addresses[size++] = address;
+		}
+
+		private void remove(int address) {
+			for (int i = 0; i < size; i++) {
+				if (addresses[i] == address) {
+					/* keep the order of the rest of the interfaces */
+					System.arraycopy(addresses, i + 1, addresses, i,
+							size - i - 1);
+					size--;
+					return;
+				}
+			}
+		}
+	}
+}
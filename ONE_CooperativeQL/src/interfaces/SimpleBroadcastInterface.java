@@ -4,8 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
-
 import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
@@ -17,6 +15,13 @@ import core.Settings;
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	/** tries to connect to every interface it visits */
+	private NeighborVisitor connector = new NeighborVisitor() {
+		public void visit(NetworkInterface ni) {
+			connect(ni);
+		}
+	};
+
 	/**
 	 * Reads the interface settings from the Settings file
 	 *  
@@ -84,11 +89,7 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 			}
 		}
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		optimizer.forEachNearInterface(this, this.connector);
 	}
 
 	/** 
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import core.Coord;
+import core.NetworkInterface;
+import core.Settings;
+
+/**
+ * <P>
+ * Sort-and-sweep index of network interfaces. The interfaces are kept
+ * sorted by their x coordinate, and the near interfaces of an interface are
+ * found by sweeping over the interfaces whose x coordinate is within the
+ * interface's radio range from the interface's x coordinate. Unlike
+ * {@link ConnectivityGrid}, the index doesn't depend on the radio ranges
+ * or on the size of the world, so it suits well for interfaces with very
+ * different ranges and for sparse worlds.
+ * </P>
+ * <P>
+ * The coordinates of an interface are updated only when its location is
+ * updated. Since the interfaces move only a little between the updates,
+ * keeping the order costs only a few swaps per update.
+ * </P>
+ */
+public class SweepIndex extends ConnectivityOptimizer {
+	/** the interfaces sorted by x */
+	private NetworkInterface[] sorted;
+	/** x and y coordinates of the interfaces (in the same order) */
+	private double[] xs;
+	private double[] ys;
+	/** number of interfaces in the index */
+	private int size;
+	/** position of each interface in the sorted arrays (indexed by the
+	 * network address, -1 for interfaces not in the index) */
+	private int[] positions;
+	private List<NetworkInterface> interfaces;
+
+	/**
+	 * Creates a new, empty, index
+	 * @param s Settings (not used)
+	 */
+	public SweepIndex(Settings s) {
+		this.sorted = new NetworkInterface[0];
+		this.xs = new double[0];
+		this.ys = new double[0];
+		this.positions = new int[0];
+		this.interfaces = new ArrayList<NetworkInterface>();
+	}
+
+	@Override
+	public void addInterface(NetworkInterface ni) {
+		if (getPosition(ni) >= 0) {
+			return; // already in the index
+		}
+		if (size == sorted.length) {
+			int capacity = Math.max(16, 2 * size);
+			sorted = Arrays.copyOf(sorted, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+		}
+		int address = ni.getAddress();
+		if (address >= positions.length) {
+			int oldLength = positions.length;
+			positions = Arrays.copyOf(positions,
+					Math.max(address + 1, 2 * oldLength));
+			Arrays.fill(positions, oldLength, positions.length, -1);
+		}
+
+		/* add to the end and move to the right place */
+		Coord c = ni.getLocation();
+		set(size, ni, c.getX(), c.getY());
+		size++;
+		interfaces.add(ni);
+		moveToPlace(size - 1);
+	}
+
+	@Override
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface ni : interfaces) {
+			addInterface(ni);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the index
+	 * @param ni The interface to remove
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		int pos = getPosition(ni);
+		if (pos < 0) {
+			return;
+		}
+		for (int i = pos + 1; i < size; i++) {
+			set(i - 1, sorted[i], xs[i], ys[i]);
+		}
+		size--;
+		sorted[size] = null;
+		positions[ni.getAddress()] = -1;
+		interfaces.remove(ni);
+	}
+
+	@Override
+	public void updateLocation(NetworkInterface ni) {
+		int pos = getPosition(ni);
+		Coord c = ni.getLocation();
+		xs[pos] = c.getX();
+		ys[pos] = c.getY();
+		moveToPlace(pos);
+	}
+
+	/**
+	 * Passes all interfaces whose coordinates are both within the radio
+	 * range of the interface from its coordinates to the visitor, in the
+	 * order of their x coordinates. The interface itself is included.
+	 * The index must not be modified by the visitor.
+	 */
+	@Override
+	public void forEachNearInterface(NetworkInterface ni,
+			NeighborVisitor visitor) {
+		int pos = getPosition(ni);
+		if (pos < 0) {
+			return;
+		}
+		double range = ni.getTransmitRange();
+		double x = xs[pos];
+		double y = ys[pos];
+
+		for (int i = firstAtLeast(x - range); i < size && xs[i] <= x + range;
+				i++) {
+			if (Math.abs(ys[i] - y) <= range) {
+				visitor.visit(sorted[i]);
+			}
+		}
+	}
+
+	@Override
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return this.interfaces;
+	}
+
+	/**
+	 * Returns the position of an interface in the sorted arrays
+	 * @param ni The interface
+	 * @return The position or -1 if the interface is not in the index
+	 */
+	private int getPosition(NetworkInterface ni) {
+		int address = ni.getAddress();
+		if (address >= positions.length) {
+			return -1;
+		}
+		return positions[address];
+	}
+
+	/**
+	 * Returns the position of the first interface whose x coordinate is at
+	 * least the given value
+	 * @param x The x coordinate
+	 * @return The position (or size if there is no such interface)
+	 */
+	private int firstAtLeast(double x) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (xs[middle] < x) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Moves the interface at the given position to its place in the x order
+	 * @param pos The position of the interface
+	 */
+	private void moveToPlace(int pos) {
+		NetworkInterface ni = sorted[pos];
+		double x = xs[pos];
+		double y = ys[pos];
+
+		while (pos > 0 && xs[pos - 1] > x) {
+			set(pos, sorted[pos - 1], xs[pos - 1], ys[pos - 1]);
+			pos--;
+		}
+		while (pos < size - 1 && xs[pos + 1] < x) {
+			set(pos, sorted[pos + 1], xs[pos + 1], ys[pos + 1]);
+			pos++;
+		}
+		set(pos, ni, x, y);
+	}
+
+	private void set(int pos, NetworkInterface ni, double x, double y) {
+		sorted[pos] = ni;
+		xs[pos] = x;
+		ys[pos] = y;
+		positions[ni.getAddress()] = pos;
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 * @return a string representation of the index
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + size + " interfaces";
+	}
+}
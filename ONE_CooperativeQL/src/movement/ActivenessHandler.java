@@ -94,6 +94,15 @@ public class ActivenessHandler {
 		return curRange.isInRange(time);
 	}
 
+	/**
+	 * Returns true if no active times are defined, i.e., the node is
+	 * always active
+	 * @return true if the node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null;
+	}
+
 	/**
 	 * Class for handling time ranges
 	 */
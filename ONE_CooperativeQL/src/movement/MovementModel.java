@@ -9,6 +9,7 @@ import java.util.Random;
 import core.Coord;
 import core.DTNSim;
 import core.ModuleCommunicationBus;
+import core.RngStreams;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
@@ -43,7 +44,13 @@ public abstract class MovementModel {
 	public static final String RNG_SEED = "rngSeed";
 	
 	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	private static Random sharedRng;
+	/** seed of the common rng */
+	private static int rngSeed;
+	
+	/** rng of this movement model (the common rng unless the model has its
+	 * own rng stream, see {@link #useOwnRng(int)}) */
+	protected Random rng;
 	
 	private ActivenessHandler ah;
 		
@@ -87,6 +94,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = sharedRng;
 	}
 	
 	/**
@@ -97,6 +105,7 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 		
+		this.rng = sharedRng;
 		ah = new ActivenessHandler(settings);
 		
 		if (settings.contains(SPEED)) {
@@ -143,6 +152,7 @@ public abstract class MovementModel {
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
 		this.comBus = null;
+		this.rng = mm.rng;
 	}
 		
 	/**
@@ -210,6 +220,46 @@ public abstract class MovementModel {
 	public boolean isActive() {
 		return ah.isActive();
 	}
+
+	/**
+	 * Returns true if nodes using this movement model are active all the
+	 * time (no active times are defined)
+	 * @return true if nodes are always active
+	 */
+	protected boolean isAlwaysActive() {
+		return ah == null || ah.isAlwaysActive();
+	}
+
+	/**
+	 * Returns true if nodes using this movement model never move nor change
+	 * their activeness. This implementation returns false.
+	 * @return true if the nodes are static
+	 */
+	public boolean isStatic() {
+		return false;
+	}
+
+	/**
+	 * Returns true if this model can be moved concurrently with other
+	 * movement models, i.e., it doesn't share any mutable state (other than
+	 * the rng, see {@link #useOwnRng(int)}) with other models and its nodes
+	 * are always active. This implementation returns false.
+	 * @return true if the model can be moved in parallel with others
+	 */
+	public boolean canMoveInParallel() {
+		return false;
+	}
+
+	/**
+	 * Makes this model use its own random number stream instead of the
+	 * common rng. The stream is derived from the movement model rng seed and
+	 * the given stream ID (see {@link RngStreams}), so the values drawn by
+	 * the model don't depend on the order in which the models are moved.
+	 * @param streamId Identifier of the stream (e.g., host's address)
+	 */
+	public void useOwnRng(int streamId) {
+		this.rng = RngStreams.create(streamId, RngStreams.MOVEMENT_SUBSTREAM);
+	}
 		
 	/**
 	 * Returns a sim time when the next path is available. This implementation
@@ -256,12 +306,12 @@ public abstract class MovementModel {
 	public static void reset() {
 		Settings s = new Settings(MOVEMENT_MODEL_NS);
 		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+			rngSeed = s.getInt(RNG_SEED);
 		}
 		else {
-			rng = new Random(0);
+			rngSeed = 0;
 		}
+		sharedRng = new Random(rngSeed);
 	}
 	
 }
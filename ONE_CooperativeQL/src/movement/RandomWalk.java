@@ -76,6 +76,16 @@ public class RandomWalk extends MovementModel implements SwitchableMovement {
 		return p;
 	}
 	
+	/**
+	 * Returns true if the nodes are always active (the model has no shared
+	 * state with other models)
+	 * @return true if the model can be moved in parallel with others
+	 */
+	@Override
+	public boolean canMoveInParallel() {
+		return isAlwaysActive();
+	}
+
 	@Override
 	public RandomWalk replicate() {
 		return new RandomWalk(this);
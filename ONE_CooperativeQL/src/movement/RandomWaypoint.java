@@ -53,6 +53,16 @@ public class RandomWaypoint extends MovementModel {
 		return p;
 	}
 	
+	/**
+	 * Returns true if the nodes are always active (the model has no shared
+	 * state with other models)
+	 * @return true if the model can be moved in parallel with others
+	 */
+	@Override
+	public boolean canMoveInParallel() {
+		return isAlwaysActive();
+	}
+
 	@Override
 	public RandomWaypoint replicate() {
 		return new RandomWaypoint(this);
@@ -61,6 +61,20 @@ public class StationaryMovement extends MovementModel {
 	public double nextPathAvailable() {
 		return Double.MAX_VALUE;	// no new paths available
 	}
+
+	/**
+	 * Returns true unless active times are defined for the nodes
+	 * @return true if the nodes are always active
+	 */
+	@Override
+	public boolean isStatic() {
+		return isAlwaysActive();
+	}
+
+	@Override
+	public boolean canMoveInParallel() {
+		return isAlwaysActive();
+	}
 	
 	@Override
 	public StationaryMovement replicate() {
@@ -52,7 +52,7 @@ public class DistanceDelayReport extends Report implements MessageListener {
 		}
 		
 		report(m.getId(), info.getLoc1().distance(info.getLoc2()),
-				getSimTime() - info.getTime(), m.getHops().size()-1);
+				getSimTime() - info.getTime(), m.getHopCount());
 	}
 
 	/**
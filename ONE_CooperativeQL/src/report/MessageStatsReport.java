@@ -102,7 +102,7 @@ public class MessageStatsReport extends Report implements MessageListener {
 			this.latencies.add(getSimTime() - 
 				this.creationTimes.get(m.getId()) );
 			this.nrofDelivered++;
-			this.hopCounts.add(m.getHops().size() - 1);
+			this.hopCounts.add(m.getHopCount());
 			
 			if (m.isResponse()) {
 				this.rtt.add(getSimTime() -	m.getRequest().getCreationTime());
@@ -40,9 +40,6 @@ public class MessageStatsReportRR extends Report implements MessageListener {
 	private int nrofResponseDelivered;
 	private int nrofDelivered;
 
-	private static final String C_PREFIX = "C_";
-	private static final String PC_PREFIX = "P_";
-
 	/**
 	 * Constructor.
 	 */
@@ -75,47 +72,41 @@ public class MessageStatsReportRR extends Report implements MessageListener {
 		if (isWarmupID(m.getId())) {
 			return;
 		}
-		if (!m.getId().substring(0, 2).equals(C_PREFIX) && !m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			if (dropped) {
-				this.nrofDropped++;
-				if (this.droppedNode.containsKey(where)) {
-					int dropCounter = this.droppedNode.get(where);
-					this.droppedNode.replace(where, (dropCounter + 1));
-				} else {
-					this.droppedNode.put(where, 1);
-				}
+		if (dropped) {
+			this.nrofDropped++;
+			if (this.droppedNode.containsKey(where)) {
+				int dropCounter = this.droppedNode.get(where);
+				this.droppedNode.replace(where, (dropCounter + 1));
 			} else {
-				this.nrofRemoved++;
+				this.droppedNode.put(where, 1);
 			}
-
-			this.msgBufferTime.add(getSimTime() - m.getReceiveTime());
+		} else {
+			this.nrofRemoved++;
 		}
+
+		this.msgBufferTime.add(getSimTime() - m.getReceiveTime());
 	}
 
 	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
 		if (isWarmupID(m.getId())) {
 			return;
 		}
-		if (!m.getId().substring(0, 2).equals(C_PREFIX) && !m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			this.nrofAborted++;
-		}
+		this.nrofAborted++;
 	}
 
 	public void messageTransferred(Message m, DTNHost from, DTNHost to, boolean finalTarget) {
 		if (isWarmupID(m.getId())) {
 			return;
 		}
-		if (!m.getId().substring(0, 2).equals(C_PREFIX) && !m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			this.nrofRelayed++;
-			if (finalTarget) {
-				this.latencies.add(getSimTime() - this.creationTimes.get(m.getId()));
-				this.nrofDelivered++;
-				this.hopCounts.add(m.getHops().size() - 1);
-
-				if (m.isResponse()) {
-					this.rtt.add(getSimTime() - m.getRequest().getCreationTime());
-					this.nrofResponseDelivered++;
-				}
+		this.nrofRelayed++;
+		if (finalTarget) {
+			this.latencies.add(getSimTime() - this.creationTimes.get(m.getId()));
+			this.nrofDelivered++;
+			this.hopCounts.add(m.getHopCount());
+
+			if (m.isResponse()) {
+				this.rtt.add(getSimTime() - m.getRequest().getCreationTime());
+				this.nrofResponseDelivered++;
 			}
 		}
 	}
@@ -125,12 +116,10 @@ public class MessageStatsReportRR extends Report implements MessageListener {
 			addWarmupID(m.getId());
 			return;
 		}
-		if (!m.getId().substring(0, 2).equals(C_PREFIX) && !m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			this.creationTimes.put(m.getId(), getSimTime());
-			this.nrofCreated++;
-			if (m.getResponseSize() > 0) {
-				this.nrofResponseReqCreated++;
-			}
+		this.creationTimes.put(m.getId(), getSimTime());
+		this.nrofCreated++;
+		if (m.getResponseSize() > 0) {
+			this.nrofResponseReqCreated++;
 		}
 	}
 
@@ -138,9 +127,7 @@ public class MessageStatsReportRR extends Report implements MessageListener {
 		if (isWarmupID(m.getId())) {
 			return;
 		}
-		if (!m.getId().substring(0, 2).equals(C_PREFIX) && !m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			this.nrofStarted++;
-		}
+		this.nrofStarted++;
 	}
 
 	@Override
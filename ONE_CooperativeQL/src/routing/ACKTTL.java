@@ -1,11 +0,0 @@
-package routing;
-
-public class ACKTTL {
-	public double TTL;
-	public double beginTime;
-
-	public ACKTTL(double ttl, double bt) {
-		TTL = ttl;
-		beginTime = bt;
-	}
-}
@@ -7,15 +7,20 @@ package routing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
+import core.CBRConnection;
 import core.Connection;
+import core.ControlSignal;
 import core.DTNHost;
+import core.LongHashMap;
 import core.Message;
 import core.MessageListener;
 import core.Settings;
 import core.SimClock;
+import core.TimingWheel;
 import core.Tuple;
 
 /**
@@ -34,12 +39,14 @@ public abstract class ActiveRouter extends MessageRouter {
 	
 	/** prefix of all response message IDs */
 	public static final String RESPONSE_PREFIX = "R_";
-	/** how often TTL check (discarding old messages) is performed */
-	public static int TTL_CHECK_INTERVAL = 60;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
-	/** sim time when the last TTL check was done */
-	private double lastTtlCheck;
+	/** expiry times of the buffered messages with finite TTL */
+	private TimingWheel<Message> expiryTimers;
+	/** expiry timers by message handle */
+	private LongHashMap<TimingWheel.Timer<Message>> timersByHandle;
+	/** expired messages whose drop waits for them to be sent */
+	private ArrayList<Message> expiredSending;
 	
 
 	/**
@@ -71,7 +78,9 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
-		this.lastTtlCheck = 0;
+		this.expiryTimers = new TimingWheel<Message>(1.0);
+		this.timersByHandle = new LongHashMap<TimingWheel.Timer<Message>>();
+		this.expiredSending = new ArrayList<Message>();
 	}
 	
 	/**
@@ -148,6 +157,21 @@ public abstract class ActiveRouter extends MessageRouter {
 		return getHost().getConnections();
 	}
 	
+	/**
+	 * Sends a control signal to all hosts this host is currently connected
+	 * to. The signal is delivered immediately, so it doesn't have to wait
+	 * for free transfer slots and it doesn't block message transfers.
+	 * @param type Type of the signal
+	 * @return The sent signal
+	 */
+	protected ControlSignal broadcastSignal(int type) {
+		ControlSignal signal = new ControlSignal(getHost(), type);
+		for (Connection con : getConnections()) {
+			con.sendSignal(getHost(), signal);
+		}
+		return signal;
+	}
+
 	/**
 	 * Tries to start a transfer of message using a connection. Is starting
 	 * succeeds, the connection is added to the watch list of active connections
@@ -209,7 +233,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 	
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ){
+		if ( hasMessage(m) || isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 		
@@ -256,16 +280,68 @@ public abstract class ActiveRouter extends MessageRouter {
 	}
 	
 	/**
-	 * Drops messages whose TTL is less than zero.
+	 * Drops messages whose TTL is less than zero. The messages are dropped
+	 * as soon as their TTL runs out, except the ones that are being sent,
+	 * which are dropped when their transfers are over.
 	 */
 	protected void dropExpiredMessages() {
-		Message[] messages = getMessageCollection().toArray(new Message[0]);
-		for (int i=0; i<messages.length; i++) {
-			int ttl = messages[i].getTtl(); 
-			if (ttl <= 0) {
-				deleteMessage(messages[i].getId(), true);
+		if (this.expiredSending.size() > 0) {
+			for (int i=0; i<this.expiredSending.size(); ) {
+				Message m = this.expiredSending.get(i);
+				if (getMessage(m.getId()) != m) {
+					this.expiredSending.remove(i); // removed some other way
+				}
+				else if (!isSending(m.getId())) {
+					this.expiredSending.remove(i);
+					deleteMessage(m.getId(), true);
+				}
+				else {
+					i++;
+				}
+			}
+		}
+		
+		for (Message m : this.expiryTimers.advance(SimClock.getTime())) {
+			this.timersByHandle.remove(m.getHandle());
+			if (!hasMessage(m)) {
+				continue; // removed some other way
+			}
+			if (isSending(m.getId())) {
+				this.expiredSending.add(m);
+			}
+			else {
+				deleteMessage(m.getId(), true);
+			}
+		}
+	}
+	
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		TimingWheel.Timer<Message> old = this.timersByHandle.remove(
+				m.getHandle());
+		if (old != null) {
+			this.expiryTimers.cancel(old);
+		}
+		if (m.getInitTTL() != Message.INFINITE_TTL) {
+			/* getTtl() drops to zero right after this time */
+			double expiry = m.getCreationTime() + (m.getInitTTL() - 1) * 60.0;
+			this.timersByHandle.put(m.getHandle(), 
+					this.expiryTimers.schedule(m, Math.nextUp(expiry)));
+		}
+	}
+	
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			TimingWheel.Timer<Message> timer = 
+				this.timersByHandle.remove(m.getHandle());
+			if (timer != null) {
+				this.expiryTimers.cancel(timer);
 			}
 		}
+		return m;
 	}
 	
 	/**
@@ -323,15 +399,31 @@ public abstract class ActiveRouter extends MessageRouter {
 
 		List<Tuple<Message, Connection>> forTuples = 
 			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
-				}
+		int nrofHitConnections = 0;
+		for (Connection con : getConnections()) {
+			Collection<Message> forHost = 
+				getMessagesFor(con.getOtherNode(getHost()));
+			if (forHost.isEmpty()) {
+				continue;
+			}
+			nrofHitConnections++;
+			for (Message m : forHost) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 		
+		if (nrofHitConnections > 1) {
+			/* messages in buffer order (and connections in their order) */
+			Collections.sort(forTuples, 
+					new Comparator<Tuple<Message, Connection>>() {
+				public int compare(Tuple<Message, Connection> t1,
+						Tuple<Message, Connection> t2) {
+					return Integer.compare(getBufferPosition(t1.getKey()),
+							getBufferPosition(t2.getKey()));
+				}
+			});
+		}
+		
 		return forTuples;
 	}
 	
@@ -529,10 +621,37 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;
 	}
 	
+	/**
+	 * Returns the time when the first ongoing transfer is ready (or the
+	 * current time if that can't be predicted) or the time when the next
+	 * message expires, whichever comes first. Routers whose forwarding decisions
+	 * change with time alone (also while connected) must override this.
+	 */
+	@Override
+	public double getNextWakeupTime() {
+		double wakeup = Math.min(super.getNextWakeupTime(),
+				this.expiryTimers.getNextTimeBound());
+
+		for (int i=0, n = this.sendingConnections.size(); i < n; i++) {
+			Connection con = this.sendingConnections.get(i);
+			double ready = SimClock.getTime();
+			if (con instanceof CBRConnection && con.isUp()) {
+				/* transfer is done when less than one byte is remaining */
+				ready = ((CBRConnection)con).getTransferDoneTime() -
+					1.0 / con.getSpeed();
+			}
+			if (ready < wakeup) {
+				wakeup = ready;
+			}
+		}
+
+		return wakeup;
+	}
+
 	/**
 	 * Checks out all sending connections to finalize the ready ones 
 	 * and abort those whose connection went down. Also drops messages
-	 * whose TTL <= 0 (checking every one simulated minute).
+	 * whose TTL <= 0 (see {@link #dropExpiredMessages()}).
 	 * @see #addToSendingConnections(Connection)
 	 */
 	@Override
@@ -576,12 +695,7 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
-		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
-				sendingConnections.size() == 0) {
-			dropExpiredMessages();
-			lastTtlCheck = SimClock.getTime();
-		}
+		dropExpiredMessages();
 	}
 	
 	/**
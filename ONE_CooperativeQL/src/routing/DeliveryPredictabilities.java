@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.DTNHost;
+import core.SimClock;
+
+/**
+ * Delivery predictabilities of a PRoPHET router. The predictabilities are
+ * kept in arrays indexed by host address and every entry remembers when it
+ * was last aged. Entries are aged only when they are read, so reading or
+ * updating a predictability takes constant time regardless of the number
+ * of entries.
+ * <P>
+ * Aging follows <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is
+ * the number of time units that have elapsed since the entry was aged.
+ */
+public class DeliveryPredictabilities {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private double gamma;
+	private final double secondsInTimeUnit;
+
+	/** predictabilities by host address */
+	private double[] preds;
+	/** the (sim)time when each entry was last aged */
+	private double[] lastAged;
+	/** hosts of the entries by address (null if there's no entry) */
+	private DTNHost[] hosts;
+	/** addresses of the entries in the order they were created */
+	private int[] addresses;
+	private int size;
+	/** number of changes other than aging */
+	private int version;
+
+	/**
+	 * Creates a new table without any entries
+	 * @param gamma The aging constant
+	 * @param secondsInTimeUnit Number of seconds in a time unit of aging
+	 */
+	public DeliveryPredictabilities(double gamma, double secondsInTimeUnit) {
+		this.gamma = gamma;
+		this.secondsInTimeUnit = secondsInTimeUnit;
+		this.preds = new double[INITIAL_CAPACITY];
+		this.lastAged = new double[INITIAL_CAPACITY];
+		this.hosts = new DTNHost[INITIAL_CAPACITY];
+		this.addresses = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the current predictability for a host
+	 * @param host The host
+	 * @return The predictability or 0 if there's no entry for the host
+	 */
+	public double get(DTNHost host) {
+		int a = host.getAddress();
+		if (a >= hosts.length || hosts[a] == null) {
+			return 0;
+		}
+		return age(a);
+	}
+
+	/**
+	 * Sets the predictability for a host
+	 * @param host The host
+	 * @param value The new predictability
+	 */
+	public void set(DTNHost host, double value) {
+		int a = host.getAddress();
+		if (a >= hosts.length || hosts[a] == null) {
+			addEntry(host);
+		}
+		preds[a] = value;
+		lastAged[a] = SimClock.getTime();
+		version++;
+	}
+
+	/**
+	 * Updates the predictability for a host that was just met.
+	 * <CODE>P(a,b) = P(a,b)_old + (1 - P(a,b)_old) * P_INIT</CODE>
+	 * @param host The host
+	 * @param pInit The initialization constant
+	 */
+	public void updateEncounter(DTNHost host, double pInit) {
+		double oldValue = get(host);
+		set(host, oldValue + (1 - oldValue) * pInit);
+	}
+
+	/**
+	 * Updates the transitive (A->B->C) predictabilities from the table of
+	 * a host that was just met.
+	 * <CODE>P(a,c) = P(a,c)_old + (1 - P(a,c)_old) * P(a,b) * P(b,c) * BETA
+	 * </CODE>
+	 * @param self The host whose table this is (A)
+	 * @param host The host that was met (B)
+	 * @param other The table of the host that was met
+	 * @param beta The transitivity scaling constant
+	 */
+	public void updateTransitive(DTNHost self, DTNHost host,
+			DeliveryPredictabilities other, double beta) {
+		double pForHost = get(host); // P(a,b)
+		double now = SimClock.getTime();
+
+		for (int i = 0; i < other.size; i++) {
+			int c = other.addresses[i];
+			if (other.hosts[c] == self) {
+				continue; // don't add yourself
+			}
+
+			double pOther = other.age(c); // P(b,c)
+			double pOld = 0; // P(a,c)_old
+			if (c >= hosts.length || hosts[c] == null) {
+				addEntry(other.hosts[c]);
+			}
+			else {
+				pOld = age(c);
+			}
+			preds[c] = pOld + (1 - pOld) * pForHost * pOther * beta;
+			lastAged[c] = now;
+		}
+		version++;
+	}
+
+	/**
+	 * Changes the aging constant. The entries are first aged up to the
+	 * current time with the old constant.
+	 * @param gamma The new aging constant
+	 */
+	public void setGamma(double gamma) {
+		if (gamma == this.gamma) {
+			return;
+		}
+		for (int i = 0; i < size; i++) {
+			age(addresses[i]);
+		}
+		this.gamma = gamma;
+		version++;
+	}
+
+	/**
+	 * Returns the version of the table. The version changes whenever a
+	 * predictability is updated but not when the entries age. Since all
+	 * entries age at the same rate, the order of the predictabilities
+	 * stays the same while the version does.
+	 * @return The version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of entries
+	 * @return The number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the current predictabilities in the order the entries were
+	 * created
+	 * @return Map of the predictabilities by host
+	 */
+	public Map<DTNHost, Double> toMap() {
+		Map<DTNHost, Double> map = new LinkedHashMap<DTNHost, Double>();
+		for (int i = 0; i < size; i++) {
+			int a = addresses[i];
+			map.put(hosts[a], age(a));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the current predictabilities by host address
+	 * @return The predictabilities indexed by host address. The hosts
+	 * without an entry, including the ones beyond the array, have
+	 * predictability 0.
+	 */
+	public double[] toArray() {
+		double[] values = new double[hosts.length];
+		for (int i = 0; i < size; i++) {
+			int a = addresses[i];
+			values[a] = age(a);
+		}
+		return values;
+	}
+
+	/**
+	 * Ages an entry up to the current time
+	 * @return The aged predictability
+	 */
+	private double age(int address) {
+		double now = SimClock.getTime();
+		double timeDiff = (now - lastAged[address]) / secondsInTimeUnit;
+		if (timeDiff != 0) {
+			preds[address] *= Math.pow(gamma, timeDiff);
+			lastAged[address] = now;
+		}
+		return preds[address];
+	}
+
+	private void addEntry(DTNHost host) {
+		int a = host.getAddress();
+		if (a >= hosts.length) {
+			int length = Math.max(a + 1, 2 * hosts.length);
+			preds = Arrays.copyOf(preds, length);
+			lastAged = Arrays.copyOf(lastAged, length);
+			hosts = Arrays.copyOf(hosts, length);
+		}
+		if (size == addresses.length) {
+			addresses = Arrays.copyOf(addresses, 2 * size);
+		}
+		hosts[a] = host;
+		preds[a] = 0;
+		lastAged[a] = SimClock.getTime();
+		addresses[size++] = a;
+	}
+}
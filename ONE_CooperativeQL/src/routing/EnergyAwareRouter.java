@@ -169,6 +169,15 @@ public class EnergyAwareRouter extends ActiveRouter
 		}
 	}
 	
+	/**
+	 * Returns always the current time since scanning consumes energy on
+	 * every update.
+	 */
+	@Override
+	public double getNextWakeupTime() {
+		return SimClock.getTime();
+	}
+
 	@Override
 	public void update() {
 		super.update();
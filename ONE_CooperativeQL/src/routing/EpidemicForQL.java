@@ -19,12 +19,17 @@ import java.util.Set;
 
 /**
  * Epidemic message router with drop-oldest buffer and only single transferring
- * connections at a time.
+ * connections at a time. The messages a peer lacks are found once when the
+ * connection comes up and kept in a queue that is updated with the buffer.
  */
 public class EpidemicForQL extends QLCC_Cooperative {
 
+	/** messages the connected peers lack (summary vector differences) */
+	private Map<Connection, PeerQueue> peerQueues;
+
 	public EpidemicForQL(Settings s) {
 		super(s);
+		this.peerQueues = new HashMap<Connection, PeerQueue>();
 
 		// TODO: read&use epidemic router specific settings (if any)
 	}
@@ -36,6 +41,7 @@ public class EpidemicForQL extends QLCC_Cooperative {
 	 */
 	protected EpidemicForQL(EpidemicForQL r) {
 		super(r);
+		this.peerQueues = new HashMap<Connection, PeerQueue>();
 
 		// TODO: copy epidemic settings here (if any)
 	}
@@ -48,12 +54,99 @@ public class EpidemicForQL extends QLCC_Cooperative {
 		}
 
 		// Try first the messages that can be delivered to final recipient
-		if (exchangeDeliverableMessages() != null) {
+		if (tryLackingMessages(true) != null) {
 			return; // started a transfer, don't try others (yet)
 		}
+		for (Connection con : getConnections()) {
+			if (con.getOtherNode(getHost()).requestDeliverableMessages(con)) {
+				return;
+			}
+		}
+
+		// then try the other messages the peers don't have
+		tryLackingMessages(false);
+	}
+
+	/**
+	 * Compares the buffer with the buffer of the new peer (like the summary
+	 * vector exchange of epidemic routing) and queues the messages the peer
+	 * doesn't have yet. The queue is kept up to date when messages are
+	 * added to or removed from the buffer.
+	 */
+	@Override
+	public void connectionUp(Connection con) {
+		PeerQueue queue = new PeerQueue(con.getOtherNode(getHost()));
+		for (Message m : getMessageCollection()) {
+			queue.offer(m);
+		}
+		peerQueues.put(con, queue);
+	}
 
-		// then try any/all message to any/all connection
-		this.tryAllMessagesToAllConnections();
+	@Override
+	public void connectionDown(Connection con) {
+		peerQueues.remove(con);
+	}
+
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m);
+		super.addToMessages(m, newMessage);
+		for (PeerQueue queue : peerQueues.values()) {
+			if (old != null) {
+				queue.remove(old);
+			}
+			queue.offer(m);
+		}
+	}
+
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			for (PeerQueue queue : peerQueues.values()) {
+				queue.remove(m);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Tries to send the queued messages to the connected peers. Connections
+	 * are tried in order and the messages of a connection in the queue
+	 * order until a transfer starts. Messages the peer refuses for good are
+	 * removed from the queue, so an idle connection costs nothing.
+	 * @param deliverable If true, the messages whose final recipient is the
+	 * peer are tried, otherwise the other messages
+	 * @return The connection that started a transfer or null if no transfer
+	 * was started
+	 */
+	private Connection tryLackingMessages(boolean deliverable) {
+		for (Connection con : getConnections()) {
+			PeerQueue queue = peerQueues.get(con);
+			if (queue == null) {
+				continue;
+			}
+			MessageOrdering lacking = deliverable ? queue.deliverable :
+				queue.others;
+			Message m = lacking.first();
+			while (m != null) {
+				Message next = lacking.next(m);
+				int retVal = startTransfer(m, con);
+				if (retVal == RCV_OK) {
+					lacking.remove(m);
+					return con;
+				}
+				else if (retVal > 0 || retVal == DENIED_UNSPECIFIED) {
+					break; // busy or out of transfers for this connection
+				}
+				else if (retVal != DENIED_NO_SPACE) {
+					lacking.remove(m); // peer has or doesn't want the msg
+				}
+				m = next;
+			}
+		}
+
+		return null;
 	}
 
 	@Override
@@ -61,4 +154,42 @@ public class EpidemicForQL extends QLCC_Cooperative {
 		return new EpidemicForQL(this);
 	}
 
+	/**
+	 * Messages that one connected peer lacks, in the send queue order
+	 */
+	private class PeerQueue {
+		private final DTNHost peer;
+		/** the messages whose final recipient is the peer */
+		private final MessageOrdering deliverable;
+		/** the other messages */
+		private final MessageOrdering others;
+
+		private PeerQueue(DTNHost peer) {
+			this.peer = peer;
+			this.deliverable = new MessageOrdering(getTieKey(), false,
+					MessageOrdering.RECEIVE_TIME);
+			this.others = new MessageOrdering(getTieKey(), false,
+					MessageOrdering.RECEIVE_TIME);
+		}
+
+		/** Queues a message if the peer doesn't have it */
+		private void offer(Message m) {
+			MessageRouter r = peer.getRouter();
+			if (r.hasMessage(m) || r.isDeliveredMessage(m)) {
+				return;
+			}
+			if (m.getTo() == peer) {
+				deliverable.add(m);
+			}
+			else {
+				others.add(m);
+			}
+		}
+
+		private void remove(Message m) {
+			deliverable.remove(m);
+			others.remove(m);
+		}
+	}
+
 }
@@ -33,7 +33,7 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 	public static final double ALPHA = 0.9;
 	private Map<Connection, Integer> connLimit; // store conn along with limit
 	protected List<CVandTime> cvList = new ArrayList<>();
-	private Map<String, ACKTTL> receiptBuffer; // buffer that save receipt
+	private ReceiptBuffer receiptBuffer; // buffer that save receipt
 	/**
 	 * message that should be deleted
 	 */
@@ -55,7 +55,7 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 	public EpidemicRouterWithRR(Settings s) {
 		super(s);
 		initConnLimit();
-		this.receiptBuffer = new HashMap<>();
+		this.receiptBuffer = new ReceiptBuffer();
 		this.messageReadytoDelete = new HashSet<>();
 		this.cvList = new ArrayList<CVandTime>();
 		// TODO: read&use epidemic router specific settings (if any)
@@ -69,7 +69,7 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 	protected EpidemicRouterWithRR(EpidemicRouterWithRR r) {
 		super(r);
 		initConnLimit();
-		this.receiptBuffer = new HashMap<>();
+		this.receiptBuffer = new ReceiptBuffer();
 		this.messageReadytoDelete = new HashSet<>();
 		this.cvList = new ArrayList<CVandTime>();
 		// TODO: copy epidemic settings here (if any)
@@ -85,16 +85,10 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 			EpidemicRouterWithRR othRouter = (EpidemicRouterWithRR) otherHost.getRouter();
 
 			// Exchange receipt buffer
-			Map<String, ACKTTL> peerReceiptBuffer = othRouter.getReceiptBuffer();
-
-			for (Map.Entry<String, ACKTTL> entry : peerReceiptBuffer.entrySet()) {
-				if (!receiptBuffer.containsKey(entry.getKey())) {
-					receiptBuffer.put(entry.getKey(), entry.getValue());
-				}
-			}
+			receiptBuffer.merge(othRouter.getReceiptBuffer());
 			for (Message m : thisMessageList) {
 				// Delete message that have a receipt
-				if (receiptBuffer.containsKey(m.getId())) {
+				if (receiptBuffer.contains(m)) {
 					messageReadytoDelete.add(m.getId());
 				}
 			}
@@ -267,9 +261,8 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 		Message msg = super.messageTransferred(id, from);
 		this.nrOfReps++; // add -> this.nrOfReps++
 		// - ACK -
-		if (isFinalDest(msg, this.getHost()) && !receiptBuffer.containsKey(msg.getId())) {
-			ACKTTL ack = new ACKTTL(SimClock.getTime(), msg.getTtl());
-			receiptBuffer.put(msg.getId(), ack);
+		if (isFinalDest(msg, this.getHost())) {
+			receiptBuffer.addReceipt(getHost(), msg);
 		}
 		return msg;
 	}
@@ -290,7 +283,7 @@ public class EpidemicRouterWithRR extends ActiveRouter implements CVDetectionEng
 		return this.cvList;
 	}
 
-	public Map<String, ACKTTL> getReceiptBuffer() {
+	public ReceiptBuffer getReceiptBuffer() {
 		return receiptBuffer;
 	}
 
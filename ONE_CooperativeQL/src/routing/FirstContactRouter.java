@@ -37,7 +37,7 @@ public class FirstContactRouter extends ActiveRouter {
 		
 		if (recvCheck == RCV_OK) {
 			/* don't accept a message that has already traversed this node */
-			if (m.getHops().contains(getHost())) {
+			if (m.hasVisited(getHost())) {
 				recvCheck = DENIED_OLD;
 			}
 		}
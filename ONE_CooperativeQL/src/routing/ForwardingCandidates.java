@@ -0,0 +1,220 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.Connection;
+import core.DTNHost;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Forwarding candidates of a PRoPHET router. For every connection, this
+ * keeps a queue of the buffered messages that the peer doesn't have and
+ * that the peer is more likely to deliver. The queue is ordered by the
+ * peer's delivery predictability, highest first. A queue is built when it's
+ * first needed and then kept up to date as messages are added to and
+ * removed from the buffer, so the candidates don't have to be collected
+ * and sorted on every update.
+ * <P>
+ * A queue is rebuilt when the predictability table of either host changes
+ * (see {@link DeliveryPredictabilities#getVersion()}). The queue is ordered
+ * by the peer's predictabilities as they were when the queue was built, so
+ * messages added later are ordered consistently with the earlier ones.
+ * Aging alone doesn't require a rebuild, because all the predictabilities
+ * age at the same rate and keep their order. For the same reason, both
+ * hosts must use the same aging parameters.
+ */
+public abstract class ForwardingCandidates {
+	private final ActiveRouter router;
+	private final Map<Connection, Queue> queues;
+
+	/**
+	 * Creates the candidate queues of a router
+	 * @param router The router whose buffer the candidates are from
+	 */
+	public ForwardingCandidates(ActiveRouter router) {
+		this.router = router;
+		this.queues = new HashMap<Connection, Queue>();
+	}
+
+	/**
+	 * Returns the delivery predictabilities of a router
+	 * @param r The router (this router or a peer)
+	 * @return The predictability table of the router
+	 */
+	protected abstract DeliveryPredictabilities getPreds(MessageRouter r);
+
+	/**
+	 * Updates the queues when a message is added to the buffer
+	 * @param old The message the new one replaces or null
+	 * @param m The added message
+	 */
+	public void messageAdded(Message old, Message m) {
+		for (Queue q : queues.values()) {
+			if (old != null) {
+				q.ordering.remove(old);
+			}
+			q.offer(m);
+		}
+	}
+
+	/**
+	 * Updates the queues when a message is removed from the buffer
+	 * @param m The removed message
+	 */
+	public void messageRemoved(Message m) {
+		for (Queue q : queues.values()) {
+			q.ordering.remove(m);
+		}
+	}
+
+	/**
+	 * Discards the queue of a connection that went down
+	 * @param con The connection
+	 */
+	public void connectionDown(Connection con) {
+		queues.remove(con);
+	}
+
+	/**
+	 * Tries to send the candidates to the connected peers that are not
+	 * transferring. The candidates of all connections are tried in the
+	 * order of the peers' predictabilities until a transfer starts.
+	 * Messages equal by predictability are in the router's queue mode
+	 * order. The candidates that the peer refuses for good are removed from
+	 * the queue and the rest of a connection's candidates are skipped if
+	 * it's busy.
+	 * @return The message and the connection whose transfer started or
+	 * null if no transfer was started
+	 */
+	public Tuple<Message, Connection> tryCandidates() {
+		List<Connection> cons = router.getConnections();
+		int n = cons.size();
+		if (n == 0) {
+			return null;
+		}
+
+		Queue[] active = new Queue[n];
+		Message[] heads = new Message[n];
+		for (int i = 0; i < n; i++) {
+			Connection con = cons.get(i);
+			ActiveRouter peer =
+				(ActiveRouter)con.getOtherNode(router.getHost()).getRouter();
+			if (peer.isTransferring()) {
+				continue; // skip hosts that are transferring
+			}
+			active[i] = getQueue(con, peer);
+			heads[i] = active[i].ordering.first();
+		}
+
+		MessageOrdering.Key tieKey = router.getTieKey();
+		while (true) {
+			int best = -1;
+			double bestPred = 0;
+			double bestTie = 0;
+			for (int i = 0; i < n; i++) {
+				if (heads[i] == null) {
+					continue;
+				}
+				double pred = active[i].peerPreds.get(heads[i].getTo());
+				double tie = tieKey.getKey(heads[i]);
+				if (best < 0 || pred > bestPred ||
+						(pred == bestPred && tie < bestTie)) {
+					best = i;
+					bestPred = pred;
+					bestTie = tie;
+				}
+			}
+			if (best < 0) {
+				return null;
+			}
+
+			Queue q = active[best];
+			Message m = heads[best];
+			Connection con = cons.get(best);
+			Message next = q.ordering.next(m);
+			int retVal = router.startTransfer(m, con);
+			if (retVal == MessageRouter.RCV_OK) {
+				q.ordering.remove(m);
+				return new Tuple<Message, Connection>(m, con);
+			}
+			else if (retVal > 0 || retVal == MessageRouter.DENIED_UNSPECIFIED) {
+				heads[best] = null; // busy or out of transfers
+			}
+			else {
+				if (retVal != MessageRouter.DENIED_NO_SPACE) {
+					q.ordering.remove(m); // peer has or doesn't want the msg
+				}
+				heads[best] = next;
+			}
+		}
+	}
+
+	/**
+	 * Returns the up-to-date queue of a connection
+	 */
+	private Queue getQueue(Connection con, MessageRouter peer) {
+		Queue q = queues.get(con);
+		DeliveryPredictabilities own = getPreds(router);
+		DeliveryPredictabilities peerPreds = getPreds(peer);
+		if (q == null || q.ownVersion != own.getVersion() ||
+				q.peerVersion != peerPreds.getVersion()) {
+			q = new Queue(peer, own, peerPreds);
+			for (Message m : router.getMessageCollection()) {
+				q.offer(m);
+			}
+			queues.put(con, q);
+		}
+		return q;
+	}
+
+	/**
+	 * Forwarding candidates for one peer
+	 */
+	private class Queue {
+		private final MessageRouter peer;
+		private final DeliveryPredictabilities own;
+		private final DeliveryPredictabilities peerPreds;
+		/** the peer's predictabilities when the queue was built */
+		private final double[] keys;
+		private final int ownVersion;
+		private final int peerVersion;
+		private final MessageOrdering ordering;
+
+		private Queue(MessageRouter peer, DeliveryPredictabilities own,
+				DeliveryPredictabilities peerPreds) {
+			this.peer = peer;
+			this.own = own;
+			this.peerPreds = peerPreds;
+			this.ownVersion = own.getVersion();
+			this.peerVersion = peerPreds.getVersion();
+			this.keys = peerPreds.toArray();
+			this.ordering = new MessageOrdering(new MessageOrdering.Key() {
+				public double getKey(Message m) {
+					int a = m.getTo().getAddress();
+					return a < keys.length ? keys[a] : 0;
+				}
+			}, true, router.getTieKey());
+		}
+
+		/**
+		 * Queues a message if the peer doesn't have it and has a higher
+		 * probability of delivery
+		 */
+		private void offer(Message m) {
+			if (peer.hasMessage(m)) {
+				return;
+			}
+			DTNHost to = m.getTo();
+			if (peerPreds.get(to) > own.get(to)) {
+				ordering.add(m);
+			}
+		}
+	}
+}
@@ -18,6 +18,7 @@ import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import core.Connection;
 import core.DTNHost;
+import core.LongHashMap;
 import core.Message;
 import core.Settings;
 import core.Tuple;
@@ -54,12 +55,15 @@ public class MaxPropRouter extends ActiveRouter {
 	private MaxPropDijkstra dijkstra;	
 	/** IDs of the messages that are known to have reached the final dst */
 	private Set<String> ackedMessageIds;
-	/** mapping of the current costs for all messages. This should be set to
-	 * null always when the costs should be updated (a host is met or a new
-	 * message is received) */
-	private Map<Integer, Double> costsForMessages;
-	/** From host of the last cost calculation */
-	private DTNHost lastCostFrom;
+	/** number of changes to the meeting probability sets of other hosts */
+	private int allProbsVersion;
+	/** costs to all hosts from the hosts (by address) the costs have been
+	 * calculated from with the current meeting probabilities */
+	private LongHashMap<double[]> costs;
+	/** version of the meeting probability sets of the costs */
+	private int costsVersion;
+	/** version of this host's meeting probability set of the costs */
+	private int costsOwnVersion;
 		
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -111,6 +115,7 @@ public class MaxPropRouter extends ActiveRouter {
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
+		this.costs = new LongHashMap<double[]>();
 		this.ackedMessageIds = new HashSet<String>();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
 	}	
@@ -118,8 +123,6 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) { // new connection
-			this.costsForMessages = null; // invalidate old cost estimates
-			
 			if (con.isInitiator(getHost())) {
 				/* initiator performs all the actions on behalf of the
 				 * other node too (so that the meeting probs are updated
@@ -148,6 +151,8 @@ public class MaxPropRouter extends ActiveRouter {
 						otherRouter.probs.replicate());
 				otherRouter.allProbs.put(getHost().getAddress(),
 						this.probs.replicate());
+				this.allProbsVersion++;
+				otherRouter.allProbsVersion++;
 			}
 		}
 		else {
@@ -168,6 +173,7 @@ public class MaxPropRouter extends ActiveRouter {
 			if (myMps == null || 
 				e.getValue().getLastUpdateTime() > myMps.getLastUpdateTime() ) {
 				this.allProbs.put(e.getKey(), e.getValue().replicate());
+				this.allProbsVersion++;
 			}
 		}
 	}
@@ -185,7 +191,6 @@ public class MaxPropRouter extends ActiveRouter {
 	
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
-		this.costsForMessages = null; // new message -> invalidate costs
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
@@ -285,8 +290,8 @@ public class MaxPropRouter extends ActiveRouter {
 	/**
 	 * Returns the message delivery cost between two hosts from this host's
 	 * point of view. If there is no path between "from" and "to" host, 
-	 * Double.MAX_VALUE is returned. Paths are calculated only to hosts
-	 * that this host has messages to.
+	 * Double.MAX_VALUE is returned. The costs from a host are calculated to
+	 * all hosts at once and reused until the meeting probabilities change.
 	 * @param from The host where a message is coming from
 	 * @param to The host where a message would be destined to
 	 * @return The cost of the cheapest path to the destination or 
@@ -294,24 +299,27 @@ public class MaxPropRouter extends ActiveRouter {
 	 */
 	public double getCost(DTNHost from, DTNHost to) {
 		/* check if the cached values are OK */
-		if (this.costsForMessages == null || lastCostFrom != from) {
-			/* cached costs are invalid -> calculate new costs */
+		if (this.costsVersion != this.allProbsVersion ||
+				this.costsOwnVersion != this.probs.getVersion()) {
+			/* probabilities have changed -> all cached costs are invalid */
+			this.costs.clear();
+			this.costsVersion = this.allProbsVersion;
+			this.costsOwnVersion = this.probs.getVersion();
+		}
+
+		int fromIndex = from.getAddress();
+		double[] costsFrom = this.costs.get(fromIndex);
+		if (costsFrom == null) {
+			/* no costs from this host yet -> calculate new costs */
 			this.allProbs.put(getHost().getAddress(), this.probs);
-			int fromIndex = from.getAddress();
-			
-			/* calculate paths only to nodes we have messages to 
-			 * (optimization) */
-			Set<Integer> toSet = new HashSet<Integer>();
-			for (Message m : getMessageCollection()) {
-				toSet.add(m.getTo().getAddress());
-			}
-						
-			this.costsForMessages = dijkstra.getCosts(fromIndex, toSet);
-			this.lastCostFrom = from; // store source host for caching checks
+			costsFrom = dijkstra.getCosts(fromIndex);
+			this.costs.put(fromIndex, costsFrom);
 		}
-		
-		if (costsForMessages.containsKey(to.getAddress())) {
-			return costsForMessages.get(to.getAddress());
+
+		int toIndex = to.getAddress();
+		if (toIndex < costsFrom.length &&
+				costsFrom[toIndex] != MaxPropDijkstra.INFINITY) {
+			return costsFrom[toIndex];
 		}
 		else {
 			/* there's no known path to the given host */
@@ -343,8 +351,8 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
-						m.getHops().contains(other)) {
+				if (othRouter.hasMessage(m) ||
+						m.hasVisited(other)) {
 					continue; 
 				}
 				messages.add(new Tuple<Message, Connection>(m,con));
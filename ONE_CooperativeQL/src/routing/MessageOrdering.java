@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import core.Message;
+import core.PropertySlot;
+
+/**
+ * Ordering of the messages in a router's message buffer that is kept up to
+ * date as messages are added to and removed from the buffer. The first
+ * message of the ordering (e.g., a drop candidate) is found in O(log n)
+ * time without sorting the whole buffer. The orderings are created with
+ * {@link MessageRouter#addMessageOrdering(Key, boolean)}. If the key of a
+ * buffered message changes, the router must be told about it with
+ * {@link MessageRouter#messageUpdated(Message)}.
+ */
+public class MessageOrdering {
+	/**
+	 * Key function of an ordering
+	 */
+	public interface Key {
+		/**
+		 * Returns the key of a message. The key must stay the same until
+		 * the message is removed or updated.
+		 * @param m The message
+		 * @return The key
+		 */
+		public double getKey(Message m);
+	}
+
+	/** Key for ordering by the time the messages were received */
+	public static final Key RECEIVE_TIME = new Key() {
+		public double getKey(Message m) {
+			return m.getReceiveTime();
+		}
+	};
+
+	/**
+	 * Key for ordering by the time the TTL of the messages expires. Messages
+	 * with infinite TTL expire last. Ascending expiry time order is also
+	 * ascending remaining TTL order.
+	 */
+	public static final Key EXPIRY_TIME = new Key() {
+		public double getKey(Message m) {
+			if (m.getInitTTL() == Message.INFINITE_TTL) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return m.getCreationTime() + m.getInitTTL() * 60.0;
+		}
+	};
+
+	/** Key for pseudo-random but consistent ordering */
+	public static final Key RANDOM = new Key() {
+		public double getKey(Message m) {
+			long h = m.getUniqueId() * 0x9E3779B97F4A7C15L;
+			return (h ^ (h >>> 29)) >>> 11;
+		}
+	};
+
+	/**
+	 * Key for the forwarding rate of the messages: the number of hops per
+	 * elapsed minute of the TTL. Messages that haven't been forwarded have
+	 * rate 0 and messages forwarded during their first minute infinite
+	 * rate. The rate changes over time so the key can only be used with
+	 * {@link MessageRouter#selectMessage(Key, boolean)}.
+	 */
+	public static final Key FORWARDING_RATE = new Key() {
+		public double getKey(Message m) {
+			int hops = m.getHopCount();
+			if (hops == 0) {
+				return 0;
+			}
+			return hops / ((double)m.getInitTTL() - m.getTtl());
+		}
+	};
+
+	/**
+	 * Returns a key for ordering by an integer property of the messages.
+	 * Messages without the property have key 0.
+	 * @param property Name of the property
+	 * @return The key
+	 */
+	public static Key intProperty(final String property) {
+		return new Key() {
+			public double getKey(Message m) {
+				Object value = m.getProperty(property);
+				return value == null ? 0 : ((Integer)value).intValue();
+			}
+		};
+	}
+
+	/**
+	 * Returns a key for ordering by an int or long property slot of the
+	 * messages. Messages without a value have key 0.
+	 * @param slot The property slot
+	 * @return The key
+	 */
+	public static Key intSlot(final PropertySlot slot) {
+		return new Key() {
+			public double getKey(Message m) {
+				return m.getLong(slot);
+			}
+		};
+	}
+
+	private final Key key;
+	private final Key tieKey;
+	private final boolean descending;
+	private final TreeSet<Entry> entries;
+	private final IdentityHashMap<Message, Entry> byMessage;
+	private long nextSeq;
+
+	/**
+	 * Creates a new, empty, ordering
+	 * @param key The key the messages are ordered by
+	 * @param descending If true, messages with larger keys come first
+	 * @param tieKey Key for ordering messages with equal keys (in ascending
+	 * order); messages that are still equal are in the order they were added
+	 */
+	public MessageOrdering(Key key, boolean descending, Key tieKey) {
+		this.key = key;
+		this.descending = descending;
+		this.tieKey = tieKey;
+		this.entries = new TreeSet<Entry>();
+		this.byMessage = new IdentityHashMap<Message, Entry>();
+	}
+
+	/**
+	 * Adds a message to the ordering
+	 * @param m The message
+	 */
+	public void add(Message m) {
+		Entry e = new Entry(m, key.getKey(m), tieKey.getKey(m), nextSeq++);
+		Entry old = byMessage.put(m, e);
+		if (old != null) {
+			entries.remove(old);
+		}
+		entries.add(e);
+	}
+
+	/**
+	 * Removes a message from the ordering
+	 * @param m The message
+	 * @return True if the message was in the ordering
+	 */
+	public boolean remove(Message m) {
+		Entry e = byMessage.remove(m);
+		if (e == null) {
+			return false;
+		}
+		entries.remove(e);
+		return true;
+	}
+
+	/**
+	 * Moves a message to the place its current key defines
+	 * @param m The message
+	 */
+	public void update(Message m) {
+		Entry e = byMessage.get(m);
+		if (e == null) {
+			return;
+		}
+		double k = key.getKey(m);
+		if (Double.compare(k, e.key) != 0) {
+			entries.remove(e);
+			e.key = k;
+			entries.add(e);
+		}
+	}
+
+	/**
+	 * Returns the first message of the ordering
+	 * @return The first message or null if the ordering is empty
+	 */
+	public Message first() {
+		return entries.isEmpty() ? null : entries.first().message;
+	}
+
+	/**
+	 * Returns the message that follows another message in the order. Unlike
+	 * with {@link #iterator()}, other messages may be added and removed
+	 * between the calls.
+	 * @param m The message, which must be in the ordering
+	 * @return The next message or null if the message is the last one
+	 */
+	public Message next(Message m) {
+		Entry e = entries.higher(byMessage.get(m));
+		return e == null ? null : e.message;
+	}
+
+	/**
+	 * Returns the messages in the order
+	 * @return An iterator over the messages; the ordering must not be
+	 * modified while iterating
+	 */
+	public Iterator<Message> iterator() {
+		final Iterator<Entry> i = entries.iterator();
+		return new Iterator<Message>() {
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+			public Message next() {
+				return i.next().message;
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of messages in the ordering
+	 * @return The number of messages
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Removes all messages from the ordering
+	 */
+	public void clear() {
+		entries.clear();
+		byMessage.clear();
+	}
+
+	/**
+	 * Ordering entry of a message with the cached keys
+	 */
+	private class Entry implements Comparable<Entry> {
+		private final Message message;
+		private double key;
+		private final double tieKey;
+		private final long seq;
+
+		private Entry(Message message, double key, double tieKey, long seq) {
+			this.message = message;
+			this.key = key;
+			this.tieKey = tieKey;
+			this.seq = seq;
+		}
+
+		public int compareTo(Entry other) {
+			int c = descending ? Double.compare(other.key, key) :
+				Double.compare(key, other.key);
+			if (c == 0) {
+				c = Double.compare(tieKey, other.tieKey);
+			}
+			if (c == 0) {
+				c = Long.compare(seq, other.seq);
+			}
+			return c;
+		}
+	}
+}
@@ -4,6 +4,8 @@
  */
 package routing;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -13,10 +15,14 @@ import java.util.List;
 import java.util.Random;
 
 import core.Application;
+import core.CompactIntSet;
 import core.Connection;
+import core.ControlSignal;
 import core.DTNHost;
+import core.LongHashMap;
 import core.Message;
 import core.MessageListener;
+import core.RngStreams;
 import core.Settings;
 import core.SettingsError;
 import core.SimClock;
@@ -46,6 +52,16 @@ public abstract class MessageRouter {
 	 * </UL>
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
+	/**
+	 * Delivered message details -setting id ({@value}). Number of the most 
+	 * recently delivered messages (to this host as the final recipient) 
+	 * whose details are kept for the routing info. Only the IDs of the
+	 * older delivered messages are remembered. Default value is 
+	 * {@link #DEF_DELIVERED_DETAILS}.
+	 */
+	public static final String DELIVERED_DETAILS_S = "deliveredDetails";
+	/** Default number of delivered messages with details ({@value}) */
+	public static final int DEF_DELIVERED_DETAILS = 10;
 	
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
@@ -66,12 +82,31 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -999;
 	
 	protected List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
-	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
-	/** The messages this router has received as the final recipient */
-	protected HashMap<String, Message> deliveredMessages;
+	/** The messages being transferred with (message handle, 
+	 * sender address) keys */
+	private LongHashMap<Message> incomingMessages;
+	/** Number of incoming messages by message handle */
+	private LongHashMap<int[]> incomingCounts;
+	/** The messages this router is carrying by message handle */
+	private LongHashMap<Message> messages; 
+	/** The carried messages by the address of their final recipient */
+	private LongHashMap<LongHashMap<Message>> messagesByDestination;
+	/** Total size of the messages in the buffer */
+	private int bufferOccupancy;
+	/** Total hop count of the messages in the buffer */
+	private int totalHopCount;
+	/** Number of messages in the buffer that have been relayed at least
+	 * once (i.e., whose hop count is above zero) */
+	private int nrofRelayedMessages;
+	/** Orderings of the buffered messages that are kept up to date */
+	private List<MessageOrdering> orderings;
+	/** Handles of the messages this router has received as the final 
+	 * recipient */
+	private CompactIntSet deliveredMessages;
+	/** The most recently delivered messages */
+	private ArrayDeque<Message> deliveredDetails;
+	/** Maximum number of delivered messages with details */
+	private int nrofDeliveredDetails;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -111,7 +146,18 @@ public abstract class MessageRouter {
 		else {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
+		if (s.contains(DELIVERED_DETAILS_S)) {
+			this.nrofDeliveredDetails = s.getInt(DELIVERED_DETAILS_S);
+			if (nrofDeliveredDetails < 0) {
+				throw new SettingsError("Invalid value for " + 
+						s.getFullPropertyName(DELIVERED_DETAILS_S));
+			}
+		}
+		else {
+			this.nrofDeliveredDetails = DEF_DELIVERED_DETAILS;
+		}
 		
+		this.orderings = new ArrayList<MessageOrdering>();
 	}
 	
 	/**
@@ -122,9 +168,18 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
+		this.incomingMessages = new LongHashMap<Message>();
+		this.incomingCounts = new LongHashMap<int[]>();
+		this.messages = new LongHashMap<Message>();
+		this.messagesByDestination = new LongHashMap<LongHashMap<Message>>();
+		this.bufferOccupancy = 0;
+		this.totalHopCount = 0;
+		this.nrofRelayedMessages = 0;
+		for (MessageOrdering o : this.orderings) {
+			o.clear();
+		}
+		this.deliveredMessages = new CompactIntSet();
+		this.deliveredDetails = new ArrayDeque<Message>();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -137,6 +192,8 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.nrofDeliveredDetails = r.nrofDeliveredDetails;
+		this.orderings = new ArrayList<MessageOrdering>();
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -157,6 +214,22 @@ public abstract class MessageRouter {
 				app.update(this.host);
 			}
 		}
+	}
+
+	/**
+	 * Returns the earliest simulation time when this router needs to be
+	 * updated even if no new events (messages, connections etc.) occur
+	 * before that. Routers whose state changes with time alone must override
+	 * this. This implementation returns the current time if there are any
+	 * applications (which may act on every update) and
+	 * {@link Double#MAX_VALUE} otherwise.
+	 * @return The next time this router needs an update
+	 */
+	public double getNextWakeupTime() {
+		if (!this.applications.isEmpty()) {
+			return SimClock.getTime();
+		}
+		return Double.MAX_VALUE;
 	}
 	
 	/**
@@ -171,7 +244,7 @@ public abstract class MessageRouter {
 	 * @return The message
 	 */
 	protected Message getMessage(String id) {
-		return this.messages.get(id);
+		return this.messages.get(Message.getHandle(id));
 	}
 	
 	/**
@@ -180,7 +253,27 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	protected boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.containsKey(Message.getHandle(id));
+	}
+	
+	/**
+	 * Returns the buffered message that has the same ID as the given 
+	 * message (i.e., is a replicate of the same message).
+	 * @param m The message
+	 * @return The buffered message or null if there's no such message
+	 */
+	protected Message getMessage(Message m) {
+		return this.messages.get(m.getHandle());
+	}
+	
+	/**
+	 * Checks if this router has a message with the same ID as the given 
+	 * message buffered.
+	 * @param m The message
+	 * @return True if the router has such message, false if not
+	 */
+	protected boolean hasMessage(Message m) {
+		return this.messages.containsKey(m.getHandle());
 	}
 	
 	/**
@@ -192,7 +285,23 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return (this.deliveredMessages.contains(m.getHandle()));
+	}
+	
+	/**
+	 * Marks a message delivered to this host as the final recipient
+	 * @param m The delivered message
+	 */
+	protected void addToDeliveredMessages(Message m) {
+		if (!this.deliveredMessages.add(m.getHandle())) {
+			return;
+		}
+		if (this.nrofDeliveredDetails > 0) {
+			if (this.deliveredDetails.size() == this.nrofDeliveredDetails) {
+				this.deliveredDetails.removeFirst();
+			}
+			this.deliveredDetails.addLast(m);
+		}
 	}
 	
 	/**
@@ -207,6 +316,33 @@ public abstract class MessageRouter {
 		return this.messages.values();
 	}
 	
+	/**
+	 * Returns the buffered messages whose final recipient is the given host
+	 * in the same order as {@link #getMessageCollection()} returns them.
+	 * The same note about modifications applies.
+	 * @param to The final recipient
+	 * @return The messages for the host
+	 */
+	protected Collection<Message> getMessagesFor(DTNHost to) {
+		LongHashMap<Message> forHost = 
+			this.messagesByDestination.get(to.getAddress());
+		if (forHost == null) {
+			return Collections.emptyList();
+		}
+		return forHost.values();
+	}
+	
+	/**
+	 * Returns a number that tells the position of a message in the order of
+	 * {@link #getMessageCollection()}. The numbers are valid only until the
+	 * buffer is modified.
+	 * @param m The message
+	 * @return The position number or -1 if the message is not buffered
+	 */
+	protected int getBufferPosition(Message m) {
+		return this.messages.position(m.getHandle());
+	}
+	
 	/**
 	 * Returns the number of messages this router has
 	 * @return How many messages this router has
@@ -231,17 +367,37 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.bufferOccupancy;
+	}
+	
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return The total size of the messages (bytes)
+	 */
+	public int getBufferOccupancy() {
+		return this.bufferOccupancy;
+	}
+	
+	/**
+	 * Returns the sum of the hop counts of the messages in the buffer
+	 * @return The total hop count
+	 * @see Message#getHopCount()
+	 */
+	public int getTotalHopCount() {
+		return this.totalHopCount;
+	}
+	
+	/**
+	 * Returns the number of messages in the buffer that this host has
+	 * received from another host (i.e., whose hop count is above zero)
+	 * @return The number of relayed messages in the buffer
+	 */
+	public int getNrofRelayedMessages() {
+		return this.nrofRelayedMessages;
 	}
 	
 	/**
@@ -252,6 +408,19 @@ public abstract class MessageRouter {
 		return this.host;
 	}
 	
+	/**
+	 * Creates a random number generator for the host of this router. The
+	 * host's routing stream of the run's seed is used (see
+	 * {@link RngStreams#ROUTING_SUBSTREAM}), so the values drawn don't
+	 * depend on the other hosts. Can be called only after
+	 * {@link #init(DTNHost, List)}.
+	 * @return A new random number generator
+	 */
+	protected Random createHostRng() {
+		return RngStreams.create(this.host.getAddress(),
+				RngStreams.ROUTING_SUBSTREAM);
+	}
+	
 	/**
 	 * Start sending a message to another host.
 	 * @param id Id of the message to send
@@ -277,6 +446,17 @@ public abstract class MessageRouter {
 		return false; // default behavior is to not start -- subclasses override
 	}
 	
+	/**
+	 * Receives a control signal from another host. Signals don't go through
+	 * the message buffers or the message listeners; routers that use
+	 * signals override this method to react to them.
+	 * @param signal The signal
+	 * @param from Who the signal is from
+	 */
+	public void receiveSignal(ControlSignal signal, DTNHost from) {
+		// default behavior is to ignore signals -- subclasses override
+	}
+
 	/**
 	 * Try to start receiving a message from another host.
 	 * @param m Message to put in the receiving buffer
@@ -341,7 +521,7 @@ public abstract class MessageRouter {
 			addToMessages(aMessage, false);
 		}
 		else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			addToDeliveredMessages(aMessage);
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -359,7 +539,15 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		int handle = m.getHandle();
+		if (this.incomingMessages.put(incomingKey(handle, from), m) == null) {
+			int[] count = this.incomingCounts.get(handle);
+			if (count == null) {
+				count = new int[1];
+				this.incomingCounts.put(handle, count);
+			}
+			count[0]++;
+		}
 	}
 	
 	/**
@@ -370,7 +558,25 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		int handle = Message.getHandle(id);
+		Message m = this.incomingMessages.remove(incomingKey(handle, from));
+		if (m != null) {
+			int[] count = this.incomingCounts.get(handle);
+			if (--count[0] == 0) {
+				this.incomingCounts.remove(handle);
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * Returns the incoming messages buffer key of a message
+	 * @param handle Handle of the message's ID
+	 * @param from The host that sent the message
+	 * @return The key
+	 */
+	private static long incomingKey(int handle, DTNHost from) {
+		return ((long)handle << 32) | (from.getAddress() & 0xFFFFFFFFL);
 	}
 	
 	/**
@@ -380,7 +586,7 @@ public abstract class MessageRouter {
 	 * @return True if such message is incoming right now
 	 */
 	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+		return this.incomingCounts.containsKey(Message.getHandle(id));
 	}
 	
 	/**
@@ -391,7 +597,29 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		Message old = this.messages.put(m.getHandle(), m);
+		if (old != null) {
+			updateLedger(old, -1);
+			if (old.getTo() != m.getTo()) {
+				removeFromDestinationIndex(old);
+			}
+		}
+		updateLedger(m, 1);
+		if (m.getTo() != null) {
+			LongHashMap<Message> forHost = 
+				this.messagesByDestination.get(m.getTo().getAddress());
+			if (forHost == null) {
+				forHost = new LongHashMap<Message>();
+				this.messagesByDestination.put(m.getTo().getAddress(), forHost);
+			}
+			forHost.put(m.getHandle(), m);
+		}
+		for (MessageOrdering o : this.orderings) {
+			if (old != null) {
+				o.remove(old);
+			}
+			o.add(m);
+		}
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -406,10 +634,137 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		Message m = this.messages.remove(Message.getHandle(id));
+		if (m != null) {
+			updateLedger(m, -1);
+			removeFromDestinationIndex(m);
+			for (MessageOrdering o : this.orderings) {
+				o.remove(m);
+			}
+		}
 		return m;
 	}
 	
+	private void removeFromDestinationIndex(Message m) {
+		if (m.getTo() == null) {
+			return;
+		}
+		LongHashMap<Message> forHost = 
+			this.messagesByDestination.get(m.getTo().getAddress());
+		if (forHost != null && forHost.get(m.getHandle()) == m) {
+			forHost.remove(m.getHandle());
+		}
+	}
+	
+	/**
+	 * Creates a new ordering of the buffered messages that is kept up to
+	 * date when messages are added to and removed from the buffer.
+	 * Messages with equal keys are ordered according to the queue mode.
+	 * @param key The key the messages are ordered by
+	 * @param descending If true, messages with larger keys come first
+	 * @return The ordering
+	 */
+	protected MessageOrdering addMessageOrdering(MessageOrdering.Key key,
+			boolean descending) {
+		MessageOrdering o = new MessageOrdering(key, descending, 
+				getTieKey());
+		if (this.messages != null) {
+			for (Message m : this.messages.values()) {
+				o.add(m);
+			}
+		}
+		this.orderings.add(o);
+		return o;
+	}
+	
+	/**
+	 * Updates the place of a buffered message in the message orderings.
+	 * Must be called when a value that an ordering key depends on (e.g. a 
+	 * property) is changed for a message in the buffer.
+	 * @param m The message that was changed
+	 */
+	protected void messageUpdated(Message m) {
+		if (this.messages.get(m.getHandle()) != m) {
+			return; // not in the buffer
+		}
+		for (MessageOrdering o : this.orderings) {
+			o.update(m);
+		}
+	}
+	
+	/**
+	 * Returns the buffered message with the smallest or the largest key
+	 * using a single pass over the buffer. Meant for keys that change over 
+	 * time and can't thus be kept in a {@link MessageOrdering}. Messages
+	 * with equal keys are ordered like in the orderings.
+	 * @param key The key the messages are compared by
+	 * @param largest If true, the message with the largest key is returned
+	 * @return The selected message or null if the buffer is empty
+	 */
+	protected Message selectMessage(MessageOrdering.Key key, 
+			boolean largest) {
+		MessageOrdering.Key tieKey = getTieKey();
+		Message selected = null;
+		double selectedKey = 0;
+		for (Message m : this.messages.values()) {
+			double k = key.getKey(m);
+			int c = selected == null ? -1 : Double.compare(k, selectedKey);
+			if (largest && selected != null) {
+				c = -c;
+			}
+			if (c == 0) {
+				c = Double.compare(tieKey.getKey(m), tieKey.getKey(selected));
+			}
+			if (c < 0) {
+				selected = m;
+				selectedKey = k;
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * Returns the key that orders the messages with equal keys according
+	 * to the queue mode
+	 * @return Receive time key in FIFO mode and random key otherwise
+	 */
+	protected MessageOrdering.Key getTieKey() {
+		return sendQueueMode == Q_MODE_FIFO ? MessageOrdering.RECEIVE_TIME :
+			MessageOrdering.RANDOM;
+	}
+	
+	/**
+	 * Deletes (drops) messages in the order of the given ordering until
+	 * at least the given fraction of the buffer is free
+	 * @param o The ordering of the messages to delete
+	 * @param freeFraction The fraction of the buffer that should be free
+	 * @return The number of deleted messages
+	 */
+	protected int deleteUntilFree(MessageOrdering o, double freeFraction) {
+		int nrof = 0;
+		while (getFreeBufferSize() < freeFraction * getBufferSize() &&
+				o.size() > 0) {
+			deleteMessage(o.first().getId(), true);
+			nrof++;
+		}
+		return nrof;
+	}
+	
+	/**
+	 * Updates the totals of the buffered messages when a message is added
+	 * to or removed from the buffer. The size and the path of a message must
+	 * not change while the message is in the buffer.
+	 * @param m The message
+	 * @param sign 1 if the message was added, -1 if removed
+	 */
+	private void updateLedger(Message m, int sign) {
+		this.bufferOccupancy += sign * m.getSize();
+		this.totalHopCount += sign * m.getHopCount();
+		if (m.getHopCount() > 0) {
+			this.nrofRelayedMessages += sign;
+		}
+	}
+	
 	/**
 	 * This method should be called (on the receiving host) when a message 
 	 * transfer was aborted.
@@ -557,7 +912,7 @@ public abstract class MessageRouter {
 			incoming.addMoreInfo(new RoutingInfo(m));
 		}
 		
-		for (Message m : this.deliveredMessages.values()) {
+		for (Message m : this.deliveredDetails) {
 			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
 		}
 		
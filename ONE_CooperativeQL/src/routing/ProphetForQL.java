@@ -1,11 +1,5 @@
 package routing;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import core.Connection;
@@ -45,9 +39,15 @@ public class ProphetForQL extends QLCC_Cooperative {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredictabilities preds;
+	/** messages that the peers are more likely to deliver */
+	private ForwardingCandidates candidates;
+	/** key for comparing messages by the delivery predictability */
+	private final MessageOrdering.Key deliveryPredKey = new MessageOrdering.Key() {
+		public double getKey(Message m) {
+			return getPredFor(m.getTo());
+		}
+	};
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in the given
@@ -66,6 +66,7 @@ public class ProphetForQL extends QLCC_Cooperative {
 		}
 
 		initPreds();
+		initCandidates();
 	}
 
 	/**
@@ -78,13 +79,25 @@ public class ProphetForQL extends QLCC_Cooperative {
 		this.secondsInTimeUnit = r.secondsInTimeUnit;
 		this.beta = r.beta;
 		initPreds();
+		initCandidates();
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes delivery predictabilities
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit);
+	}
+
+	/**
+	 * Initializes the forwarding candidate queues
+	 */
+	private void initCandidates() {
+		this.candidates = new ForwardingCandidates(this) {
+			protected DeliveryPredictabilities getPreds(MessageRouter r) {
+				return ((ProphetForQL) r).preds;
+			}
+		};
 	}
 
 	@Override
@@ -102,9 +115,7 @@ public class ProphetForQL extends QLCC_Cooperative {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, P_INIT);
 	}
 
 	/**
@@ -115,12 +126,7 @@ public class ProphetForQL extends QLCC_Cooperative {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		} else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -134,50 +140,21 @@ public class ProphetForQL extends QLCC_Cooperative {
 		MessageRouter otherRouter = host.getRouter();
 		assert otherRouter instanceof ProphetForQL : "PRoPHET only works " + " with other routers of same type";
 
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = ((ProphetForQL) otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + (1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), host,
+				((ProphetForQL) otherRouter).preds, beta);
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of time
-	 * units that have elapsed since the last time the metric was aged.
-	 * 
-	 * @see #SECONDS_IN_UNIT_S
+	 * Returns the current time while there are connections since the
+	 * predictabilities are aged (and the forwarding order may change) on
+	 * every update when connected.
 	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / secondsInTimeUnit;
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue() * mult);
+	@Override
+	public double getNextWakeupTime() {
+		if (getConnections().size() > 0) {
+			return SimClock.getTime();
 		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * 
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		return super.getNextWakeupTime();
 	}
 
 	@Override
@@ -187,93 +164,46 @@ public class ProphetForQL extends QLCC_Cooperative {
 	}
 
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = new ArrayList<Tuple<Message, Connection>>();
-
-		Collection<Message> msgCollection = getMessageCollection();
-
-		/*
-		 * for all connected hosts collect all messages that have a higher probability
-		 * of delivery by the other host
-		 */
-		for (Connection con : getConnections()) {
-			DTNHost other = con.getOtherNode(getHost());
-			ProphetForQL othRouter = (ProphetForQL) other.getRouter();
-
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
-
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
-					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m, con));
-				}
-			}
-		}
+		return candidates.tryCandidates();
+	}
 
-		if (messages.size() == 0) {
-			return null;
-		}
+	@Override
+	public void connectionDown(Connection con) {
+		candidates.connectionDown(con);
+	}
 
-		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages); // try to send messages
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m);
+		super.addToMessages(m, newMessage);
+		candidates.messageAdded(old, m);
 	}
 
-	private class TupleComparator implements Comparator<Tuple<Message, Connection>> {
-
-		public int compare(Tuple<Message, Connection> tuple1, Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetForQL) tuple1.getValue().getOtherNode(getHost()).getRouter())
-					.getPredFor(tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetForQL) tuple2.getValue().getOtherNode(getHost()).getRouter())
-					.getPredFor(tuple2.getKey().getTo());
-
-			// bigger probability should come first
-			if (p2 - p1 == 0) {
-				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
-			} else if (p2 - p1 < 0) {
-				return -1;
-			} else {
-				return 1;
-			}
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			candidates.messageRemoved(m);
 		}
+		return m;
 	}
 
 	@Override
 	protected void dropbasedonlowestutility() {
-		List<Tuple<Message, Double>> messages = new ArrayList<Tuple<Message, Double>>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			double msgDP = this.getPredFor(m.getTo());
-			messages.add(new Tuple<Message, Double>(m, msgDP));
-		}
-
-		Collections.sort(messages, new DPComparator());
-
-		for (Tuple<Message, Double> msgDP : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				//nrofdrops++;
-				deleteMessage(msgDP.getKey().getId(), false);
-			}
-			break;
+		Message msgDP = selectMessage(this.deliveryPredKey, false);
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (msgDP != null && this.getFreeBufferSize() < deleteth) {
+			//nrofdrops++;
+			deleteMessage(msgDP.getId(), false);
 		}
 	}
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + " delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+		for (Map.Entry<DTNHost, Double> e : preds.toMap().entrySet()) {
 			DTNHost host = e.getKey();
 			Double value = e.getValue();
 
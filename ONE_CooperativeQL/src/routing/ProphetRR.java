@@ -5,8 +5,6 @@ package routing;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -55,9 +53,9 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredictabilities preds;
+	/** messages that the peers are more likely to deliver */
+	private ForwardingCandidates candidates;
 
 	// RR
 	private int nrofreps = 0;
@@ -73,7 +71,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	public List<CVandTime> cvandtime;
 
 	/** buffer that save receipt */
-	public Map<String, ACKTTL> receiptBuffer;
+	public ReceiptBuffer receiptBuffer;
 
 	/** message that should be deleted */
 	private Set<String> messageReadytoDelete;
@@ -95,6 +93,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 		}
 
 		initPreds();
+		initCandidates();
 		limitconmap();
 		cvtimelist();
 		receiptbuffer();
@@ -111,6 +110,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 		this.secondsInTimeUnit = r.secondsInTimeUnit;
 		this.beta = r.beta;
 		initPreds();
+		initCandidates();
 		limitconmap();
 		cvtimelist();
 		receiptbuffer();
@@ -118,10 +118,21 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes delivery predictabilities
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit);
+	}
+
+	/**
+	 * Initializes the forwarding candidate queues
+	 */
+	private void initCandidates() {
+		this.candidates = new ForwardingCandidates(this) {
+			protected DeliveryPredictabilities getPreds(MessageRouter r) {
+				return ((ProphetRR) r).preds;
+			}
+		};
 	}
 
 	private void limitconmap() {
@@ -133,7 +144,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	}
 
 	private void receiptbuffer() {
-		this.receiptBuffer = new HashMap<>();
+		this.receiptBuffer = new ReceiptBuffer();
 	}
 
 	private void msgreadytodelete() {
@@ -155,17 +166,10 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 
 			ProphetRR peerRouter = (ProphetRR) otherHost.getRouter();
 
-			Map<String, ACKTTL> peerRB = peerRouter.getReceiptBuffer();
-			for (Map.Entry<String, ACKTTL> entry : peerRB.entrySet()) {
-				if (!receiptBuffer.containsKey(entry.getKey())) {
-					receiptBuffer.put(entry.getKey(), entry.getValue());
-
-				}
-
-			}
+			receiptBuffer.merge(peerRouter.getReceiptBuffer());
 			for (Message m : thisMsgCollection) {
 				/** Delete message that have a receipt */
-				if (receiptBuffer.containsKey(m.getId())) {
+				if (receiptBuffer.contains(m)) {
 
 					messageReadytoDelete.add(m.getId());
 				}
@@ -199,6 +203,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 			this.CV = newCV;
 
 			conlimitmap.remove(con);
+			candidates.connectionDown(con);
 			messageReadytoDelete.clear();
 
 		}
@@ -225,9 +230,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, P_INIT);
 	}
 
 	/**
@@ -238,12 +241,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		} else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -257,50 +255,21 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 		MessageRouter otherRouter = host.getRouter();
 		assert otherRouter instanceof ProphetRR : "PRoPHET only works " + " with other routers of same type";
 
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = ((ProphetRR) otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + (1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), host,
+				((ProphetRR) otherRouter).preds, beta);
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of time
-	 * units that have elapsed since the last time the metric was aged.
-	 * 
-	 * @see #SECONDS_IN_UNIT_S
+	 * Returns the current time while there are connections since the
+	 * predictabilities are aged (and the forwarding order may change) on
+	 * every update when connected.
 	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / secondsInTimeUnit;
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue() * mult);
+	@Override
+	public double getNextWakeupTime() {
+		if (getConnections().size() > 0) {
+			return SimClock.getTime();
 		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * 
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		return super.getNextWakeupTime();
 	}
 
 	@Override
@@ -322,44 +291,27 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 	 * Tries to send all other messages to all connected hosts ordered by their
 	 * delivery probability
 	 * 
-	 * @return The return value of {@link #tryMessagesForConnected(List)}
+	 * @return The message and the connection whose transfer started or null
+	 * if no transfer was started
 	 */
 	private Tuple<Message, Connection> tryOtherMessages() {
-		List<Tuple<Message, Connection>> messages = new ArrayList<Tuple<Message, Connection>>();
-
-		Collection<Message> msgCollection = getMessageCollection();
-
-		/*
-		 * for all connected hosts collect all messages that have a higher probability
-		 * of delivery by the other host
-		 */
-		for (Connection con : getConnections()) {
-			DTNHost other = con.getOtherNode(getHost());
-			ProphetRR othRouter = (ProphetRR) other.getRouter();
-
-			if (othRouter.isTransferring()) {
-				continue; // skip hosts that are transferring
-			}
+		return candidates.tryCandidates();
+	}
 
-			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
-					continue; // skip messages that the other one has
-				}
-				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
-					// the other node has higher probability of delivery
-					messages.add(new Tuple<Message, Connection>(m, con));
-				}
-			}
-		}
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		Message old = getMessage(m);
+		super.addToMessages(m, newMessage);
+		candidates.messageAdded(old, m);
+	}
 
-		if (messages.size() == 0) {
-			return null;
+	@Override
+	protected Message removeFromMessages(String id) {
+		Message m = super.removeFromMessages(id);
+		if (m != null) {
+			candidates.messageRemoved(m);
 		}
-
-		// sort the message-connection tuples
-		Collections.sort(messages, new TupleComparator());
-		return tryMessagesForConnected(messages);
-
+		return m;
 	}
 
 	@Override
@@ -390,33 +342,6 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 
 	}
 
-	/**
-	 * Comparator for Message-Connection-Tuples that orders the tuples by their
-	 * delivery probability by the host on the other side of the connection
-	 * (GRTRMax)
-	 */
-	private class TupleComparator implements Comparator<Tuple<Message, Connection>> {
-
-		public int compare(Tuple<Message, Connection> tuple1, Tuple<Message, Connection> tuple2) {
-			// delivery probability of tuple1's message with tuple1's connection
-			double p1 = ((ProphetRR) tuple1.getValue().getOtherNode(getHost()).getRouter())
-					.getPredFor(tuple1.getKey().getTo());
-			// -"- tuple2...
-			double p2 = ((ProphetRR) tuple2.getValue().getOtherNode(getHost()).getRouter())
-					.getPredFor(tuple2.getKey().getTo());
-
-			// bigger probability should come first
-			if (p2 - p1 == 0) {
-				/* equal probabilities -> let queue mode decide */
-				return compareByQueueMode(tuple1.getKey(), tuple2.getKey());
-			} else if (p2 - p1 < 0) {
-				return -1;
-			} else {
-				return 1;
-			}
-		}
-	}
-
 	// ADDED NEW METHOD
 
 	protected boolean makeRoomForMessage(int size) {
@@ -449,9 +374,8 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 		// no of replication increased by 1
 		nrofreps++;
 		// ack
-		if (isFinalDest(aCopy, this.getHost()) && !receiptBuffer.containsKey(aCopy.getId())) {
-			ACKTTL ack = new ACKTTL(SimClock.getTime(), aCopy.getTtl());
-			receiptBuffer.put(aCopy.getId(), ack);
+		if (isFinalDest(aCopy, this.getHost())) {
+			receiptBuffer.addReceipt(getHost(), aCopy);
 		}
 
 		return aCopy;
@@ -472,16 +396,8 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 
 	// count message hops
 	private int msgtotalhops() {
-		Collection<Message> msg = getMessageCollection();
-		int totalhops = 0;
-		if (!msg.isEmpty()) {
-			for (Message m : msg) {
-				if (!(m.getHopCount() == 0)) {
-					totalhops = totalhops + (m.getHopCount() - 1);
-				}
-			}
-		}
-		return totalhops;
+		// hops after the first hop of the relayed messages
+		return getTotalHopCount() - getNrofRelayedMessages();
 	}
 
 	// count CV
@@ -511,11 +427,10 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + " delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+		for (Map.Entry<DTNHost, Double> e : preds.toMap().entrySet()) {
 			DTNHost host = e.getKey();
 			Double value = e.getValue();
 
@@ -538,7 +453,7 @@ public class ProphetRR extends ActiveRouter implements CVDetectionEngine {
 		return this.cvandtime;
 	}
 
-	public Map<String, ACKTTL> getReceiptBuffer() {
+	public ReceiptBuffer getReceiptBuffer() {
 		return receiptBuffer;
 	}
 
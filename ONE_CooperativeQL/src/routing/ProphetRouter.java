@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -52,9 +51,7 @@ public class ProphetRouter extends ActiveRouter {
 	private double beta;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
+	private DeliveryPredictabilities preds;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -87,10 +84,10 @@ public class ProphetRouter extends ActiveRouter {
 	}
 	
 	/**
-	 * Initializes predictability hash
+	 * Initializes delivery predictabilities
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(GAMMA, secondsInTimeUnit);
 	}
 
 	@Override
@@ -108,9 +105,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * P_INIT;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, P_INIT);
 	}
 	
 	/**
@@ -120,13 +115,7 @@ public class ProphetRouter extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 	
 	/**
@@ -140,50 +129,21 @@ public class ProphetRouter extends ActiveRouter {
 		assert otherRouter instanceof ProphetRouter : "PRoPHET only works " + 
 			" with other routers of same type";
 		
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouter)otherRouter).getDeliveryPreds();
-		
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-			
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), host,
+				((ProphetRouter)otherRouter).preds, beta);
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
+	 * Returns the current time while there are connections since the
+	 * predictabilities are aged (and the forwarding order may change) on
+	 * every update when connected.
 	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate) / 
-			secondsInTimeUnit;
-		
-		if (timeDiff == 0) {
-			return;
-		}
-		
-		double mult = Math.pow(GAMMA, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
+	@Override
+	public double getNextWakeupTime() {
+		if (getConnections().size() > 0) {
+			return SimClock.getTime();
 		}
-		
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-	
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		return super.getNextWakeupTime();
 	}
 	
 	@Override
@@ -223,7 +183,7 @@ public class ProphetRouter extends ActiveRouter {
 			}
 			
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m)) {
 					continue; // skip messages that the other one has
 				}
                                 tryAllMessagesToAllConnections();
@@ -278,12 +238,11 @@ public class ProphetRouter extends ActiveRouter {
 	
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 				" delivery prediction(s)");
 		
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+		for (Map.Entry<DTNHost, Double> e : preds.toMap().entrySet()) {
 			DTNHost host = e.getKey();
 			Double value = e.getValue();
 			
@@ -69,15 +69,12 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	private double ptavg;
 
 	/** delivery predictabilities */
-	private Map<DTNHost, Double> preds;
+	private DeliveryPredictabilities preds;
 
 	/** last meeting time with a node */
 	private Map<DTNHost, Double> meetings;
 	private int nrofSamples;
 	private double meanIET;
-
-	/** last delivery predictability update (sim)time */
-	private double lastAgeUpdate;
 
 
 	/**
@@ -120,10 +117,10 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	}
 
 	/**
-	 * Initializes predictability hash
+	 * Initializes delivery predictabilities
 	 */
 	private void initPreds() {
-		this.preds = new HashMap<DTNHost, Double>();
+		this.preds = new DeliveryPredictabilities(gamma, 1);
 	}
 
 	/**
@@ -312,6 +309,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		}
 		gamma = Math.exp(-b);
 		pinit = 1-zeta;
+		preds.setGamma(gamma);
 	}
 
 	/**
@@ -320,9 +318,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @param host The host we just met
 	 */
 	private void updateDeliveryPredFor(DTNHost host) {
-		double oldValue = getPredFor(host);
-		double newValue = oldValue + (1 - oldValue) * pinit;
-		preds.put(host, newValue);
+		preds.updateEncounter(host, pinit);
 	}
 
 	/**
@@ -332,13 +328,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 	 * @return the current P value
 	 */
 	public double getPredFor(DTNHost host) {
-		ageDeliveryPreds(); // make sure preds are updated before getting
-		if (preds.containsKey(host)) {
-			return preds.get(host);
-		}
-		else {
-			return 0;
-		}
+		return preds.get(host);
 	}
 
 	/**
@@ -352,49 +342,21 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 		assert otherRouter instanceof ProphetRouterWithEstimation : "PRoPHET only works " + 
 		" with other routers of same type";
 
-		double pForHost = getPredFor(host); // P(a,b)
-		Map<DTNHost, Double> othersPreds = 
-			((ProphetRouterWithEstimation)otherRouter).getDeliveryPreds();
-
-		for (Map.Entry<DTNHost, Double> e : othersPreds.entrySet()) {
-			if (e.getKey() == getHost()) {
-				continue; // don't add yourself
-			}
-
-			double pOld = getPredFor(e.getKey()); // P(a,c)_old
-			double pNew = pOld + ( 1 - pOld) * pForHost * e.getValue() * beta;
-			preds.put(e.getKey(), pNew);
-		}
+		preds.updateTransitive(getHost(), host,
+				((ProphetRouterWithEstimation)otherRouter).preds, beta);
 	}
 
 	/**
-	 * Ages all entries in the delivery predictions.
-	 * <CODE>P(a,b) = P(a,b)_old * (GAMMA ^ k)</CODE>, where k is number of
-	 * time units that have elapsed since the last time the metric was aged.
-	 * @see #SECONDS_IN_UNIT_S
+	 * Returns the current time while there are connections since the
+	 * predictabilities are aged (and the forwarding order may change) on
+	 * every update when connected.
 	 */
-	private void ageDeliveryPreds() {
-		double timeDiff = (SimClock.getTime() - this.lastAgeUpdate);
-
-		if (timeDiff == 0) {
-			return;
-		}
-
-		double mult = Math.pow(gamma, timeDiff);
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
-			e.setValue(e.getValue()*mult);
+	@Override
+	public double getNextWakeupTime() {
+		if (getConnections().size() > 0) {
+			return SimClock.getTime();
 		}
-
-		this.lastAgeUpdate = SimClock.getTime();
-	}
-
-	/**
-	 * Returns a map of this router's delivery predictions
-	 * @return a map of this router's delivery predictions
-	 */
-	private Map<DTNHost, Double> getDeliveryPreds() {
-		ageDeliveryPreds(); // make sure the aging is done
-		return this.preds;
+		return super.getNextWakeupTime();
 	}
 
 	@Override
@@ -434,7 +396,7 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 			}
 
 			for (Message m : msgCollection) {
-				if (othRouter.hasMessage(m.getId())) {
+				if (othRouter.hasMessage(m)) {
 					continue; // skip messages that the other one has
 				}
 				if (othRouter.getPredFor(m.getTo()) > getPredFor(m.getTo())) {
@@ -488,12 +450,11 @@ public class ProphetRouterWithEstimation extends ActiveRouter {
 
 	@Override
 	public RoutingInfo getRoutingInfo() {
-		ageDeliveryPreds();
 		RoutingInfo top = super.getRoutingInfo();
 		RoutingInfo ri = new RoutingInfo(preds.size() + 
 		" delivery prediction(s)");
 
-		for (Map.Entry<DTNHost, Double> e : preds.entrySet()) {
+		for (Map.Entry<DTNHost, Double> e : preds.toMap().entrySet()) {
 			DTNHost host = e.getKey();
 			Double value = e.getValue();
 
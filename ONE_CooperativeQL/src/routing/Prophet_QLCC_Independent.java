@@ -75,7 +75,7 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 	private List<CVandTime> cvandtime;
 
 	/** buffer that save receipt */
-	protected Map<String, ACKTTL> receiptBuffer;
+	protected ReceiptBuffer receiptBuffer;
 
 	/** message that should be deleted */
 	protected Set<String> messageReadytoDelete;
@@ -120,6 +120,13 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 	/** message property to record its number of copies */
 	public static final String repsproperty = "nrofcopies";
+	/** slot of the number of copies property */
+	public static final PropertySlot repsslot = PropertySlot.intSlot(repsproperty);
+
+	/** buffered messages in the order of their TTL expiry */
+	private MessageOrdering ttlOrdering;
+	/** buffered messages in descending order of their number of copies */
+	private MessageOrdering repsOrdering;
 	
 	private int action7 = 0;
 	private int totalaction = 0;
@@ -170,6 +177,7 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 		cvtimelist();
 		receiptbuffer();
 		msgreadytodelete();
+		msgorderings();
 	}
 
 	/**
@@ -190,6 +198,7 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 		cvtimelist();
 		receiptbuffer();
 		msgreadytodelete();
+		msgorderings();
 	}
 
 	/**
@@ -199,6 +208,12 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 		this.explorationPolicy = new BoltzmannExploration(1);
 	}
 
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		((BoltzmannExploration) this.explorationPolicy).setRandom(createHostRng());
+	}
+
 	protected void initQL() {
 
 
@@ -216,13 +231,18 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 	}
 
 	protected void receiptbuffer() {
-		this.receiptBuffer = new HashMap<>();
+		this.receiptBuffer = new ReceiptBuffer();
 	}
 
 	protected void msgreadytodelete() {
 		this.messageReadytoDelete = new HashSet<>();
 	}
 
+	protected void msgorderings() {
+		this.ttlOrdering = addMessageOrdering(MessageOrdering.EXPIRY_TIME, false);
+		this.repsOrdering = addMessageOrdering(MessageOrdering.intSlot(repsslot), true);
+	}
+
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) {
@@ -237,17 +257,10 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 			Prophet_QLCC_Independent peerRouter = (Prophet_QLCC_Independent) otherHost.getRouter();
 			exchangemsginformation();
-			Map<String, ACKTTL> peerRB = peerRouter.getReceiptBuffer();
-			for (Map.Entry<String, ACKTTL> entry : peerRB.entrySet()) {
-				if (!receiptBuffer.containsKey(entry.getKey())) {
-					receiptBuffer.put(entry.getKey(), entry.getValue());
-
-				}
-
-			}
+			receiptBuffer.merge(peerRouter.getReceiptBuffer());
 			for (Message m : thisMsgCollection) {
 				/** Delete message that have a receipt */
-				if (receiptBuffer.containsKey(m.getId())) {
+				if (receiptBuffer.contains(m)) {
 					messageReadytoDelete.add(m.getId());
 				}
 			}
@@ -326,11 +339,12 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 				continue; // skip hosts that are transferring
 			}
 			for (Message m : msgCollection) {
-				if (other.hasMessage(m.getId())) {
-					Message temp = other.getMessage(m.getId());
+				if (other.hasMessage(m)) {
+					Message temp = other.getMessage(m);
 					/* take the max reps */
-					if ((Integer) m.getProperty(repsproperty) < (Integer) temp.getProperty(repsproperty)) {
-						m.updateProperty(repsproperty, temp.getProperty(repsproperty));
+					if (m.getInt(repsslot) < temp.getInt(repsslot)) {
+						m.setInt(repsslot, temp.getInt(repsslot));
+						messageUpdated(m);
 					}
 				}
 
@@ -472,7 +486,7 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 		if (this.endtimeofmsgcreation == 0
 				|| SimClock.getTime() - this.endtimeofmsgcreation >= this.msggenerationinterval) {
 			this.endtimeofmsgcreation = SimClock.getTime();
-			m.addProperty(repsproperty, 1);
+			m.setInt(repsslot, 1);
 			return super.createNewMessage(m);
 		}
 
@@ -483,16 +497,16 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message aCopy = super.messageTransferred(id, from);
-		Integer msgprop = ((Integer) aCopy.getProperty(repsproperty)) + 1;
+		int msgprop = aCopy.getInt(repsslot) + 1;
 
-		aCopy.updateProperty(repsproperty, msgprop);
+		aCopy.setInt(repsslot, msgprop);
+		messageUpdated(aCopy);
 
 		// number of replication increased by 1
 		nrofreps++;
 		// ack
-		if (isFinalDest(aCopy, this.getHost()) && !receiptBuffer.containsKey(aCopy.getId())) {
-			ACKTTL ack = new ACKTTL(SimClock.getTime(), aCopy.getTtl());
-			receiptBuffer.put(aCopy.getId(), ack);
+		if (isFinalDest(aCopy, this.getHost())) {
+			receiptBuffer.addReceipt(getHost(), aCopy);
 		}
 
 		return aCopy;
@@ -500,16 +514,8 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 	/** count message hops */
 	protected int msgtotalhops() {
-		Collection<Message> msg = getMessageCollection();
-		int totalhops = 0;
-		if (!msg.isEmpty()) {
-			for (Message m : msg) {
-				if (!(m.getHopCount() == 0)) {
-					totalhops += (m.getHopCount() - 1);
-				}
-			}
-		}
-		return totalhops;
+		// hops after the first hop of the relayed messages
+		return getTotalHopCount() - getNrofRelayedMessages();
 	}
 
 	/** count CV */
@@ -611,8 +617,8 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 		public int compare(Message msg1, Message msg2) {
 
-			double reps1 = (Integer) msg1.getProperty(repsproperty);
-			double reps2 = (Integer) msg2.getProperty(repsproperty);
+			double reps1 = msg1.getInt(repsslot);
+			double reps2 = msg2.getInt(repsslot);
 
 			/* descending sort */
 			if (reps2 - reps1 == 0) {
@@ -652,64 +658,30 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 	/* QL ACTION METHODS */
 	protected void dropbasedonhighestrate() {
-		List<Tuple<Message, Double>> messages = new ArrayList<Tuple<Message, Double>>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			double msgrate = ((double) m.getHops().size() - 1.0) / ((double) m.getInitTTL() - (double) m.getTtl());
-			messages.add(new Tuple<Message, Double>(m, msgrate));
-		}
-
-		Collections.sort(messages, new RateComparator());
-
-		for (Tuple<Message, Double> highestratemsg : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deleteMessage(highestratemsg.getKey().getId(), false);
-			}
-			break;
+		Message highestratemsg = selectMessage(MessageOrdering.FORWARDING_RATE, true);
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (highestratemsg != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deleteMessage(highestratemsg.getId(), false);
 		}
 	}
 
 	protected void dropbasedonhighestnrofreps() {
-		List<Message> messages = new ArrayList<Message>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			messages.add(m);
-		}
-
-		Collections.sort(messages, new NrOfRepsComparator());
-		for (Message highestreps : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deletemsg(highestreps.getId(), false);
-			}
-			break;
+		Message highestreps = repsOrdering.first();
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (highestreps != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deletemsg(highestreps.getId(), false);
 		}
-
 	}
 
 	protected void dropbasedonoldestTTL() {
-		List<Message> messages = new ArrayList<Message>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			messages.add(m);
-		}
-
-		Collections.sort(messages, new TTLComparator());
-		for (Message oldestTTLmsg : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deletemsg(oldestTTLmsg.getId(), false);
-			}
-			break;
+		Message oldestTTLmsg = ttlOrdering.first();
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (oldestTTLmsg != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deletemsg(oldestTTLmsg.getId(), false);
 		}
-
 	}
 
 	protected void dropbasedonlowestutility() {
@@ -745,7 +717,7 @@ public abstract class Prophet_QLCC_Independent extends ActiveRouter implements C
 
 	}
 
-	public Map<String, ACKTTL> getReceiptBuffer() {
+	public ReceiptBuffer getReceiptBuffer() {
 		return receiptBuffer;
 	}
 	
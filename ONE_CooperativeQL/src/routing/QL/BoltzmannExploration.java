@@ -37,20 +37,41 @@ import java.util.Random;
 *               b
 * </code> <para>where <b>Q(s, a)</b> is action's <b>a</b> estimation
  * (usefulness) at state <b>s</b> and <b>t</b> is Temperature.
+ * Only the permitted actions (the sum is over the permitted actions too) are
+ * evaluated. The largest <b>Q(s, b) / t</b> is subtracted from the exponents
+ * so that they can't overflow.</para>
  * 
  * @author Diego Catalano
  */
 public class BoltzmannExploration implements IExplorationPolicy {
 	double temperature;
-	private Random r = new Random();
+	private Random r;
+	/** scratch buffer for the (unnormalized) action probabilities */
+	private double[] actionProbabilities = new double[0];
 
 	/**
-	 * Initializes a new instance of the BoltzmannExploration class.
+	 * Initializes a new instance of the BoltzmannExploration class. The
+	 * random number generator has a fixed seed, so all the instances
+	 * created with this constructor choose the same actions. Callers must
+	 * give each instance its own generator with {@link #setRandom(Random)}
+	 * before choosing actions (the routers use their host's stream, see
+	 * {@link routing.MessageRouter#createHostRng()}).
 	 * 
 	 * @param temperature Temperature parameter of Boltzmann distribution.
 	 */
 	public BoltzmannExploration(double temperature) {
+		this(temperature, new Random(0));
+	}
+
+	/**
+	 * Initializes a new instance of the BoltzmannExploration class.
+	 * 
+	 * @param temperature Temperature parameter of Boltzmann distribution.
+	 * @param r           Random number generator for choosing the actions.
+	 */
+	public BoltzmannExploration(double temperature, Random r) {
 		this.temperature = temperature;
+		this.r = r;
 	}
 
 	/**
@@ -71,77 +92,90 @@ public class BoltzmannExploration implements IExplorationPolicy {
 		this.temperature = temperature;
 	}
 
+	/**
+	 * Sets the random number generator the actions are chosen with.
+	 * 
+	 * @param r Random number generator
+	 */
+	public void setRandom(Random r) {
+		this.r = r;
+	}
+
 	/**
 	 * The method chooses an action depending on the provided estimates. The
 	 * estimates can be any sort of estimate, which values usefulness of the action
 	 * (expected summary reward, discounted reward, etc).
 	 * 
-	 * @param actionEstimates Action Estimates.
-	 * @return Return selected action.
+	 * @param actionEstimates   Action Estimates.
+	 * @param actionRestriction Which actions are permitted.
+	 * @return Return selected action (0 if no action is permitted).
 	 */
 	@Override
 	public int ChooseAction(double[] actionEstimates, boolean[] actionRestriction) {
 		// actions count
 		int actionsCount = actionEstimates.length;
-		// action probabilities
-		double[] actionProbabilities = new double[actionsCount];
-		// actions sum
-		double sum = 0, probabilitiesSum = 0;
-		// System.out.println(temperature);
-		for (int i = 0; i < actionsCount; i++) {
-
-			double actionProbability = Math.exp(actionEstimates[i] / temperature);
-
-			actionProbabilities[i] = actionProbability;
-			probabilitiesSum += actionProbability;
-
+		if (actionProbabilities.length < actionsCount) {
+			actionProbabilities = new double[actionsCount];
 		}
 
-		if ((Double.isInfinite(probabilitiesSum)) || (temperature == 0)) {
-			// do greedy selection in the case of infinity or zero
-			double maxReward = actionEstimates[0];
-			int greedyAction = 0;
-			int start = 0;
+		if (temperature == 0) {
+			// greedy selection: the (first) permitted action with the largest
+			// estimate
+			int greedyAction = -1;
 			for (int i = 0; i < actionsCount; i++) {
-				if (actionRestriction[i] == true) {
-					{
-						maxReward = actionEstimates[i];
-						greedyAction = i;
-						start = i + 1;
-					}
-
+				if (actionRestriction[i] && (greedyAction < 0 ||
+						actionEstimates[i] > actionEstimates[greedyAction])) {
+					greedyAction = i;
 				}
 			}
-			for (int i = start; i < actionsCount; i++) {
-				if (actionRestriction[i] == true) {
-					if (actionEstimates[i] > maxReward) {
-						maxReward = actionEstimates[i];
-						greedyAction = i;
-					}
-				}
+			return greedyAction < 0 ? 0 : greedyAction;
+		}
 
+		// the largest exponent and the (first) action it's for
+		double maxExponent = Double.NEGATIVE_INFINITY;
+		int maxAction = -1;
+		for (int i = 0; i < actionsCount; i++) {
+			if (actionRestriction[i]) {
+				double exponent = actionEstimates[i] / temperature;
+				actionProbabilities[i] = exponent;
+				if (maxAction < 0 || exponent > maxExponent) {
+					maxExponent = exponent;
+					maxAction = i;
+				}
 			}
-
-			return greedyAction;
 		}
 
-		// get random number, which determines which action to choose
-		double actionRandomNumber = r.nextDouble();
+		if (maxAction < 0) {
+			return 0; // no permitted actions
+		}
+		if (Double.isInfinite(maxExponent)) {
+			return maxAction; // the temperature is too low for the estimates
+		}
 
+		// action probabilities relative to the largest one
+		double probabilitiesSum = 0;
 		for (int i = 0; i < actionsCount; i++) {
-			if (actionRestriction[i] == true) {
-				sum += actionProbabilities[i] / probabilitiesSum;
-				if (actionRandomNumber <= sum)
-					return i;
+			if (actionRestriction[i]) {
+				double actionProbability =
+					Math.exp(actionProbabilities[i] - maxExponent);
+				actionProbabilities[i] = actionProbability;
+				probabilitiesSum += actionProbability;
 			}
-
 		}
-		int a = 0;
-		for (int i = (actionsCount - 1); i >= 0; i--) {
-			if (actionRestriction[i] == true) {
-				a = i;
+
+		// get random number, which determines which action to choose
+		double actionRandomNumber = r.nextDouble() * probabilitiesSum;
+		double sum = 0;
+		int lastAction = maxAction;
+		for (int i = 0; i < actionsCount; i++) {
+			if (actionRestriction[i]) {
+				sum += actionProbabilities[i];
+				lastAction = i;
+				if (actionRandomNumber < sum) {
+					return i;
+				}
 			}
 		}
-		return a;
+		return lastAction; // only if rounding left the sum short
 	}
 }
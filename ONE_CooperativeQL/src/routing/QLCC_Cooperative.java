@@ -44,10 +44,10 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 	/** default value for state interval update */
 	public static final double DEFAULT_STATE_UPDATE_INTERVAL = 300;
 
-	/** prefix to indicate congestion warning */
-	public static final String C_PREFIX = "C_";
-	/** prefix to indicate prospective congestion warning */
-	public static final String PC_PREFIX = "P_";
+	/** signal type of congestion warnings */
+	public static final int CW_SIGNAL = 1;
+	/** signal type of prospective congestion warnings */
+	public static final int PCW_SIGNAL = 2;
 
 	/** value of md setting */
 	private double md;
@@ -86,7 +86,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 	private List<CVandTime> cvandtime;
 
 	/** buffer that save receipt */
-	protected Map<String, ACKTTL> receiptBuffer;
+	protected ReceiptBuffer receiptBuffer;
 
 	/** message that should be deleted */
 	protected Set<String> messageReadytoDelete;
@@ -139,6 +139,13 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 
 	/** message property to record its number of copies */
 	public static final String repsproperty = "nrofcopies";
+	/** slot of the number of copies property */
+	public static final PropertySlot repsslot = PropertySlot.intSlot(repsproperty);
+
+	/** buffered messages in the order of their TTL expiry */
+	private MessageOrdering ttlOrdering;
+	/** buffered messages in descending order of their number of copies */
+	private MessageOrdering repsOrdering;
 
 	private int action7 = 0;
 	private int totalaction = 0;
@@ -189,6 +196,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		cvtimelist();
 		receiptbuffer();
 		msgreadytodelete();
+		msgorderings();
 	}
 
 	/**
@@ -209,6 +217,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		cvtimelist();
 		receiptbuffer();
 		msgreadytodelete();
+		msgorderings();
 	}
 
 	/**
@@ -218,6 +227,12 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		this.explorationPolicy = new BoltzmannExploration(1);
 	}
 
+	@Override
+	public void init(DTNHost host, List<MessageListener> mListeners) {
+		super.init(host, mListeners);
+		((BoltzmannExploration) this.explorationPolicy).setRandom(createHostRng());
+	}
+
 	protected void initQL() {
 
 		/*
@@ -254,13 +269,18 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 	}
 
 	protected void receiptbuffer() {
-		this.receiptBuffer = new HashMap<>();
+		this.receiptBuffer = new ReceiptBuffer();
 	}
 
 	protected void msgreadytodelete() {
 		this.messageReadytoDelete = new HashSet<>();
 	}
 
+	protected void msgorderings() {
+		this.ttlOrdering = addMessageOrdering(MessageOrdering.EXPIRY_TIME, false);
+		this.repsOrdering = addMessageOrdering(MessageOrdering.intSlot(repsslot), true);
+	}
+
 	@Override
 	public void changedConnection(Connection con) {
 		if (con.isUp()) {
@@ -275,17 +295,10 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 
 			QLCC_Cooperative peerRouter = (QLCC_Cooperative) otherHost.getRouter();
 			exchangemsginformation();
-			Map<String, ACKTTL> peerRB = peerRouter.getReceiptBuffer();
-			for (Map.Entry<String, ACKTTL> entry : peerRB.entrySet()) {
-				if (!receiptBuffer.containsKey(entry.getKey())) {
-					receiptBuffer.put(entry.getKey(), entry.getValue());
-
-				}
-
-			}
+			receiptBuffer.merge(peerRouter.getReceiptBuffer());
 			for (Message m : thisMsgCollection) {
 				/** Delete message that have a receipt */
-				if (receiptBuffer.containsKey(m.getId())) {
+				if (receiptBuffer.contains(m)) {
 					messageReadytoDelete.add(m.getId());
 				}
 			}
@@ -369,11 +382,12 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 				continue; // skip hosts that are transferring
 			}
 			for (Message m : msgCollection) {
-				if (other.hasMessage(m.getId())) {
-					Message temp = other.getMessage(m.getId());
+				if (other.hasMessage(m)) {
+					Message temp = other.getMessage(m);
 					/* take the max reps */
-					if ((Integer) m.getProperty(repsproperty) < (Integer) temp.getProperty(repsproperty)) {
-						m.updateProperty(repsproperty, temp.getProperty(repsproperty));
+					if (m.getInt(repsslot) < temp.getInt(repsslot)) {
+						m.setInt(repsslot, temp.getInt(repsslot));
+						messageUpdated(m);
 					}
 				}
 
@@ -486,8 +500,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		if (!con.isReadyForTransfer()) {
 			return TRY_LATER_BUSY;
 		}
-		if (conlimitmap.containsKey(con) && !m.getId().substring(0, 2).equals(C_PREFIX)
-				&& !m.getId().substring(0, 2).equals(PC_PREFIX)) {
+		if (conlimitmap.containsKey(con)) {
 			retVal = con.startTransfer(getHost(), m);
 			if (retVal == RCV_OK) { // started transfer
 				addToSendingConnections(con);
@@ -502,12 +515,6 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 				this.deleteMessage(m.getId(), false);
 			}
 			return retVal;
-		} else if (m.getId().substring(0, 2).equals(C_PREFIX) || m.getId().substring(0, 2).equals(PC_PREFIX)) {
-			retVal = con.startTransfer(getHost(), m);
-			if (retVal == RCV_OK) {
-				addToSendingConnections(con);
-			}
-
 		}
 
 		return DENIED_UNSPECIFIED;
@@ -545,7 +552,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		if (this.endtimeofmsgcreation == 0
 				|| SimClock.getTime() - this.endtimeofmsgcreation >= this.msggenerationinterval) {
 			this.endtimeofmsgcreation = SimClock.getTime();
-			m.addProperty(repsproperty, 1);
+			m.setInt(repsslot, 1);
 			return super.createNewMessage(m);
 		}
 
@@ -581,17 +588,12 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 		isFinalRecipient = aMessage.getTo() == getHost();
 		isFirstDelivery = isFinalRecipient && !isDeliveredMessage(aMessage);
 
-		if (!isFinalRecipient && outgoing != null && !id.substring(0, 2).equals(C_PREFIX)
-				&& !id.substring(0, 2).equals(PC_PREFIX)) {
+		if (!isFinalRecipient && outgoing != null) {
 			// not the final recipient and app doesn't want to drop the message
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
-		} else if (id.substring(0, 2).equals(C_PREFIX)) {
-			this.ReceiveCW();
-		} else if (id.substring(0, 2).equals(PC_PREFIX)) {
-			this.ReceivePCW();
+			addToDeliveredMessages(aMessage);
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -606,35 +608,25 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 			this.getMessage(RESPONSE_PREFIX + aMessage.getId()).setRequest(aMessage);
 		}
 		// ----
-		if (!id.substring(0, 2).equals(C_PREFIX) && !id.substring(0, 2).equals(PC_PREFIX)) {
-			Integer msgprop = ((Integer) aMessage.getProperty(repsproperty)) + 1;
+		int msgprop = aMessage.getInt(repsslot) + 1;
 
-			aMessage.updateProperty(repsproperty, msgprop);
+		aMessage.setInt(repsslot, msgprop);
+		messageUpdated(aMessage);
 
-			// number of replication increased by 1
-			nrofreps++;
-			// ack
+		// number of replication increased by 1
+		nrofreps++;
+		// ack
 
-			if (isFinalDest(aMessage, this.getHost()) && !receiptBuffer.containsKey(aMessage.getId())) {
-				ACKTTL ack = new ACKTTL(SimClock.getTime(), aMessage.getTtl());
-				receiptBuffer.put(aMessage.getId(), ack);
-			}
+		if (isFinalDest(aMessage, this.getHost())) {
+			receiptBuffer.addReceipt(getHost(), aMessage);
 		}
 		return aMessage;
 	}
 
 	/** count message hops */
 	protected int msgtotalhops() {
-		Collection<Message> msg = getMessageCollection();
-		int totalhops = 0;
-		if (!msg.isEmpty()) {
-			for (Message m : msg) {
-				if (!(m.getHopCount() == 0)) {
-					totalhops += (m.getHopCount() - 1);
-				}
-			}
-		}
-		return totalhops;
+		// hops after the first hop of the relayed messages
+		return getTotalHopCount() - getNrofRelayedMessages();
 	}
 
 	/** count CV */
@@ -736,8 +728,8 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 
 		public int compare(Message msg1, Message msg2) {
 
-			double reps1 = (Integer) msg1.getProperty(repsproperty);
-			double reps2 = (Integer) msg2.getProperty(repsproperty);
+			double reps1 = msg1.getInt(repsslot);
+			double reps2 = msg2.getInt(repsslot);
 
 			/* descending sort */
 			if (reps2 - reps1 == 0) {
@@ -777,64 +769,30 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 
 	/* QL ACTION METHODS */
 	private void dropbasedonhighestrate() {
-		List<Tuple<Message, Double>> messages = new ArrayList<Tuple<Message, Double>>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			double msgrate = ((double) m.getHops().size() - 1.0) / ((double) m.getInitTTL() - (double) m.getTtl());
-			messages.add(new Tuple<Message, Double>(m, msgrate));
-		}
-
-		Collections.sort(messages, new RateComparator());
-
-		for (Tuple<Message, Double> highestratemsg : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deleteMessage(highestratemsg.getKey().getId(), false);
-			}
-			break;
+		Message highestratemsg = selectMessage(MessageOrdering.FORWARDING_RATE, true);
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (highestratemsg != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deleteMessage(highestratemsg.getId(), false);
 		}
 	}
 
 	private void dropbasedonhighestnrofreps() {
-		List<Message> messages = new ArrayList<Message>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			messages.add(m);
-		}
-
-		Collections.sort(messages, new NrOfRepsComparator());
-		for (Message highestreps : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deletemsg(highestreps.getId(), false);
-			}
-			break;
+		Message highestreps = repsOrdering.first();
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (highestreps != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deletemsg(highestreps.getId(), false);
 		}
-
 	}
 
 	private void dropbasedonoldestTTL() {
-		List<Message> messages = new ArrayList<Message>();
-		Collection<Message> msgCollection = getMessageCollection();
-
-		for (Message m : msgCollection) {
-			messages.add(m);
+		Message oldestTTLmsg = ttlOrdering.first();
+		double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
+		if (oldestTTLmsg != null && this.getFreeBufferSize() < deleteth) {
+			// nrofdrops++;
+			deletemsg(oldestTTLmsg.getId(), false);
 		}
-
-		Collections.sort(messages, new TTLComparator());
-		for (Message oldestTTLmsg : messages) {
-			double deleteth = this.getFreeBufferSize() + 0.3 * (this.getBufferSize() - this.getFreeBufferSize());
-			if (this.getFreeBufferSize() < deleteth) {
-				// nrofdrops++;
-				deletemsg(oldestTTLmsg.getId(), false);
-			}
-			break;
-		}
-
 	}
 
 	protected void dropbasedonlowestutility() {
@@ -866,13 +824,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 	 * to do something to decrease Congestion
 	 */
 	private void BroadcastCW() {
-		String msgID = C_PREFIX + this.getHost();
-		Message CW = new Message(this.getHost(), null, msgID, 0);
-		CW.setTtl(5);
-		this.createNewMessage(CW);
-		for (Connection c : getConnections()) {
-			this.startTransfer(CW, c);
-		}
+		broadcastSignal(CW_SIGNAL);
 	}
 
 	/**
@@ -880,12 +832,15 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 	 * other nodes to do something to decrease Congestion
 	 */
 	private void BroadcastPCW() {
-		String msgID = PC_PREFIX + this.getHost();
-		Message PCW = new Message(this.getHost(), null, msgID, 0);
-		PCW.setTtl(5);
-		this.createNewMessage(PCW);
-		for (Connection c : getConnections()) {
-			this.startTransfer(PCW, c);
+		broadcastSignal(PCW_SIGNAL);
+	}
+
+	@Override
+	public void receiveSignal(ControlSignal signal, DTNHost from) {
+		if (signal.getType() == CW_SIGNAL) {
+			this.ReceiveCW();
+		} else if (signal.getType() == PCW_SIGNAL) {
+			this.ReceivePCW();
 		}
 	}
 
@@ -909,7 +864,7 @@ public abstract class QLCC_Cooperative extends ActiveRouter
 
 	}
 
-	public Map<String, ACKTTL> getReceiptBuffer() {
+	public ReceiptBuffer getReceiptBuffer() {
 		return receiptBuffer;
 	}
 
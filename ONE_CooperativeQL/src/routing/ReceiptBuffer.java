@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import core.DTNHost;
+import core.LongHashMap;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Buffer of delivery receipts (ACKs) for routers that delete the copies of
+ * delivered messages. The final recipient of a message creates a receipt of
+ * it and the receipts spread between the buffers when hosts meet.
+ * <P>
+ * Every receipt has a sequence number that is specific to the host that
+ * created it (the origin). Since receipts are only learned through
+ * {@link #merge(ReceiptBuffer)}, a buffer knows the receipts of each origin
+ * up to some sequence number, and merging needs to look only at the
+ * receipts above that number. Receipts expire when the message they are
+ * for can no longer exist anywhere, i.e., after its TTL has passed.
+ */
+public class ReceiptBuffer {
+	/** receipts by message handle */
+	private LongHashMap<Receipt> receipts;
+	/** receipts of each origin (by address) in sequence number order;
+	 * may contain expired receipts */
+	private ArrayList<ArrayList<Receipt>> byOrigin;
+	/** highest known sequence number of each origin */
+	private int[] known;
+	/** number of expired receipts in the lists of each origin */
+	private int[] nrofExpired;
+	/** receipts in the order they expire */
+	private PriorityQueue<Receipt> expiryQueue;
+
+	/**
+	 * Creates a new, empty, buffer
+	 */
+	public ReceiptBuffer() {
+		this.receipts = new LongHashMap<Receipt>();
+		this.byOrigin = new ArrayList<ArrayList<Receipt>>();
+		this.known = new int[0];
+		this.nrofExpired = new int[0];
+		this.expiryQueue = new PriorityQueue<Receipt>();
+	}
+
+	/**
+	 * Creates a receipt of a message delivered to a host. Nothing is done if
+	 * the buffer already has a receipt of the message.
+	 * @param origin The host the message was delivered to. All receipts of
+	 * an origin must be created to the origin's own buffer.
+	 * @param m The delivered message
+	 * @return True if a new receipt was created
+	 */
+	public boolean addReceipt(DTNHost origin, Message m) {
+		expire();
+		if (receipts.containsKey(m.getHandle())) {
+			return false;
+		}
+
+		int o = origin.getAddress();
+		ensureOrigin(o);
+		double expiry;
+		if (m.getInitTTL() == Message.INFINITE_TTL) {
+			expiry = Double.POSITIVE_INFINITY;
+		}
+		else {
+			expiry = m.getCreationTime() + m.getInitTTL() * 60.0;
+		}
+		known[o]++;
+		insert(new Receipt(o, known[o], m.getHandle(), expiry));
+		return true;
+	}
+
+	/**
+	 * Copies the receipts this buffer doesn't know yet from another buffer
+	 * @param other The buffer to copy the receipts from
+	 * @return Number of receipts added to this buffer
+	 */
+	public int merge(ReceiptBuffer other) {
+		expire();
+		other.expire();
+		int added = 0;
+
+		for (int o = 0; o < other.known.length; o++) {
+			int seq = o < known.length ? known[o] : 0;
+			if (other.known[o] <= seq) {
+				continue;
+			}
+			ensureOrigin(o);
+			ArrayList<Receipt> list = other.byOrigin.get(o);
+			for (int i = other.findSeq(o, seq + 1); i < list.size(); i++) {
+				Receipt r = list.get(i);
+				if (other.receipts.get(r.handle) == r &&
+						!receipts.containsKey(r.handle)) {
+					insert(r);
+					added++;
+				}
+			}
+			known[o] = other.known[o];
+		}
+
+		return added;
+	}
+
+	/**
+	 * Returns true if the buffer has a receipt of the message
+	 * @param m The message
+	 * @return True if the message has been delivered
+	 */
+	public boolean contains(Message m) {
+		return receipts.containsKey(m.getHandle());
+	}
+
+	/**
+	 * Returns true if the buffer has a receipt of a message
+	 * @param id Identifier of the message
+	 * @return True if the message has been delivered
+	 */
+	public boolean contains(String id) {
+		int handle = Message.getHandle(id);
+		return handle >= 0 && receipts.containsKey(handle);
+	}
+
+	/**
+	 * Returns the number of (unexpired) receipts in the buffer
+	 * @return The number of receipts
+	 */
+	public int size() {
+		expire();
+		return receipts.size();
+	}
+
+	private void insert(Receipt r) {
+		receipts.put(r.handle, r);
+		byOrigin.get(r.origin).add(r);
+		if (r.expiry != Double.POSITIVE_INFINITY) {
+			expiryQueue.add(r);
+		}
+	}
+
+	/**
+	 * Removes the receipts that have expired
+	 */
+	private void expire() {
+		double now = SimClock.getTime();
+		while (!expiryQueue.isEmpty() && expiryQueue.peek().expiry < now) {
+			Receipt r = expiryQueue.poll();
+			receipts.remove(r.handle);
+			int o = r.origin;
+			nrofExpired[o]++;
+			ArrayList<Receipt> list = byOrigin.get(o);
+			if (2 * nrofExpired[o] > list.size()) {
+				/* remove the expired receipts from the origin's list */
+				ArrayList<Receipt> alive = new ArrayList<Receipt>();
+				for (Receipt a : list) {
+					if (receipts.get(a.handle) == a) {
+						alive.add(a);
+					}
+				}
+				byOrigin.set(o, alive);
+				nrofExpired[o] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the first receipt of an origin whose sequence
+	 * number is at least the given number
+	 */
+	private int findSeq(int origin, int seq) {
+		ArrayList<Receipt> list = byOrigin.get(origin);
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (list.get(mid).seq < seq) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void ensureOrigin(int origin) {
+		if (origin >= known.length) {
+			int length = Math.max(origin + 1, 2 * known.length);
+			known = Arrays.copyOf(known, length);
+			nrofExpired = Arrays.copyOf(nrofExpired, length);
+		}
+		while (byOrigin.size() <= origin) {
+			byOrigin.add(new ArrayList<Receipt>());
+		}
+	}
+
+	/**
+	 * Receipt of a message. Receipts are immutable, so the same objects are
+	 * shared by all buffers that have them.
+	 */
+	private static class Receipt implements Comparable<Receipt> {
+		private final int origin;
+		private final int seq;
+		private final int handle;
+		private final double expiry;
+
+		private Receipt(int origin, int seq, int handle, double expiry) {
+			this.origin = origin;
+			this.seq = seq;
+			this.handle = handle;
+			this.expiry = expiry;
+		}
+
+		public int compareTo(Receipt other) {
+			return Double.compare(this.expiry, other.expiry);
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.util.List;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
+import core.PropertySlot;
 import core.Settings;
 
 /**
@@ -28,6 +29,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	/** Message property key */
 	public static final String MSG_COUNT_PROPERTY = SPRAYANDWAIT_NS + "." +
 		"copies";
+	/** Slot of the message property */
+	protected static final PropertySlot MSG_COUNT_SLOT = 
+		PropertySlot.intSlot(MSG_COUNT_PROPERTY);
 	
 	protected int initialNrofCopies;
 	protected boolean isBinary;
@@ -58,9 +62,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	@Override
 	public Message messageTransferred(String id, DTNHost from) {
 		Message msg = super.messageTransferred(id, from);
-		Integer nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		int nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		
-		assert nrofCopies != null : "Not a SnW message: " + msg;
+		assert msg.hasProperty(MSG_COUNT_SLOT) : "Not a SnW message: " + msg;
 		
 		if (isBinary) {
 			/* in binary S'n'W the receiving node gets ceil(n/2) copies */
@@ -71,7 +75,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 			nrofCopies = 1;
 		}
 		
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_SLOT, nrofCopies);
 		return msg;
 	}
 	
@@ -80,7 +84,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		makeRoomForNewMessage(msg.getSize());
 
 		msg.setTtl(this.msgTtl);
-		msg.addProperty(MSG_COUNT_PROPERTY, new Integer(initialNrofCopies));
+		msg.setInt(MSG_COUNT_SLOT, initialNrofCopies);
 		addToMessages(msg, true);
 		return true;
 	}
@@ -116,10 +120,9 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		List<Message> list = new ArrayList<Message>();
 
 		for (Message m : getMessageCollection()) {
-			Integer nrofCopies = (Integer)m.getProperty(MSG_COUNT_PROPERTY);
-			assert nrofCopies != null : "SnW message " + m + " didn't have " + 
-				"nrof copies property!";
-			if (nrofCopies > 1) {
+			assert m.hasProperty(MSG_COUNT_SLOT) : "SnW message " + m + 
+				" didn't have nrof copies property!";
+			if (m.getInt(MSG_COUNT_SLOT) > 1) {
 				list.add(m);
 			}
 		}
@@ -136,7 +139,7 @@ public class SprayAndWaitRouter extends ActiveRouter {
 	 */
 	@Override
 	protected void transferDone(Connection con) {
-		Integer nrofCopies;
+		int nrofCopies;
 		String msgId = con.getMessage().getId();
 		/* get this router's copy of the message */
 		Message msg = getMessage(msgId);
@@ -146,14 +149,14 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		}
 		
 		/* reduce the amount of copies left */
-		nrofCopies = (Integer)msg.getProperty(MSG_COUNT_PROPERTY);
+		nrofCopies = msg.getInt(MSG_COUNT_SLOT);
 		if (isBinary) { 
 			nrofCopies /= 2;
 		}
 		else {
 			nrofCopies--;
 		}
-		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
+		msg.setInt(MSG_COUNT_SLOT, nrofCopies);
 	}
 	
 	@Override
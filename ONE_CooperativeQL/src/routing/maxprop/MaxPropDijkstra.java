@@ -4,33 +4,33 @@
  */
 package routing.maxprop;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 /**
  * Dijkstra's shortest path implementation for MaxProp Router module.
+ * The distances and the priority queue of unvisited nodes are kept in
+ * arrays indexed by the node index (address).
  */
 public class MaxPropDijkstra {
 	/** Value for infinite distance  */
-	private static final Double INFINITY = Double.MAX_VALUE;
-	/** Initial size of the priority queue */
-	private static final int PQ_INIT_SIZE = 11;
+	public static final double INFINITY = Double.MAX_VALUE;
+	/** Initial size of the node arrays */
+	private static final int INIT_SIZE = 16;
 
-	/** Map of node distances from the source node */
-	private DistanceMap distancesFromStart;
-	/** Set of already visited nodes (where the shortest path is known) */
-	private Set<Integer> visited;
-	/** Priority queue of unvisited nodes discovered so far */
-	private Queue<Integer> unvisited;
-	/** Map of previous nodes on the shortest path(s) -- only used for
-	 * debugging purposes */
-	private Map<Integer, Integer> prevNodes;
+	/** Node distances from the source node */
+	private double[] distancesFromStart;
+	/** Already visited nodes (where the shortest path is known) */
+	private boolean[] visited;
+	/** Binary heap of unvisited nodes discovered so far, ordered by the
+	 * distance (and node index if the distances are equal) */
+	private int[] unvisited;
+	/** Number of nodes in the heap */
+	private int nrofUnvisited;
+	/** Positions of the nodes in the heap (-1 if not in the heap) */
+	private int[] heapPositions;
 	/** Mapping of to other nodes' (whom this node has met) probability sets */
 	private Map<Integer, MeetingProbabilitySet> probs;
 	
@@ -41,22 +41,25 @@ public class MaxPropDijkstra {
 	 */
 	public MaxPropDijkstra(Map<Integer, MeetingProbabilitySet> probs) {
 		this.probs = probs;
+		this.distancesFromStart = new double[INIT_SIZE];
+		this.visited = new boolean[INIT_SIZE];
+		this.unvisited = new int[INIT_SIZE];
+		this.heapPositions = new int[INIT_SIZE];
 	}
 
 	/**
 	 * Initializes a new search with the first hop router node
 	 * @param firstHop The first hop router node
 	 */
-	private void initWith(Integer firstHop) {
-		this.unvisited = new PriorityQueue<Integer>(PQ_INIT_SIZE, 
-				new DistanceComparator());
-		this.visited = new HashSet<Integer>();
-		this.prevNodes = new HashMap<Integer, Integer>();
-		this.distancesFromStart = new DistanceMap();
+	private void initWith(int firstHop) {
+		ensureCapacity(firstHop);
+		Arrays.fill(distancesFromStart, INFINITY);
+		Arrays.fill(visited, false);
+		Arrays.fill(heapPositions, -1);
+		this.nrofUnvisited = 0;
 		
 		// set distance to source 0 and initialize unvisited queue
-		this.distancesFromStart.put(firstHop, 0);
-		this.unvisited.add(firstHop);
+		setDistance(firstHop, 0);
 	}
 	
 	/**
@@ -69,156 +72,162 @@ public class MaxPropDijkstra {
 	 */
 	public Map<Integer, Double> getCosts(Integer from, Set<Integer> to) {
 		Map<Integer, Double> distMap = new HashMap<Integer, Double>();
-		int nrofNodesToFind = to.size();
+		double[] costs = getCosts(from);
 		
-		initWith(from);
-		Integer node = null;
-		
-		// always take the node with shortest distance
-		while ((node = unvisited.poll()) != null) {
-			if (to.contains(node)) {
-				// found one of the requested nodes
-				distMap.put(node, distancesFromStart.get(node));
-				nrofNodesToFind--;
-				if (nrofNodesToFind == 0) {
-					break; // all requested nodes found
-				}
+		for (Integer node : to) {
+			if (node < costs.length && costs[node] != INFINITY) {
+				distMap.put(node, costs[node]);
 			} 
-			
-			visited.add(node); // mark the node as visited
-			relax(node);       // add/update neighbor nodes' distances
 		}
 			
 		return distMap;
 	}
 	
+	/**
+	 * Calculates total costs to all the nodes that can be reached from the
+	 * given node (see {@link #getCosts(Integer, Set)}).
+	 * @param from The index (address) of the start node
+	 * @return The costs indexed by the node index. The costs of the nodes
+	 * that can't be reached are {@link #INFINITY} and nodes with indexes
+	 * beyond the array can't be reached either.
+	 */
+	public double[] getCosts(int from) {
+		initWith(from);
+
+		// always take the node with shortest distance
+		while (nrofUnvisited > 0) {
+			int node = poll();
+			visited[node] = true; // mark the node as visited
+			relax(node);          // add/update neighbor nodes' distances
+		}
+
+		return distancesFromStart.clone();
+	}
+
 	/**
 	 * Relaxes the neighbors of a node (updates the shortest distances).
 	 * @param node The node whose neighbors are relaxed
 	 */
-	private void relax(Integer node) {
-		double nodeDist = distancesFromStart.get(node);
-		Collection<Integer> neighbors;
+	private void relax(int node) {
+		double nodeDist = distancesFromStart[node];
+		MeetingProbabilitySet neighbors = this.probs.get(node);
 		
-		if (!this.probs.containsKey(node)) {
+		if (neighbors == null) {
 			return; // node's neighbors are not known
 		}
 		
-		neighbors =	this.probs.get(node).getAllProbs().keySet();
-		
-		for (Integer n : neighbors) {
-			if (visited.contains(n)) {
+		for (int i = 0, n = neighbors.size(); i < n; i++) {
+			int neighbor = neighbors.getNodeAt(i);
+			ensureCapacity(neighbor);
+			if (visited[neighbor]) {
 				continue; // skip visited nodes
 			}
 						
-			// n node's distance from path's source node
-			double nDist = nodeDist + getDistance(node, n);
+			// neighbor node's distance from path's source node; the distance
+			// between the nodes is the complement of the probability that
+			// the next node "node" meets is "neighbor"
+			double nDist = nodeDist + (1 - neighbors.getProbAt(i));
 			
-			if (distancesFromStart.get(n) > nDist) { 
+			if (distancesFromStart[neighbor] > nDist) {
 				// stored distance > found dist -> update
-				prevNodes.put(n, node); // for debugging
-				setDistance(n, nDist);
+				setDistance(neighbor, nDist);
 			}
 		}
 	}
 	
 	/**
-	 * Sets the distance from source node to a node
+	 * Sets the distance from source node to a node and moves the node
+	 * to its new place in the queue
 	 * @param n The node whose distance is set
 	 * @param distance The distance of the node from the source node
 	 */
-	private void setDistance(Integer n, double distance) {
-		unvisited.remove(n); // remove node from old place in the queue
-		distancesFromStart.put(n, distance); // update distance
-		unvisited.add(n); // insert node to the new place in the queue
+	private void setDistance(int n, double distance) {
+		distancesFromStart[n] = distance;
+		int pos = heapPositions[n];
+		if (pos < 0) {
+			pos = nrofUnvisited++;
+		}
+		siftUp(n, pos); // distance can only decrease
 	}
 	
 	/**
-	 * Returns the "distance" between two nodes, i.e., the complement of the 
-	 * probability that the next node "from" meets is "to". Works only if there
-	 * exist a probability value for "from" meeting "to". 
-	 * @param from The first node
-	 * @param to The second node
-	 * @return The distance between the two nodes
+	 * Removes and returns the node with the shortest distance from the queue
+	 * @return The node
 	 */
-	private double getDistance(Integer from, Integer to) {
-		assert probs.containsKey(from) : "Node " + from + " has not met " + to +
-			" (it has met nodes " + probs.keySet() + ")";
-		return ( 1 - probs.get(from).getProbFor(to) );
+	private int poll() {
+		int first = unvisited[0];
+		heapPositions[first] = -1;
+		nrofUnvisited--;
+		if (nrofUnvisited > 0) {
+			siftDown(unvisited[nrofUnvisited], 0);
+		}
+		return first;
 	}
-	
-	/**
-	 * Comparator that compares two nodes by their distance from
-	 * the source node.
-	 */
-	private class DistanceComparator implements 
-		Comparator<Integer> {
-		
-		/**
-		 * Compares two map nodes by their distance from the source node
-		 * @return -1, 0 or 1 if node1's distance is smaller, equal to, or
-		 * bigger than node2's distance
-		 */
-		public int compare(Integer node1, Integer node2) {
-			double dist1 = distancesFromStart.get(node1);
-			double dist2 = distancesFromStart.get(node2);
-			
-			if (dist1 > dist2) {
-				return 1;
+
+	private void siftUp(int node, int pos) {
+		while (pos > 0) {
+			int parentPos = (pos - 1) / 2;
+			int parent = unvisited[parentPos];
+			if (!isCloser(node, parent)) {
+				break;
+			}
+			place(parent, pos);
+			pos = parentPos;
+		}
+		place(node, pos);
+	}
+
+	private void siftDown(int node, int pos) {
+		while (true) {
+			int childPos = 2 * pos + 1;
+			if (childPos >= nrofUnvisited) {
+				break;
 			}
-			else if (dist1 < dist2) {
-				return -1;
+			if (childPos + 1 < nrofUnvisited &&
+					isCloser(unvisited[childPos + 1], unvisited[childPos])) {
+				childPos++;
 			}
-			else {
-				return node1.compareTo(node2);
+			int child = unvisited[childPos];
+			if (!isCloser(child, node)) {
+				break;
 			}
+			place(child, pos);
+			pos = childPos;
 		}
+		place(node, pos);
+	}
+
+	private void place(int node, int pos) {
+		unvisited[pos] = node;
+		heapPositions[node] = pos;
 	}
 	
 	/**
-	 * Simple Map implementation for storing distances. 
+	 * Compares two nodes by their distance from the source node
+	 * @return true if node1's distance is smaller than node2's distance, or
+	 * if the distances are equal and node1's index is smaller
 	 */
-	private class DistanceMap {
-		private HashMap<Integer, Double> map;
-		
-		/**
-		 * Constructor. Creates an empty distance map
-		 */
-		public DistanceMap() {
-			this.map = new HashMap<Integer, Double>(); 
-		}
-		
-		/**
-		 * Returns the distance to a node. If no distance value
-		 * is found, returns {@link MaxPropDijkstra#INFINITY} as the value.
-		 * @param node The node whose distance is requested
-		 * @return The distance to that node
-		 */
-		public double get(Integer node) {
-			Double value = map.get(node);
-			if (value != null) {
-				return value;
-			}
-			else {
-				return INFINITY;
-			}
-		}
-		
-		/**
-		 * Puts a new distance value for a map node
-		 * @param node The node
-		 * @param distance Distance to that node
-		 */
-		public void  put(Integer node, double distance) {
-			map.put(node, distance);
-		}
-		
-		/**
-		 * Returns a string representation of the map's contents
-		 * @return a string representation of the map's contents
-		 */
-		public String toString() {
-			return map.toString();
+	private boolean isCloser(int node1, int node2) {
+		double dist1 = distancesFromStart[node1];
+		double dist2 = distancesFromStart[node2];
+		return dist1 < dist2 || (dist1 == dist2 && node1 < node2);
+	}
+	
+	/**
+	 * Makes sure that the node arrays have room for the given node index
+	 * @param node The node index
+	 */
+	private void ensureCapacity(int node) {
+		int oldSize = distancesFromStart.length;
+		if (node < oldSize) {
+			return;
 		}
+		int newSize = Math.max(node + 1, 2 * oldSize);
+		distancesFromStart = Arrays.copyOf(distancesFromStart, newSize);
+		visited = Arrays.copyOf(visited, newSize);
+		unvisited = Arrays.copyOf(unvisited, newSize);
+		heapPositions = Arrays.copyOf(heapPositions, newSize);
+		Arrays.fill(distancesFromStart, oldSize, newSize, INFINITY);
+		Arrays.fill(heapPositions, oldSize, newSize, -1);
 	}
 }
\ No newline at end of file
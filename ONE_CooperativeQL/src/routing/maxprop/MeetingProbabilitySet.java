@@ -4,6 +4,7 @@
  */
 package routing.maxprop;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,13 +14,34 @@ import core.SimClock;
 /**
  * Class for storing and manipulating the meeting probabilities for the MaxProp
  * router module.
+ * <P>
+ * The probabilities are kept in arrays in the order the nodes were added.
+ * Every probability is stored as a weight that is multiplied by a common
+ * scale factor, so normalizing the set after an update only changes the
+ * scale factor and an update takes constant time (unless the set is full).
  */
 public class MeetingProbabilitySet {
 	public static final int INFINITE_SET_SIZE = Integer.MAX_VALUE;
-	/** meeting probabilities (probability that the next node one meets is X) */
-	private Map<Integer, Double> probs;
+	/** Scale factor below which the weights are normalized to the actual
+	 * probabilities (and the scale factor back to 1) */
+	private static final double MIN_SCALE = 1e-100;
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** node indexes of the entries */
+	private int[] nodes;
+	/** meeting probabilities (probability that the next node one meets is X)
+	 * of the entries divided by {@link #scale} */
+	private double[] weights;
+	/** the factor that turns the weights into probabilities */
+	private double scale;
+	/** number of entries */
+	private int size;
+	/** hash table of entry positions plus one (0 for empty slots) */
+	private int[] table;
 	/** the time when this MPS was last updated */
 	private double lastUpdateTime;
+	/** number of changes to the probabilities */
+	private int version;
 	/** the alpha parameter */
 	private double alpha;
     private int maxSetSize;
@@ -32,14 +54,15 @@ public class MeetingProbabilitySet {
 	 */
 	public MeetingProbabilitySet(int maxSetSize, double alpha) {
 		this.alpha = alpha;
-		this.probs = new HashMap<Integer, Double>();
         if (maxSetSize == INFINITE_SET_SIZE || maxSetSize < 1) {
-        	this.probs = new HashMap<Integer, Double>();
         	this.maxSetSize = INFINITE_SET_SIZE;
         } else {
-        	this.probs = new HashMap<Integer, Double>(maxSetSize);
             this.maxSetSize = maxSetSize;
         }
+		this.nodes = new int[INITIAL_CAPACITY];
+		this.weights = new double[INITIAL_CAPACITY];
+		this.table = new int[2 * INITIAL_CAPACITY];
+		this.scale = 1;
 		this.lastUpdateTime = 0;
 	}
 	
@@ -60,7 +83,7 @@ public class MeetingProbabilitySet {
 		this(INFINITE_SET_SIZE, alpha);
 		double prob = 1.0/initiallyKnownNodes.size();
 		for (Integer i : initiallyKnownNodes) {
-			this.probs.put(i, prob);
+			put(i, prob);
 		}
 	}
 	
@@ -70,41 +93,53 @@ public class MeetingProbabilitySet {
 	 * Normalize{P}</PRE> 
 	 * I.e., The probability of the given node index is increased by one and
 	 * then all the probabilities are normalized so that their sum equals to 1.
+	 * If the set is full, the smallest probability is dropped (the one of the
+	 * smallest node index if there are many).
 	 * @param index The node index to update the probability for
 	 */
-	public void updateMeetingProbFor(Integer index) {
-        Map.Entry<Integer, Double> smallestEntry = null;
-        double smallestValue = Double.MAX_VALUE;
-
+	public void updateMeetingProbFor(int index) {
 		this.lastUpdateTime = SimClock.getTime();
-		
-		if (probs.size() == 0) { // first entry
-			probs.put(index, 1.0);
+		this.version++;
+
+		if (size == 0) { // first entry
+			scale = 1;
+			put(index, 1.0);
 			return;
 		}
 		
-		double newValue = getProbFor(index) + alpha;
-		probs.put(index, newValue);
-
-		/* now the sum of all entries is 1+alpha;
-		 * normalize to one by dividing all the entries by 1+alpha */ 
-		for (Map.Entry<Integer, Double> entry : probs.entrySet()) {
-			entry.setValue(entry.getValue() / (1+alpha));
-            if (entry.getValue() < smallestValue) {
-                smallestEntry = entry;
-                smallestValue = entry.getValue();
-            }
-
+		/* P(b) + alpha as weight; then the sum of all entries is 1+alpha and
+		 * dividing the scale by 1+alpha normalizes them to one */
+		int pos = indexOf(index);
+		if (pos < 0) {
+			pos = add(index);
+		}
+		weights[pos] += alpha / scale;
+		scale /= 1 + alpha;
+		if (scale < MIN_SCALE) {
+			for (int i = 0; i < size; i++) {
+				weights[i] *= scale;
+			}
+			scale = 1;
 		}
 
-        if (probs.size() >= maxSetSize) {
-            core.Debug.p("Probsize: " + probs.size() + " dropping " + 
-                    probs.remove(smallestEntry.getKey()));
+        if (size >= maxSetSize) {
+        	int smallest = 0;
+        	for (int i = 1; i < size; i++) {
+        		if (weights[i] < weights[smallest] ||
+        				(weights[i] == weights[smallest] &&
+        				nodes[i] < nodes[smallest])) {
+        			smallest = i;
+        		}
+        	}
+            core.Debug.p("Probsize: " + size + " dropping " +
+                    weights[smallest] * scale);
+            removeAt(smallest);
         }
 	}
 	
-	public void updateMeetingProbFor(Integer index, double iet)	{
-		probs.put(index, iet);
+	public void updateMeetingProbFor(int index, double iet)	{
+		this.version++;
+		put(index, iet);
 	}
 	
 	/**
@@ -112,9 +147,10 @@ public class MeetingProbabilitySet {
 	 * @param index The index of the node to look the P for
 	 * @return the current delivery probability value
 	 */
-	public double getProbFor(Integer index) {
-		if (probs.containsKey(index)) {
-			return probs.get(index);
+	public double getProbFor(int index) {
+		int pos = indexOf(index);
+		if (pos >= 0) {
+			return weights[pos] * scale;
 		}
 		else {
 			/* the node with the given index has not been met */
@@ -123,11 +159,41 @@ public class MeetingProbabilitySet {
 	}
 	
 	/**
-	 * Returns a reference to the probability map of this probability set
-	 * @return a reference to the probability map of this probability set
+	 * Returns the number of nodes that have a probability in this set
+	 * @return the number of nodes that have a probability in this set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of the node at the given position of this set
+	 * @param pos The position (0 ... {@link #size()}-1)
+	 * @return the node index
+	 */
+	public int getNodeAt(int pos) {
+		return this.nodes[pos];
+	}
+
+	/**
+	 * Returns the probability at the given position of this set
+	 * @param pos The position (0 ... {@link #size()}-1)
+	 * @return the probability of the node at the position
+	 */
+	public double getProbAt(int pos) {
+		return this.weights[pos] * scale;
+	}
+
+	/**
+	 * Returns a copy of the probabilities of this probability set
+	 * @return the probabilities mapped by node index
 	 */
 	public Map<Integer, Double> getAllProbs() {
-		return this.probs;
+		Map<Integer, Double> map = new HashMap<Integer, Double>();
+		for (int i = 0; i < size; i++) {
+			map.put(nodes[i], weights[i] * scale);
+		}
+		return map;
 	}
 	
 	/**
@@ -137,6 +203,15 @@ public class MeetingProbabilitySet {
 	public double getLastUpdateTime() {
 		return this.lastUpdateTime;
 	}
+
+	/**
+	 * Returns the version of this probability set. The version changes
+	 * whenever the probabilities are updated.
+	 * @return the version of this probability set
+	 */
+	public int getVersion() {
+		return this.version;
+	}
 	
 	/**
 	 * Enables changing the alpha parameter dynamically
@@ -154,13 +229,86 @@ public class MeetingProbabilitySet {
 				this.maxSetSize, alpha);
 		
 		// do a deep copy
-		for (Map.Entry<Integer, Double> e : probs.entrySet()) {
-			replica.probs.put(e.getKey(), e.getValue().doubleValue());
-		}
+		replica.nodes = this.nodes.clone();
+		replica.weights = this.weights.clone();
+		replica.table = this.table.clone();
+		replica.scale = this.scale;
+		replica.size = this.size;
 		
 		replica.lastUpdateTime = this.lastUpdateTime;
 		return replica;
 	}
+
+	/**
+	 * Sets the probability of a node (without normalizing the others)
+	 */
+	private void put(int index, double prob) {
+		int pos = indexOf(index);
+		if (pos < 0) {
+			pos = add(index);
+		}
+		weights[pos] = prob / scale;
+	}
+
+	/**
+	 * Returns the position of a node's entry or -1 if there's no entry
+	 */
+	private int indexOf(int index) {
+		int mask = table.length - 1;
+		for (int i = hash(index) & mask; table[i] != 0; i = (i + 1) & mask) {
+			if (nodes[table[i] - 1] == index) {
+				return table[i] - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds an entry with zero probability for a node
+	 * @return the position of the entry
+	 */
+	private int add(int index) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2 * size);
+			weights = Arrays.copyOf(weights, 2 * size);
+			table = new int[4 * size];
+			rehash();
+		}
+		nodes[size] = index;
+		weights[size] = 0;
+		insert(size);
+		return size++;
+	}
+
+	/**
+	 * Removes an entry; the last entry is moved to its place
+	 */
+	private void removeAt(int pos) {
+		size--;
+		nodes[pos] = nodes[size];
+		weights[pos] = weights[size];
+		Arrays.fill(table, 0);
+		rehash();
+	}
+
+	private void rehash() {
+		for (int i = 0; i < size; i++) {
+			insert(i);
+		}
+	}
+
+	private void insert(int pos) {
+		int mask = table.length - 1;
+		int i = hash(nodes[pos]) & mask;
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = pos + 1;
+	}
+
+	private static int hash(int index) {
+		return index * 0x9E3779B9 >>> 16;
+	}
 	
 	/**
 	 * Returns a String presentation of the probabilities
@@ -168,6 +316,6 @@ public class MeetingProbabilitySet {
 	 */
     @Override
 	public String toString() {
-		return "probs: " +	this.probs.toString();
+		return "probs: " +	getAllProbs().toString();
 	}
 }
\ No newline at end of file
@@ -39,7 +39,16 @@ public class AllTests {
 		suite.addTestSuite(ContactTimesReportTest.class);
 		suite.addTestSuite(TotalContactTimeReportTest.class);
 		suite.addTestSuite(EpidemicRouterTest.class);
+		suite.addTestSuite(EpidemicForQLTest.class);
 		suite.addTestSuite(ProphetRouterTest.class);
+		suite.addTestSuite(MessageOrderingTest.class);
+		suite.addTestSuite(ForwardingCandidatesTest.class);
+		suite.addTestSuite(LongHashMapTest.class);
+		suite.addTestSuite(CompactIntSetTest.class);
+		suite.addTestSuite(ReceiptBufferTest.class);
+		suite.addTestSuite(TimingWheelTest.class);
+		suite.addTestSuite(DeliveryPredictabilitiesTest.class);
+		suite.addTestSuite(BoltzmannExplorationTest.class);
 		suite.addTestSuite(SettingsTest.class);
 		suite.addTestSuite(DijkstraPathFinderTest.class);
 		suite.addTestSuite(PointsOfInterestTest.class);
@@ -47,6 +56,11 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(EventCalendarTest.class);
+		suite.addTestSuite(SimulationContextTest.class);
+		suite.addTestSuite(MovementRngTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ConnectivityOptimizerTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		//$JUnit-END$
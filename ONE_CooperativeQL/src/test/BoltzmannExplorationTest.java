@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.QL.BoltzmannExploration;
+
+/**
+ * Tests for the Boltzmann exploration policy of the QL routers
+ */
+public class BoltzmannExplorationTest extends TestCase {
+	private static final boolean[] ALL = {true, true, true, true};
+
+	public void testRestrictedActions() {
+		BoltzmannExploration exp = new BoltzmannExploration(1, new Random(1));
+		double[] estimates = {5, 0, 1, 0};
+		boolean[] permitted = {false, true, false, true};
+		int[] counts = new int[4];
+		for (int i = 0; i < 4000; i++) {
+			counts[exp.ChooseAction(estimates, permitted)]++;
+		}
+		assertEquals(0, counts[0]);
+		assertEquals(0, counts[2]);
+		/* equal estimates -> about equal shares */
+		assertTrue(Math.abs(counts[1] - counts[3]) < 400);
+
+		assertEquals(0, exp.ChooseAction(estimates, new boolean[4]));
+	}
+
+	public void testLargeEstimatesAndGreedy() {
+		BoltzmannExploration exp = new BoltzmannExploration(0.01,
+				new Random(1));
+		double[] estimates = {1000, 1001, 1000, 3};
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, exp.ChooseAction(estimates, ALL));
+		}
+
+		exp.setTemperature(0);
+		assertEquals(1, exp.ChooseAction(estimates, ALL));
+		assertEquals(2, exp.ChooseAction(estimates,
+				new boolean[] {false, false, true, true}));
+	}
+
+	public void testSameSeedSameActions() {
+		BoltzmannExploration exp1 = new BoltzmannExploration(1, new Random(5));
+		BoltzmannExploration exp2 = new BoltzmannExploration(1);
+		exp2.setRandom(new Random(5));
+		double[] estimates = {0.3, 0.1, 0.7, 0.2};
+		for (int i = 0; i < 500; i++) {
+			assertEquals(exp1.ChooseAction(estimates, ALL),
+					exp2.ChooseAction(estimates, ALL));
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.CompactIntSet;
+
+/**
+ * Tests for the compact integer set
+ */
+public class CompactIntSetTest extends TestCase {
+
+	public void testAddAndContains() {
+		CompactIntSet set = new CompactIntSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(5));
+		assertTrue(set.add(70000));
+		assertTrue(set.add(3));
+		assertTrue(set.add(-1));
+		assertFalse(set.add(5));
+		assertEquals(4, set.size());
+
+		assertTrue(set.contains(3));
+		assertTrue(set.contains(5));
+		assertTrue(set.contains(70000));
+		assertTrue(set.contains(-1));
+		assertFalse(set.contains(4));
+		assertFalse(set.contains(70001));
+		assertFalse(set.contains(5 + 65536));
+
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(5));
+	}
+
+	public void testDenseChunk() {
+		CompactIntSet set = new CompactIntSet();
+		/* every other value of a chunk makes it a bitmap */
+		for (int i = 0; i < 65536; i += 2) {
+			assertTrue(set.add(i));
+		}
+		assertEquals(32768, set.size());
+		for (int i = 0; i < 65536; i++) {
+			assertEquals(i % 2 == 0, set.contains(i));
+		}
+		assertFalse(set.add(100));
+		assertTrue(set.add(101));
+		assertTrue(set.contains(101));
+		assertTrue(set.getMemoryUsage() < 10000);
+	}
+
+	public void testAgainstHashSet() {
+		Random rng = new Random(3);
+		CompactIntSet set = new CompactIntSet();
+		HashSet<Integer> ref = new HashSet<Integer>();
+		for (int i = 0; i < 100000; i++) {
+			/* mostly increasing values with some scattered ones */
+			int value = rng.nextInt(10) == 0 ? rng.nextInt() :
+				i * 3 + rng.nextInt(50);
+			assertEquals(ref.add(value), set.add(value));
+			int probe = rng.nextInt(400000);
+			assertEquals(ref.contains(probe), set.contains(probe));
+		}
+		assertEquals(ref.size(), set.size());
+		for (int value : ref) {
+			assertTrue(set.contains(value));
+		}
+	}
+
+	public void testSparseMemoryUsage() {
+		CompactIntSet set = new CompactIntSet();
+		for (int i = 0; i < 100; i++) {
+			set.add(i * 1000);
+		}
+		assertTrue(set.getMemoryUsage() < 1000);
+	}
+}
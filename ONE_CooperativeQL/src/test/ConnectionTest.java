@@ -9,6 +9,7 @@ import java.util.List;
 
 import junit.framework.TestCase;
 import core.CBRConnection;
+import core.ControlSignal;
 import core.DTNHost;
 import core.Message;
 import core.NetworkInterface;
@@ -82,6 +83,25 @@ public class ConnectionTest extends TestCase {
 		assertTrue(h[2].recvMessage.getId().equals(m[1].getId()));
 	}
 
+	public void testSendSignal() {
+		ControlSignal signal = new ControlSignal(h[0], 1);
+		c[0].sendSignal(h[0], signal);
+		assertSame(signal, h[1].recvSignal);
+		assertNull(h[0].recvSignal);
+		/* the ongoing transfer is not affected */
+		assertEquals(m[0].getId(), c[0].getMessage().getId());
+		assertEquals(size[0], c[0].getRemainingByteCount());
+
+		c[0].sendSignal(h[1], new ControlSignal(h[1], 2));
+		assertEquals(2, h[0].recvSignal.getType());
+		assertSame(h[1], h[0].recvSignal.getFrom());
+
+		/* signals are not sent through connections that are down */
+		c[1].setUpState(false);
+		c[1].sendSignal(h[0], signal);
+		assertNull(h[2].recvSignal);
+	}
+
 	public void testAbortTransfer() {
 		assertTrue(h[1].abortedId == null);
 		assertFalse(c[0].isMessageTransferred());
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.NeighborVisitor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+
+/**
+ * Tests for the two-phase neighbor discovery of the ConnectivityGrid
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double RANGE = 1.0;
+	private ConnectivityGrid sequential;
+	private ConnectivityGrid discovery;
+	private List<DTNHost> hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestSettings ts = new TestSettings();
+		/* a small world keeps the number of the 1-unit cells small */
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, "10,10");
+		ConnectivityGrid.reset();
+		TestUtils utils = new TestUtils(null, null, ts);
+
+		double[][] locs = {{0.5, 0.5}, {1.2, 0.5}, {1.9, 0.6}, {2.5, 2.5},
+				{0.5, 1.4}, {1.5, 1.5}, {2.1, 1.1}};
+		hosts = new ArrayList<DTNHost>();
+		for (double[] loc : locs) {
+			hosts.add(utils.createHost(new Coord(loc[0], loc[1])));
+		}
+
+		sequential = ConnectivityGrid.ConnectivityGridFactory(1, RANGE);
+		discovery = ConnectivityGrid.ConnectivityGridFactory(2, RANGE);
+		for (DTNHost h : hosts) {
+			sequential.addInterface(getInterface(h));
+			discovery.addInterface(getInterface(h));
+		}
+
+		/* move the hosts so that some of them change cells */
+		double[][] newLocs = {{1.1, 0.4}, {1.3, 0.6}, {1.8, 1.3}, {2.2, 1.8},
+				{0.6, 0.9}, {1.5, 1.5}, {2.9, 1.1}};
+		for (int i=0; i<newLocs.length; i++) {
+			hosts.get(i).setLocation(new Coord(newLocs[i][0], newLocs[i][1]));
+		}
+	}
+
+	public void testDiscoveryOrder() {
+		checkDiscovery(new int[] {2, 0, 6, 3, 1, 4, 5}, null);
+	}
+
+	public void testDiscoveryOrderInParallel() {
+		checkDiscovery(new int[] {5, 4, 3, 2, 1, 0, 6}, new ForkJoinPool(2));
+	}
+
+	public void testPartialRound() {
+		/* only some of the interfaces are updated */
+		checkDiscovery(new int[] {3, 0, 5}, null);
+		checkDiscovery(new int[] {6, 1, 2, 4, 0}, null);
+	}
+
+	public void testQueriesAfterRound() {
+		checkDiscovery(new int[] {0, 1, 2, 3, 4, 5, 6}, null);
+		for (DTNHost h : hosts) {
+			NetworkInterface ni = getInterface(h);
+			assertEquals(inRange(ni, sequential.getNearInterfaces(ni)),
+					inRange(ni, discovery.getNearInterfaces(ni)));
+		}
+	}
+
+	public void testVisitorOrder() {
+		for (DTNHost h : hosts) {
+			NetworkInterface ni = getInterface(h);
+			sequential.updateLocation(ni);
+			assertEquals(sequential.getNearInterfaces(ni), visit(ni));
+		}
+	}
+
+	public void testVisitingDoesNotAllocate() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return; // can't measure allocations in this JVM
+		}
+		com.sun.management.ThreadMXBean tBean =
+			(com.sun.management.ThreadMXBean)bean;
+		long tid = Thread.currentThread().getId();
+		CountingVisitor counter = new CountingVisitor();
+
+		for (int round = 0; round < 2; round++) {
+			long before = tBean.getThreadAllocatedBytes(tid);
+			for (int i=0; i < 1000; i++) {
+				discovery.startDiscovery();
+				for (int j=0, n = hosts.size(); j < n; j++) {
+					discovery.updateLocationForDiscovery(getInterface(j));
+				}
+				discovery.findInterfacesInRange(null);
+				for (int j=0, n = hosts.size(); j < n; j++) {
+					discovery.forEachNearInterface(getInterface(j), counter);
+				}
+				discovery.endDiscovery();
+				for (int j=0, n = hosts.size(); j < n; j++) {
+					sequential.updateLocation(getInterface(j));
+					sequential.forEachNearInterface(getInterface(j), counter);
+				}
+			}
+			long allocated = tBean.getThreadAllocatedBytes(tid) - before;
+			if (round > 0) { // the first round is for warming up
+				assertTrue("Allocated " + allocated + " bytes",
+						allocated < 1000);
+			}
+		}
+		assertTrue(counter.count > 0);
+	}
+
+	/**
+	 * Returns the near interfaces passed to a visitor
+	 */
+	private List<NetworkInterface> visit(NetworkInterface ni) {
+		final List<NetworkInterface> list = new ArrayList<NetworkInterface>();
+		sequential.forEachNearInterface(ni, new NeighborVisitor() {
+			public void visit(NetworkInterface other) {
+				list.add(other);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Updates the given hosts' interfaces in both grids, one in two-phases
+	 * and the other one by one, and checks that the near interfaces are
+	 * found in the same order
+	 */
+	private void checkDiscovery(int[] order, ForkJoinPool pool) {
+		discovery.startDiscovery();
+		for (int i : order) {
+			discovery.updateLocationForDiscovery(getInterface(hosts.get(i)));
+		}
+		discovery.findInterfacesInRange(pool);
+
+		for (int i : order) {
+			NetworkInterface ni = getInterface(hosts.get(i));
+			sequential.updateLocation(ni);
+			discovery.updateLocation(ni);
+			assertEquals("Wrong interfaces for host " + i,
+					inRange(ni, sequential.getNearInterfaces(ni)),
+					discovery.getNearInterfaces(ni));
+		}
+		discovery.endDiscovery();
+	}
+
+	/**
+	 * Returns the interfaces that are in range of an interface (including
+	 * the interface itself)
+	 */
+	private List<NetworkInterface> inRange(NetworkInterface ni,
+			Collection<NetworkInterface> near) {
+		List<NetworkInterface> list = new ArrayList<NetworkInterface>();
+		for (NetworkInterface other : near) {
+			if (other == ni ||
+					ni.getLocation().distance(other.getLocation()) <= RANGE) {
+				list.add(other);
+			}
+		}
+		return list;
+	}
+
+	private NetworkInterface getInterface(DTNHost host) {
+		return host.getInterfaces().get(0);
+	}
+
+	private NetworkInterface getInterface(int index) {
+		return getInterface(hosts.get(index));
+	}
+
+	private static class CountingVisitor implements NeighborVisitor {
+		private int count;
+
+		public void visit(NetworkInterface ni) {
+			count++;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.NeighborVisitor;
+import interfaces.QuadTreeIndex;
+import interfaces.SweepIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.World;
+
+/**
+ * Tests that all the connectivity optimizers find the same contacts when the
+ * same movement is replayed against them. The main method can be used for
+ * benchmarking the optimizers with larger replays.
+ */
+public class ConnectivityOptimizerTest extends TestCase {
+	private static final double[] RANGES = {10, 25, 50};
+	private static final double WORLD_SIZE = 1000;
+	private static final double MAX_STEP = 15;
+
+	private TestSettings ts;
+	private List<DTNHost> hosts;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(QuadTreeIndex.LEAF_CAPACITY_S, "4");
+		ConnectivityGrid.reset();
+		ConnectivityOptimizer.reset();
+		rng = new Random(42);
+		hosts = createHosts(ts, 200, rng);
+	}
+
+	public void testSameContacts() {
+		ConnectivityOptimizer[] optimizers = createOptimizers(ts);
+		for (ConnectivityOptimizer optimizer : optimizers) {
+			addInterfaces(optimizer, hosts);
+		}
+
+		for (int step = 0; step < 100; step++) {
+			move(hosts, rng);
+			TreeSet<Long> expected = bruteForceContacts(hosts);
+			assertTrue(step > 0 || expected.size() > 0);
+			for (ConnectivityOptimizer optimizer : optimizers) {
+				assertEquals("Wrong contacts from " + optimizer + " at step " +
+						step, expected, contacts(optimizer, hosts));
+			}
+		}
+	}
+
+	public void testRemoveInterfaces() {
+		SweepIndex sweep = new SweepIndex(ts);
+		QuadTreeIndex tree = new QuadTreeIndex(ts);
+		addInterfaces(sweep, hosts);
+		addInterfaces(tree, hosts);
+
+		/* remove every other host and make the rest move around */
+		List<DTNHost> remaining = new ArrayList<DTNHost>();
+		for (int i=0; i < hosts.size(); i++) {
+			if (i % 2 == 0) {
+				sweep.removeInterface(getInterface(hosts.get(i)));
+				tree.removeInterface(getInterface(hosts.get(i)));
+			}
+			else {
+				remaining.add(hosts.get(i));
+			}
+		}
+		assertEquals(remaining.size(), sweep.getAllInterfaces().size());
+		assertEquals(remaining.size(), tree.getAllInterfaces().size());
+
+		for (int step = 0; step < 20; step++) {
+			move(remaining, rng);
+			TreeSet<Long> expected = bruteForceContacts(remaining);
+			assertEquals(expected, contacts(sweep, remaining));
+			assertEquals(expected, contacts(tree, remaining));
+		}
+	}
+
+	public void testOptimizerFromSettings() {
+		ts.putSetting(World.SETTINGS_NS + "." +
+				ConnectivityOptimizer.OPTIMIZER_S, "SweepIndex");
+		ConnectivityOptimizer optimizer =
+			ConnectivityOptimizer.getOptimizer(1, 10);
+		assertTrue(optimizer instanceof SweepIndex);
+		assertSame(optimizer, ConnectivityOptimizer.getOptimizer(1, 10));
+		assertNotSame(optimizer, ConnectivityOptimizer.getOptimizer(2, 10));
+	}
+
+	/**
+	 * Creates the optimizers to compare: a grid for the largest range,
+	 * a sweep index and a quadtree
+	 */
+	private static ConnectivityOptimizer[] createOptimizers(TestSettings ts) {
+		return new ConnectivityOptimizer[] {
+				ConnectivityGrid.ConnectivityGridFactory(1,
+						RANGES[RANGES.length - 1]),
+				new SweepIndex(ts), new QuadTreeIndex(ts)};
+	}
+
+	/**
+	 * Creates hosts with different ranges to random locations
+	 */
+	private static List<DTNHost> createHosts(TestSettings ts, int nrof,
+			Random rng) {
+		TestUtils utils = new TestUtils(null, null, ts);
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i < nrof; i++) {
+			utils.setTransmitRange(RANGES[i % RANGES.length]);
+			hosts.add(utils.createHost(new Coord(
+					rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE)));
+		}
+		return hosts;
+	}
+
+	private static void addInterfaces(ConnectivityOptimizer optimizer,
+			List<DTNHost> hosts) {
+		for (DTNHost h : hosts) {
+			optimizer.addInterface(getInterface(h));
+		}
+	}
+
+	/**
+	 * Moves all hosts a random step within the world
+	 */
+	private static void move(List<DTNHost> hosts, Random rng) {
+		for (DTNHost h : hosts) {
+			Coord c = h.getLocation();
+			double x = c.getX() + (rng.nextDouble() * 2 - 1) * MAX_STEP;
+			double y = c.getY() + (rng.nextDouble() * 2 - 1) * MAX_STEP;
+			h.setLocation(new Coord(Math.max(0, Math.min(x, WORLD_SIZE)),
+					Math.max(0, Math.min(y, WORLD_SIZE))));
+		}
+	}
+
+	/**
+	 * Updates the locations of the hosts in the optimizer and returns the
+	 * contacts found using it
+	 */
+	private static TreeSet<Long> contacts(ConnectivityOptimizer optimizer,
+			List<DTNHost> hosts) {
+		for (DTNHost h : hosts) {
+			optimizer.updateLocation(getInterface(h));
+		}
+
+		ContactCollector collector = new ContactCollector();
+		for (DTNHost h : hosts) {
+			collector.ni = getInterface(h);
+			optimizer.forEachNearInterface(collector.ni, collector);
+		}
+		return collector.contacts;
+	}
+
+	/**
+	 * Returns the contacts found by comparing all pairs of hosts
+	 */
+	private static TreeSet<Long> bruteForceContacts(List<DTNHost> hosts) {
+		ContactCollector collector = new ContactCollector();
+		for (DTNHost h : hosts) {
+			collector.ni = getInterface(h);
+			for (DTNHost other : hosts) {
+				collector.visit(getInterface(other));
+			}
+		}
+		return collector.contacts;
+	}
+
+	private static NetworkInterface getInterface(DTNHost host) {
+		return host.getInterfaces().get(0);
+	}
+
+	/**
+	 * Collects the pairs of interfaces that are within the (smaller) range
+	 * of each other
+	 */
+	private static class ContactCollector implements NeighborVisitor {
+		private TreeSet<Long> contacts = new TreeSet<Long>();
+		private NetworkInterface ni;
+
+		public void visit(NetworkInterface other) {
+			double range = Math.min(ni.getTransmitRange(),
+					other.getTransmitRange());
+			if (other != ni &&
+					ni.getLocation().distance(other.getLocation()) <= range) {
+				int a = Math.min(ni.getAddress(), other.getAddress());
+				int b = Math.max(ni.getAddress(), other.getAddress());
+				contacts.add(((long)a << 32) | b);
+			}
+		}
+	}
+
+	/**
+	 * Replays random movement of a larger number of hosts against each
+	 * optimizer and prints the time used for updating and querying them.
+	 * @param args Number of hosts and steps (optional)
+	 */
+	public static void main(String[] args) {
+		int nrofHosts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int nrofSteps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		TestSettings ts = new TestSettings();
+		ConnectivityGrid.reset();
+		List<DTNHost> hosts = createHosts(ts, nrofHosts, new Random(1));
+		ConnectivityOptimizer[] optimizers = createOptimizers(ts);
+		long[] times = new long[optimizers.length];
+		for (ConnectivityOptimizer optimizer : optimizers) {
+			addInterfaces(optimizer, hosts);
+		}
+
+		Random rng = new Random(2);
+		for (int step = 0; step < nrofSteps; step++) {
+			move(hosts, rng);
+			TreeSet<Long> first = null;
+			for (int i=0; i < optimizers.length; i++) {
+				long start = System.nanoTime();
+				TreeSet<Long> found = contacts(optimizers[i], hosts);
+				times[i] += System.nanoTime() - start;
+				if (first == null) {
+					first = found;
+				}
+				else if (!first.equals(found)) {
+					throw new AssertionError("Different contacts from " +
+							optimizers[i] + " at step " + step);
+				}
+			}
+		}
+
+		for (int i=0; i < optimizers.length; i++) {
+			System.out.printf("%-40s %8.1f ms%n", optimizers[i],
+					times[i] / 1e6);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import routing.DeliveryPredictabilities;
+import core.Coord;
+import core.DTNHost;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the delivery predictability table of PRoPHET routers
+ */
+public class DeliveryPredictabilitiesTest extends TestCase {
+	private static final double GAMMA = 0.98;
+	private static final double DELTA = 1e-12;
+	private SimClock clock;
+	private DTNHost[] hosts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.clock = SimClock.getInstance();
+		clock.setTime(0);
+		core.NetworkInterface.reset();
+		DTNHost.reset();
+
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		this.hosts = new DTNHost[40];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = utils.createHost(new Coord(0, 0));
+		}
+	}
+
+	public void testEncounterAndAging() {
+		DeliveryPredictabilities preds = new DeliveryPredictabilities(GAMMA, 30);
+		assertEquals(0.0, preds.get(hosts[1]));
+		preds.updateEncounter(hosts[1], 0.75);
+		assertEquals(0.75, preds.get(hosts[1]));
+		assertEquals(1, preds.size());
+
+		clock.setTime(60);
+		double p = 0.75 * Math.pow(GAMMA, 2);
+		assertEquals(p, preds.get(hosts[1]), DELTA);
+		preds.updateEncounter(hosts[1], 0.75);
+		assertEquals(p + (1 - p) * 0.75, preds.get(hosts[1]), DELTA);
+
+		/* entries that were not read are aged over the whole time */
+		preds.updateEncounter(hosts[30], 0.5);
+		clock.setTime(90);
+		assertEquals(0.5 * GAMMA, preds.get(hosts[30]), DELTA);
+	}
+
+	public void testTransitive() {
+		DeliveryPredictabilities a = new DeliveryPredictabilities(GAMMA, 1);
+		DeliveryPredictabilities b = new DeliveryPredictabilities(GAMMA, 1);
+		b.set(hosts[0], 0.5);
+		b.set(hosts[2], 0.4);
+		b.set(hosts[25], 0.8);
+		a.set(hosts[2], 0.1);
+		a.updateEncounter(hosts[1], 0.75);
+
+		clock.setTime(10);
+		double pab = a.get(hosts[1]);
+		double pac = a.get(hosts[2]);
+		double pbc = b.get(hosts[2]);
+		double pbd = b.get(hosts[25]);
+		a.updateTransitive(hosts[0], hosts[1], b, 0.25);
+
+		assertEquals(0.0, a.get(hosts[0])); // no entry for the host itself
+		assertEquals(pac + (1 - pac) * pab * pbc * 0.25, a.get(hosts[2]),
+				DELTA);
+		assertEquals(pab * pbd * 0.25, a.get(hosts[25]), DELTA);
+		assertEquals(3, a.size());
+
+		Map<DTNHost, Double> map = a.toMap();
+		assertEquals(3, map.size());
+		assertEquals(a.get(hosts[25]), map.get(hosts[25]));
+	}
+
+	public void testSetGamma() {
+		DeliveryPredictabilities preds = new DeliveryPredictabilities(GAMMA, 1);
+		preds.set(hosts[3], 1.0);
+		clock.setTime(10);
+		preds.setGamma(0.5);
+		clock.setTime(12);
+		assertEquals(Math.pow(GAMMA, 10) * 0.25, preds.get(hosts[3]), DELTA);
+	}
+}
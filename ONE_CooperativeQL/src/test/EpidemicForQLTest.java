@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import routing.EpidemicForQL;
+import routing.MessageRouter;
+import core.Connection;
+import core.Message;
+import core.Settings;
+
+/**
+ * Tests for the queues of the messages that EpidemicForQL's peers lack
+ */
+public class EpidemicForQLTest extends AbstractRouterTest {
+	private static final String M1 = "M1";
+	private static final String M2 = "M2";
+	private static final String M3 = "M3";
+
+	private QueueRouter r1;
+	private QueueRouter r2;
+
+	@Override
+	public void setUp() throws Exception {
+		TestSettings s = new TestSettings();
+		s.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		s.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
+				""+MessageRouter.Q_MODE_FIFO);
+		setRouterProto(new QueueRouter(s));
+		super.setUp();
+		this.r1 = (QueueRouter)h1.getRouter();
+		this.r2 = (QueueRouter)h2.getRouter();
+		r2.refuse = MessageRouter.DENIED_NO_SPACE;
+	}
+
+	/**
+	 * Tests that the messages the peer already has are not queued when the
+	 * connection comes up
+	 */
+	public void testConnectionUp() {
+		r1.add(new Message(h1, h3, M1, 1));
+		Message m2 = new Message(h1, h3, M2, 1);
+		r1.add(m2);
+		r1.add(new Message(h1, h3, M3, 1));
+		r2.add(m2.replicate());
+
+		h1.connect(h2);
+		r1.update();
+		assertTried(M1, M3);
+	}
+
+	/**
+	 * Tests that the queue follows the additions to and removals from the
+	 * buffer after the connection has come up
+	 */
+	public void testBufferChanges() {
+		r1.add(new Message(h1, h3, M1, 1));
+		h1.connect(h2);
+
+		r1.add(new Message(h1, h3, M2, 1));
+		h1.deleteMessage(M1, false);
+		Message m3 = new Message(h1, h3, M3, 1);
+		r2.add(m3.replicate());
+		r1.add(m3); // the peer has this already
+		r1.update();
+		assertTried(M2);
+
+		h1.deleteMessage(M2, false);
+		r1.update();
+		assertTried();
+	}
+
+	/**
+	 * Tests that the messages the peer refuses for good are removed from
+	 * the queue and the others are tried again
+	 */
+	public void testRetries() {
+		r1.add(new Message(h1, h3, M1, 1));
+		r1.add(new Message(h1, h3, M2, 1));
+		r1.add(new Message(h1, h3, M3, 1));
+		h1.connect(h2);
+
+		r1.update();
+		assertTried(M1, M2, M3);
+		r1.update();
+		assertTried(M1, M2, M3); // no space -> kept in the queue
+
+		r2.refuse = MessageRouter.TRY_LATER_BUSY;
+		r1.update();
+		assertTried(M1); // busy -> rest of the queue skipped
+
+		r2.refuse = MessageRouter.DENIED_OLD;
+		r1.update();
+		assertTried(M1, M2, M3);
+		r1.update();
+		assertTried(); // peer has them -> removed from the queue
+	}
+
+	private void assertTried(String... ids) {
+		assertEquals(Arrays.asList(ids), r1.tried);
+		r1.tried.clear();
+	}
+
+	/**
+	 * Router that records the messages it tries to send and refuses the
+	 * messages it's offered with a given return value
+	 */
+	private static class QueueRouter extends EpidemicForQL {
+		private List<String> tried = new ArrayList<String>();
+		private int refuse = RCV_OK;
+
+		public QueueRouter(Settings s) {
+			super(s);
+		}
+
+		protected QueueRouter(QueueRouter r) {
+			super(r);
+		}
+
+		private void add(Message m) {
+			addToMessages(m, false);
+		}
+
+		@Override
+		protected int startTransfer(Message m, Connection con) {
+			tried.add(m.getId());
+			return super.startTransfer(m, con);
+		}
+
+		@Override
+		protected int checkReceiving(Message m) {
+			if (refuse != RCV_OK) {
+				return refuse;
+			}
+			return super.checkReceiving(m);
+		}
+
+		@Override
+		public QueueRouter replicate() {
+			return new QueueRouter(this);
+		}
+	}
+}
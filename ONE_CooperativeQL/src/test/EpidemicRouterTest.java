@@ -375,6 +375,56 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 		assertFalse(mc.next());
 	}
 	
+	/**
+	 * Tests that the buffer occupancy and hop count totals of the routers
+	 * match the messages in the buffers
+	 */
+	public void testBufferLedger() {
+		h1.createNewMessage(new Message(h1, h4, msgId1, 10));
+		h1.createNewMessage(new Message(h1, h4, msgId2, 20));
+		checkCreates(2);
+		checkLedger(h1);
+		assertEquals(BUFFER_SIZE - 30, h1.getRouter().getFreeBufferSize());
+		assertEquals(0, h1.getRouter().getNrofRelayedMessages());
+		
+		h1.connect(h2);
+		h2.connect(h3);
+		for (int i=0; i < 10; i++) {
+			clock.advance(1);
+			updateAllNodes();
+			checkLedger(h1);
+			checkLedger(h2);
+			checkLedger(h3);
+		}
+		assertEquals(2, h3.getNrofMessages());
+		assertEquals(2, h3.getRouter().getNrofRelayedMessages());
+		assertEquals(4, h3.getRouter().getTotalHopCount());
+		
+		h3.deleteMessage(msgId1, true);
+		checkLedger(h3);
+		assertEquals(BUFFER_SIZE - 20, h3.getRouter().getFreeBufferSize());
+		assertEquals(2, h3.getRouter().getTotalHopCount());
+	}
+	
+	private void checkLedger(DTNHost host) {
+		int occupancy = 0;
+		int hops = 0;
+		int relayed = 0;
+		for (Message m : host.getMessageCollection()) {
+			occupancy += m.getSize();
+			hops += m.getHopCount();
+			if (m.getHopCount() > 0) {
+				relayed++;
+			}
+		}
+		
+		MessageRouter r = host.getRouter();
+		assertEquals(occupancy, r.getBufferOccupancy());
+		assertEquals(BUFFER_SIZE - occupancy, r.getFreeBufferSize());
+		assertEquals(hops, r.getTotalHopCount());
+		assertEquals(relayed, r.getNrofRelayedMessages());
+	}
+	
 	/**
 	 * Tests creating a new message when the message buffer is full and the
 	 * message that should be removed is the message being sent 
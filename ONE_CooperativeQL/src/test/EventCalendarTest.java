@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventCalendar;
+import input.EventQueue;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventCalendar
+ */
+public class EventCalendarTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private EventCalendar ec;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ec = new EventCalendar();
+	}
+
+	public void testEmpty() {
+		assertEquals(MAX, ec.nextEventsTime());
+		assertEquals(MAX, ec.nextEvent().getTime());
+		ec.addQueue(new ScheduledUpdatesQueue());
+		assertEquals(MAX, ec.nextEventsTime());
+	}
+
+	public void testOrdering() {
+		ec.addQueue(new ListQueue(1, 4, 7), true);
+		ec.addQueue(new ListQueue(2, 3, 9), true);
+		ec.addQueue(new ListQueue(0, 8), true);
+
+		double [] expected = {0, 1, 2, 3, 4, 7, 8, 9};
+		for (double time : expected) {
+			assertEquals(time, ec.nextEventsTime());
+			assertEquals(time, ec.nextEvent().getTime());
+		}
+		assertEquals(MAX, ec.nextEventsTime());
+	}
+
+	public void testTieBreaking() {
+		ListQueue q1 = new ListQueue(1, 2);
+		ListQueue q2 = new ListQueue(1, 2);
+		ScheduledUpdatesQueue suq = new ScheduledUpdatesQueue();
+		ec.addQueue(suq);
+		ec.addQueue(q1, true);
+		ec.addQueue(q2, false);
+		suq.addUpdate(2);
+		ec.queueChanged(suq);
+
+		/* equal times are returned in the order the queues were added */
+		assertSame(q1.events.get(0), ec.nextEvent());
+		assertSame(q2.events.get(0), ec.nextEvent());
+		assertEquals(2.0, ec.nextEventsTime());
+		ExternalEvent ee = ec.nextEvent(); // the scheduled update
+		assertNotSame(q1.events.get(1), ee);
+		assertNotSame(q2.events.get(1), ee);
+		assertSame(q1.events.get(1), ec.nextEvent());
+		assertSame(q2.events.get(1), ec.nextEvent());
+	}
+
+	public void testScheduledUpdates() {
+		ScheduledUpdatesQueue suq = new ScheduledUpdatesQueue();
+		ec.addQueue(new ListQueue(5, 10), true);
+		ec.addQueue(suq);
+
+		assertEquals(5.0, ec.nextEventsTime());
+		suq.addUpdate(3);
+		ec.queueChanged(suq);
+		assertEquals(3.0, ec.nextEvent().getTime());
+		assertEquals(5.0, ec.nextEvent().getTime());
+		suq.addUpdate(7);
+		ec.queueChanged(suq);
+		assertEquals(7.0, ec.nextEvent().getTime());
+		assertEquals(10.0, ec.nextEvent().getTime());
+		assertEquals(MAX, ec.nextEventsTime());
+	}
+
+	public void testUnknownQueuesArePolled() {
+		ListQueue q = new ListQueue(4);
+		EventQueue polled = new EventQueue() {
+			private double time = MAX;
+			public ExternalEvent nextEvent() {
+				ExternalEvent ee = new ExternalEvent(time);
+				time = MAX;
+				return ee;
+			}
+			public double nextEventsTime() {
+				time = (time == MAX ? 2 : time); // appears spontaneously
+				return time;
+			}
+		};
+		ec.addQueue(q, true);
+		ec.addQueue(polled);
+
+		assertEquals(2.0, ec.nextEvent().getTime());
+		assertEquals(2.0, ec.nextEvent().getTime());
+	}
+
+	/**
+	 * Simple event queue with a fixed list of events
+	 */
+	private class ListQueue implements EventQueue {
+		private List<ExternalEvent> events = new ArrayList<ExternalEvent>();
+		private int next = 0;
+
+		public ListQueue(double... times) {
+			for (double time : times) {
+				events.add(new ExternalEvent(time));
+			}
+		}
+
+		public ExternalEvent nextEvent() {
+			if (next >= events.size()) {
+				return new ExternalEvent(MAX);
+			}
+			return events.get(next++);
+		}
+
+		public double nextEventsTime() {
+			if (next >= events.size()) {
+				return MAX;
+			}
+			return events.get(next).getTime();
+		}
+	}
+}
@@ -5,10 +5,14 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.BinaryTraceReader;
+import input.BinaryTraceWriter;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
+import input.MappedEventsReader;
 import input.MessageCreateEvent;
+import input.MessageDeleteEvent;
 import input.StandardEventsReader;
 
 import java.io.File;
@@ -16,6 +20,7 @@ import java.io.PrintWriter;
 import java.util.List;
 
 import junit.framework.TestCase;
+import core.SimError;
 
 public class ExternalEventsQueueTest extends TestCase {
 	private final String[] stdinput = {
@@ -81,6 +86,166 @@ public class ExternalEventsQueueTest extends TestCase {
 		assertTrue(tmpBinFile.delete()); // make sure all locks are gone
 	}
 	
+	public void testBinaryTrace() throws Exception {
+		File traceFile = createTrace(3);
+		for (int preload : new int[] {1, 4, 10}) {
+			eeq = new ExternalEventsQueue(traceFile.getAbsolutePath(),
+					preload);
+			checkEeq(eeq, preload);
+		}
+
+		List<ExternalEvent> expected =
+			new StandardEventsReader(tempFile).readEvents(100);
+		BinaryTraceReader r = new BinaryTraceReader(traceFile);
+		assertEquals(expected.size(), r.getNrofEvents());
+		List<ExternalEvent> events = r.readEvents(100);
+		r.close();
+		assertEquals(expected.size(), events.size());
+		for (int i=0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).toString(), events.get(i).toString());
+		}
+		assertTrue(traceFile.delete());
+	}
+	
+	public void testBinaryTraceSeek() throws Exception {
+		File traceFile = createTrace(2);
+		BinaryTraceReader r = new BinaryTraceReader(traceFile);
+		for (int i=msgTimes.length - 1; i >= 0; i--) {
+			r.seek(msgTimes[i]);
+			List<ExternalEvent> events = r.readEvents(100);
+			assertEquals(msgTimes.length - i, events.size());
+			assertEquals(msgTimes[i], events.get(0).getTime());
+		}
+		r.seek(msgTimes[3] + 0.001);
+		assertEquals(msgTimes[4], r.readEvents(1).get(0).getTime());
+		r.seek(msgTimes[msgTimes.length - 1] + 1);
+		assertEquals(0, r.readEvents(100).size());
+		r.close();
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting("ee." + ExternalEventsQueue.PATH_SETTING,
+				traceFile.getAbsolutePath());
+		ts.putSetting("ee." + ExternalEventsQueue.START_TIME_SETTING, "3000");
+		eeq = new ExternalEventsQueue(new TestSettings("ee"));
+		assertEquals(msgTimes[4], eeq.nextEventsTime());
+		assertTrue(traceFile.delete());
+	}
+	
+	public void testBinaryTraceTimes() throws Exception {
+		double[] times = {0, 1.0/3, 0.5, 0.5, 2.25, 1e12, 1e12 + 0.5};
+		File traceFile = File.createTempFile("traceTest",
+				BinaryTraceReader.TRACE_EXT);
+		BinaryTraceWriter writer = new BinaryTraceWriter(
+				traceFile.getAbsolutePath(), 2);
+		for (double time : times) {
+			writer.write(new MessageDeleteEvent(1, "M", time, true));
+		}
+		writer.close();
+
+		List<ExternalEvent> events =
+			new BinaryTraceReader(traceFile).readEvents(100);
+		assertEquals(times.length, events.size());
+		for (int i=0; i < times.length; i++) {
+			assertEquals(times[i], events.get(i).getTime());
+		}
+		assertTrue(traceFile.delete());
+	}
+	
+	/**
+	 * Converts the standard input file to a binary trace file
+	 */
+	private File createTrace(int blockSize) throws Exception {
+		File traceFile = File.createTempFile("traceTest",
+				BinaryTraceReader.TRACE_EXT);
+		BinaryTraceWriter writer = new BinaryTraceWriter(
+				traceFile.getAbsolutePath(), blockSize);
+		writer.write(new StandardEventsReader(tempFile).readEvents(100));
+		writer.close();
+		return traceFile;
+	}
+	
+	public void testMappedReader() throws Exception {
+		String[] input = {"0.5 CONN p1 c2 up", "1.25\tCONN 3 4 UP wlan0",
+				"2 C M1 p1 p2 1000 20", "3.0 C M2 p2 p1 500 x",
+				"4e1 S M1 p1 p2", "# comment", "", "50.75 DE M1 p1 p2",
+				"51 A M2 p2 p1", "60 DR * p1", "61 R M2 p2",
+				"1000000.0001 CONN p1 c2 down"};
+		File file = File.createTempFile("mappedTest", ".tmp");
+		PrintWriter out = new PrintWriter(file);
+		for (int i=0; i < input.length; i++) {
+			/* mix the line terminators */
+			out.print(input[i] + (i % 2 == 0 ? "\n" : "\r\n"));
+		}
+		out.close();
+
+		List<ExternalEvent> expected =
+			new StandardEventsReader(file).readEvents(100);
+		assertEquals(10, expected.size());
+		/* the small windows make the reader remap in the middle of lines */
+		for (int windowSize : new int[] {MappedEventsReader.DEFAULT_WINDOW_SIZE,
+				7, 16}) {
+			ExternalEventsReader r = new MappedEventsReader(file, windowSize);
+			List<ExternalEvent> events = r.readEvents(4);
+			events.addAll(r.readEvents(100));
+			assertEquals(0, r.readEvents(100).size());
+			r.close();
+
+			assertEquals(expected.size(), events.size());
+			for (int i=0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getTime(), events.get(i).getTime());
+				assertEquals(expected.get(i).toString(),
+						events.get(i).toString());
+			}
+		}
+		assertTrue(file.delete());
+	}
+	
+	public void testMappedReaderCrAtWindowEnd() throws Exception {
+		File file = File.createTempFile("mappedTest", ".tmp");
+		PrintWriter out = new PrintWriter(file);
+		out.print("1.0 CONN 1 2 up\r\n2.0 CONN 3 4 up\r\n" +
+				"3.0 CONN 5 6 down\r\n");
+		out.close();
+
+		List<ExternalEvent> expected =
+			new StandardEventsReader(file).readEvents(100);
+		assertEquals(3, expected.size());
+		/* windows that end at the '\r' of the first or the second line */
+		for (int windowSize : new int[] {16, 18, 33}) {
+			ExternalEventsReader r = new MappedEventsReader(file, windowSize);
+			List<ExternalEvent> events = r.readEvents(100);
+			r.close();
+
+			assertEquals(expected.size(), events.size());
+			for (int i=0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).toString(),
+						events.get(i).toString());
+			}
+		}
+		assertTrue(file.delete());
+	}
+
+	public void testMappedReaderErrors() throws Exception {
+		String[] invalid = {"1 C M1 p1 p2", "1 X M1 p1 p2", "x C M1 p1 p2 1",
+				"1 CONN p1 p2 sideways", "1 S M1 1p p2"};
+		for (String line : invalid) {
+			File file = File.createTempFile("mappedTest", ".tmp");
+			PrintWriter out = new PrintWriter(file);
+			out.println(line);
+			out.close();
+
+			ExternalEventsReader r = new MappedEventsReader(file);
+			try {
+				r.readEvents(1);
+				fail("No error from '" + line + "'");
+			} catch (SimError e) {
+				// expected
+			}
+			r.close();
+			assertTrue(file.delete());
+		}
+	}
+	
 	
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import routing.ActiveRouter;
+import routing.DeliveryPredictabilities;
+import routing.EpidemicRouter;
+import routing.ForwardingCandidates;
+import routing.MessageRouter;
+import core.Connection;
+import core.Message;
+import core.Tuple;
+
+/**
+ * Tests for the PRoPHET forwarding candidate queues
+ */
+public class ForwardingCandidatesTest extends AbstractRouterTest {
+	private static final double GAMMA = 0.5;
+
+	private DeliveryPredictabilities ownPreds;
+	private DeliveryPredictabilities peerPreds;
+	private ForwardingCandidates candidates;
+
+	@Override
+	public void setUp() throws Exception {
+		ts.putSetting(MessageRouter.B_SIZE_S, ""+BUFFER_SIZE);
+		setRouterProto(new EpidemicRouter(ts));
+		super.setUp();
+
+		this.ownPreds = new DeliveryPredictabilities(GAMMA, 1);
+		this.peerPreds = new DeliveryPredictabilities(GAMMA, 1);
+		this.candidates = new ForwardingCandidates(
+				(ActiveRouter)h1.getRouter()) {
+			protected DeliveryPredictabilities getPreds(MessageRouter r) {
+				return r == h1.getRouter() ? ownPreds : peerPreds;
+			}
+		};
+	}
+
+	/**
+	 * Tests that messages added after the predictabilities have aged are
+	 * ordered consistently with the messages queued earlier
+	 */
+	public void testOrderAfterAging() {
+		peerPreds.set(h3, 0.5);
+		peerPreds.set(h4, 0.4);
+		h1.connect(h2);
+		assertNull(candidates.tryCandidates()); // builds the empty queue
+
+		Message m1 = new Message(h1, h4, msgId1, 1);
+		h1.createNewMessage(m1);
+		candidates.messageAdded(null, m1);
+
+		clock.advance(10);
+		Message m2 = new Message(h1, h3, msgId2, 1);
+		h1.createNewMessage(m2);
+		candidates.messageAdded(null, m2);
+
+		/* the message for the more likely destination goes first */
+		Tuple<Message, Connection> t = candidates.tryCandidates();
+		assertNotNull(t);
+		assertSame(m2, t.getKey());
+	}
+}
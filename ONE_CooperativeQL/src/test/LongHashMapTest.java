@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.LongHashMap;
+
+/**
+ * Tests for the primitive long keyed hash map
+ */
+public class LongHashMapTest extends TestCase {
+
+	public void testBasicOperations() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertNull(map.put(1L << 40, "c"));
+		assertEquals(3, map.size());
+		assertEquals("a", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertEquals("c", map.get(1L << 40));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+		assertFalse(map.containsKey(5));
+
+		assertEquals("a", map.put(1, "d"));
+		assertEquals(3, map.size());
+		assertEquals("b", map.remove(-5));
+		assertNull(map.remove(-5));
+		assertEquals(2, map.size());
+		assertValues(map, "d", "c");
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+		assertValues(map);
+	}
+
+	public void testInsertionOrder() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		map.put(3, "a");
+		map.put(1, "b");
+		map.put(2, "c");
+		map.put(3, "d"); // replacing keeps the position
+		assertValues(map, "d", "b", "c");
+		map.remove(1);
+		map.put(1, "e"); // re-adding moves to the end
+		assertValues(map, "d", "c", "e");
+	}
+
+	public void testAgainstLinkedHashMap() {
+		Random rng = new Random(7);
+		LongHashMap<Long> map = new LongHashMap<Long>();
+		LinkedHashMap<Long, Long> ref = new LinkedHashMap<Long, Long>();
+
+		for (int i = 0; i < 50000; i++) {
+			/* keys from a range that makes the map grow and shrink */
+			long key = rng.nextInt(i < 25000 ? 2000 : 200) * 0x100000001L;
+			int op = rng.nextInt(3);
+			if (op == 0) {
+				assertEquals(ref.remove(key), map.remove(key));
+			}
+			else if (op == 1) {
+				Long value = (long)i;
+				assertEquals(ref.put(key, value), map.put(key, value));
+			}
+			else {
+				assertEquals(ref.get(key), map.get(key));
+			}
+			assertEquals(ref.size(), map.size());
+			if (i % 1000 == 0) {
+				assertEquals(new ArrayList<Long>(ref.values()),
+						new ArrayList<Long>(map.values()));
+			}
+		}
+	}
+
+	public void testPosition() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		for (int i = 0; i < 20; i++) {
+			map.put(i * 7, "v" + i);
+		}
+		for (int i = 0; i < 20; i += 2) {
+			map.remove(i * 7);
+		}
+		map.put(0, "a"); // re-added to the end
+		assertEquals(-1, map.position(14));
+		int previous = -1;
+		for (long key : new long[] {7, 21, 133, 0}) {
+			assertTrue(map.position(key) > previous);
+			previous = map.position(key);
+		}
+	}
+
+	public void testConcurrentModification() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		Iterator<String> i = map.values().iterator();
+		i.next();
+		map.put(3, "c");
+		try {
+			i.next();
+			fail("Modification during iteration not detected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	public void testNullValue() {
+		try {
+			new LongHashMap<String>().put(1, null);
+			fail("Null value accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private void assertValues(LongHashMap<String> map, String... expected) {
+		List<String> values = new ArrayList<String>(map.values());
+		assertEquals(expected.length, map.values().size());
+		assertEquals(Arrays.asList(expected), values);
+	}
+}
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -121,6 +122,62 @@ public class MaxPropDijkstraTest extends TestCase {
 		assertEquals(1-0.0625, result.get(2));
 		assertEquals(1-0.625, result.get(4));
 		assertEquals( (1-0.625)+(1-0.5), result.get(5));
+
+		double[] costs = mpd.getCosts(0);
+		assertEquals(result.get(2), costs[2]);
+		assertEquals(result.get(5), costs[5]);
+		assertEquals(result.get(3), costs[3]);
+	}
+
+	/**
+	 * Tests the probabilities against normalizing all the values on every
+	 * update (also over many rescalings of the stored values)
+	 */
+	public void testManyUpdates() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(
+				MeetingProbabilitySet.INFINITE_SET_SIZE, 0.5);
+		Map<Integer, Double> expected = new HashMap<Integer, Double>();
+		Random rng = new Random(3);
+
+		for (int i=0; i<2000; i++) {
+			int node = rng.nextInt(30);
+			int version = mps.getVersion();
+			mps.updateMeetingProbFor(node);
+			assertTrue(mps.getVersion() != version);
+
+			if (expected.isEmpty()) {
+				expected.put(node, 1.0);
+				continue;
+			}
+			Double old = expected.get(node);
+			expected.put(node, (old == null ? 0 : old) + 0.5);
+			for (Map.Entry<Integer, Double> e : expected.entrySet()) {
+				e.setValue(e.getValue() / 1.5);
+			}
+		}
+
+		assertEquals(expected.size(), mps.size());
+		for (int i=0; i<mps.size(); i++) {
+			assertEquals(expected.get(mps.getNodeAt(i)), mps.getProbAt(i),
+					DELTA);
+		}
+		MeetingProbabilitySet replica = mps.replicate();
+		assertEquals(mps.getAllProbs(), replica.getAllProbs());
+	}
+
+	public void testMaxSetSize() {
+		MeetingProbabilitySet mps = new MeetingProbabilitySet(3, 1.0);
+		mps.updateMeetingProbFor(1);
+		mps.updateMeetingProbFor(2);
+		mps.updateMeetingProbFor(1);
+		assertEquals(0.75, mps.getProbFor(1));
+		assertEquals(0.25, mps.getProbFor(2));
+
+		mps.updateMeetingProbFor(3); // set is full -> smallest is dropped
+		assertEquals(2, mps.size());
+		assertEquals(0.0, mps.getProbFor(2));
+		assertEquals(0.375, mps.getProbFor(1));
+		assertEquals(0.5, mps.getProbFor(3));
 	}
 	
 	
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.MessageOrdering;
+import routing.MessageRouter;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.Settings;
+import core.SimClock;
+
+/**
+ * Tests for the message orderings and their upkeep in the message router
+ */
+public class MessageOrderingTest extends TestCase {
+	private static final String REPS = "reps";
+	private static final int BUFFER_SIZE = 100;
+
+	private SimClock clock;
+	private MessageChecker mc;
+	private DTNHost h1;
+	private DTNHost h2;
+	private OrderedRouter r1;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.clock = SimClock.getInstance();
+		clock.setTime(0);
+		Message.reset();
+		core.NetworkInterface.reset();
+		DTNHost.reset();
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MessageRouter.B_SIZE_S, "" + BUFFER_SIZE);
+		ts.putSetting(MessageRouter.SEND_QUEUE_MODE_S,
+				"" + MessageRouter.Q_MODE_FIFO);
+		this.mc = new MessageChecker();
+		List<MessageListener> ml = new ArrayList<MessageListener>();
+		ml.add(mc);
+		TestUtils utils = new TestUtils(null, ml, ts);
+		utils.setMessageRouterProto(new OrderedRouter(ts));
+		this.h1 = utils.createHost(new Coord(0, 0));
+		this.h2 = utils.createHost(new Coord(0, 0));
+		this.r1 = (OrderedRouter)h1.getRouter();
+	}
+
+	public void testOrdering() {
+		MessageOrdering o = new MessageOrdering(
+				MessageOrdering.intProperty(REPS), true,
+				MessageOrdering.RECEIVE_TIME);
+		Message m1 = createMessage("M1", 10, 1);
+		Message m2 = createMessage("M2", 10, 3);
+		Message m3 = createMessage("M3", 10, 3);
+		m2.setReceiveTime(5);
+		m3.setReceiveTime(2);
+		o.add(m1);
+		o.add(m2);
+		o.add(m3);
+
+		assertEquals(3, o.size());
+		assertOrder(o, m3, m2, m1);
+
+		m1.updateProperty(REPS, 5);
+		o.update(m1);
+		assertOrder(o, m1, m3, m2);
+
+		assertTrue(o.remove(m3));
+		assertFalse(o.remove(m3));
+		assertOrder(o, m1, m2);
+
+		o.clear();
+		assertEquals(0, o.size());
+		assertNull(o.first());
+	}
+
+	public void testExpiryTime() {
+		MessageOrdering o = new MessageOrdering(MessageOrdering.EXPIRY_TIME,
+				false, MessageOrdering.RANDOM);
+		Message m1 = createMessage("M1", 10, 0);
+		m1.setTtl(Message.INFINITE_TTL);
+		Message m2 = createMessage("M2", 10, 0);
+		m2.setTtl(60);
+		clock.setTime(100);
+		Message m3 = createMessage("M3", 10, 0);
+		m3.setTtl(58);
+		o.add(m1);
+		o.add(m2);
+		o.add(m3);
+		assertOrder(o, m3, m2, m1);
+		assertTrue(m3.getTtl() <= m2.getTtl());
+	}
+
+	public void testRouterOrdering() {
+		Message m1 = createMessage("M1", 10, 1);
+		Message m2 = createMessage("M2", 10, 2);
+		Message m3 = createMessage("M3", 10, 1);
+		h1.createNewMessage(m1);
+		clock.advance(1);
+		h1.createNewMessage(m2);
+		clock.advance(1);
+		h1.createNewMessage(m3);
+		assertOrder(r1.reps, m2, m1, m3);
+
+		m3.updateProperty(REPS, 4);
+		r1.updated(m3);
+		assertOrder(r1.reps, m3, m2, m1);
+
+		h1.deleteMessage("M2", false);
+		assertOrder(r1.reps, m3, m1);
+
+		/* replaced messages are replaced in the orderings too */
+		Message m1b = createMessage("M1", 10, 9);
+		r1.add(m1b);
+		assertOrder(r1.reps, m1b, m3);
+		assertEquals(20, r1.getBufferOccupancy());
+	}
+
+	public void testLateOrdering() {
+		Message m1 = createMessage("M1", 10, 1);
+		Message m2 = createMessage("M2", 10, 2);
+		h1.createNewMessage(m1);
+		h1.createNewMessage(m2);
+		assertOrder(r1.addOrdering(MessageOrdering.intProperty(REPS), false),
+				m1, m2);
+	}
+
+	public void testSelectMessage() {
+		assertNull(r1.select(MessageOrdering.intProperty(REPS), true));
+		Message m1 = createMessage("M1", 10, 4);
+		Message m2 = createMessage("M2", 10, 2);
+		Message m3 = createMessage("M3", 10, 4);
+		h1.createNewMessage(m1);
+		clock.advance(1);
+		h1.createNewMessage(m2);
+		clock.advance(1);
+		h1.createNewMessage(m3);
+		assertSame(m1, r1.select(MessageOrdering.intProperty(REPS), true));
+		assertSame(m2, r1.select(MessageOrdering.intProperty(REPS), false));
+	}
+
+	public void testDeleteUntilFree() {
+		for (int i = 0; i < 10; i++) {
+			h1.createNewMessage(createMessage("M" + i, 10, i % 3));
+		}
+		assertEquals(0, r1.getFreeBufferSize());
+		mc.reset();
+
+		assertEquals(3, r1.deleteUntilFree(0.3));
+		assertEquals(30, r1.getFreeBufferSize());
+		assertEquals(7, r1.reps.size());
+		while (mc.next()) {
+			assertTrue(mc.getLastDropped());
+			assertEquals(2, mc.getLastMsg().getProperty(REPS));
+		}
+		assertEquals(0, r1.deleteUntilFree(0.3));
+		assertEquals(7, r1.deleteUntilFree(1.0));
+		assertEquals(0, h1.getNrofMessages());
+	}
+
+	public void testMessagesByDestination() {
+		DTNHost h3 = new TestUtils(null, null, new TestSettings()).createHost();
+		Message a1 = createMessage("A1", 10, 0);
+		Message b1 = new Message(h1, h3, "B1", 10);
+		Message a2 = createMessage("A2", 10, 0);
+		Message a3 = createMessage("A3", 10, 0);
+		h1.createNewMessage(a1);
+		h1.createNewMessage(b1);
+		h1.createNewMessage(a2);
+		h1.createNewMessage(a3);
+		assertMessagesFor(h2, a1, a2, a3);
+		assertMessagesFor(h3, b1);
+
+		h1.deleteMessage("A2", false);
+		h1.deleteMessage("B1", false);
+		assertMessagesFor(h2, a1, a3);
+		assertMessagesFor(h3);
+
+		/* re-added messages come last, as in the buffer */
+		Message a2b = createMessage("A2", 10, 0);
+		h1.createNewMessage(a2b);
+		h1.createNewMessage(b1);
+		assertMessagesFor(h2, a1, a3, a2b);
+		assertMessagesFor(h3, b1);
+		assertMessagesFor(h1);
+
+		h1.deleteMessage("A1", false);
+		h1.deleteMessage("A3", false);
+		h1.deleteMessage("A2", false);
+		assertMessagesFor(h2);
+		h1.createNewMessage(a1);
+		assertMessagesFor(h2, a1);
+	}
+
+	public void testForwardingRate() {
+		MessageOrdering.Key rate = MessageOrdering.FORWARDING_RATE;
+		Message m = createMessage("M1", 10, 0);
+		m.setTtl(100);
+		assertEquals(0.0, rate.getKey(m));
+		m.addNodeOnPath(h2);
+		assertEquals(Double.POSITIVE_INFINITY, rate.getKey(m));
+		clock.setTime(600);
+		assertEquals(0.1, rate.getKey(m), 1e-9);
+	}
+
+	private Message createMessage(String id, int size, int reps) {
+		Message m = new Message(h1, h2, id, size);
+		m.addProperty(REPS, reps);
+		m.setReceiveTime(clock.getTime());
+		return m;
+	}
+
+	private void assertOrder(MessageOrdering o, Message... expected) {
+		assertEquals(expected.length, o.size());
+		assertSame(expected[0], o.first());
+		Iterator<Message> i = o.iterator();
+		for (Message m : expected) {
+			assertSame(m, i.next());
+		}
+		assertFalse(i.hasNext());
+	}
+
+	private void assertMessagesFor(DTNHost to, Message... expected) {
+		List<Message> buffered = new ArrayList<Message>();
+		for (Message m : r1.getMessageCollection()) {
+			if (m.getTo() == to) {
+				buffered.add(m);
+			}
+		}
+		List<Message> forHost = new ArrayList<Message>(r1.messagesFor(to));
+		assertEquals(expected.length, forHost.size());
+		assertEquals(buffered, forHost);
+		for (int i = 0; i < expected.length; i++) {
+			assertSame(expected[i], forHost.get(i));
+		}
+	}
+
+	/**
+	 * Router that exposes its message orderings
+	 */
+	private static class OrderedRouter extends EpidemicRouter {
+		private MessageOrdering reps;
+
+		public OrderedRouter(Settings s) {
+			super(s);
+		}
+
+		protected OrderedRouter(OrderedRouter r) {
+			super(r);
+			this.reps = addMessageOrdering(MessageOrdering.intProperty(REPS),
+					true);
+		}
+
+		private MessageOrdering addOrdering(MessageOrdering.Key key,
+				boolean descending) {
+			return addMessageOrdering(key, descending);
+		}
+
+		private void add(Message m) {
+			addToMessages(m, false);
+		}
+
+		private Collection<Message> messagesFor(DTNHost to) {
+			return getMessagesFor(to);
+		}
+
+		private void updated(Message m) {
+			messageUpdated(m);
+		}
+
+		private Message select(MessageOrdering.Key key, boolean largest) {
+			return selectMessage(key, largest);
+		}
+
+		private int deleteUntilFree(double freeFraction) {
+			return deleteUntilFree(reps, freeFraction);
+		}
+
+		@Override
+		public OrderedRouter replicate() {
+			return new OrderedRouter(this);
+		}
+	}
+}
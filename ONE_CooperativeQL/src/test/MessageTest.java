@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -11,6 +13,8 @@ import org.junit.Test;
 
 import core.DTNHost;
 import core.Message;
+import core.PropertySlot;
+import core.SimError;
 import core.SimClock;
 
 public class MessageTest extends TestCase {
@@ -60,5 +64,106 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testHandle() {
+		Message.reset();
+		assertEquals(-1, Message.getHandle("M"));
+		Message other = new Message(from, to, "N", 100);
+		assertEquals(0, other.getHandle());
+		assertEquals(1, msg.getHandle());
+		assertEquals(1, msg.replicate().getHandle());
+		assertEquals(1, new Message(from, to, "M", 10).getHandle());
+		assertEquals(1, Message.getHandle("M"));
+		assertEquals(0, Message.getHandle("N"));
+		assertEquals(-1, Message.getHandle("O"));
+	}
+
+	@Test
+	public void testPropertySlots() {
+		PropertySlot count = PropertySlot.intSlot("MessageTest.count");
+		PropertySlot weight = PropertySlot.doubleSlot("MessageTest.weight");
+		PropertySlot time = PropertySlot.longSlot("MessageTest.time");
+		assertSame(count, PropertySlot.intSlot("MessageTest.count"));
+
+		assertFalse(msg.hasProperty(count));
+		assertEquals(0, msg.getInt(count));
+		assertNull(msg.getProperty("MessageTest.count"));
+		msg.setInt(count, 3);
+		msg.setDouble(weight, 0.5);
+		msg.setLong(time, 1L << 40);
+		assertTrue(msg.hasProperty(count));
+		assertEquals(3, msg.getInt(count));
+		assertEquals(0.5, msg.getDouble(weight));
+		assertEquals(1L << 40, msg.getLong(time));
+
+		/* replicates get copies of the values */
+		Message copy = msg.replicate();
+		copy.setInt(count, 4);
+		assertEquals(3, msg.getInt(count));
+		assertEquals(4, copy.getInt(count));
+		assertEquals(0.5, copy.getDouble(weight));
+
+		/* slots are visible through the generic property methods */
+		assertEquals(Integer.valueOf(3), msg.getProperty("MessageTest.count"));
+		assertEquals(Double.valueOf(0.5), msg.getProperty("MessageTest.weight"));
+		msg.updateProperty("MessageTest.count", 7);
+		assertEquals(7, msg.getInt(count));
+		try {
+			msg.addProperty("MessageTest.count", 8);
+			fail("Adding an existing slot property should fail");
+		} catch (SimError e) {
+			// expected
+		}
+		try {
+			msg.setDouble(count, 1.0);
+			fail("Setting a wrong type of value should fail");
+		} catch (SimError e) {
+			// expected
+		}
+		try {
+			PropertySlot.longSlot("MessageTest.count");
+			fail("Declaring a slot with another type should fail");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHops() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h3, "P", 10);
+		assertEquals(0, m.getHopCount());
+		assertEquals(Arrays.asList(h1), m.getHops());
+
+		m.addNodeOnPath(h2);
+		Message r1 = m.replicate();
+		Message r2 = m.replicate();
+		r1.addNodeOnPath(h3);
+		r2.addNodeOnPath(h1);
+		r2.addNodeOnPath(h3);
+
+		assertEquals(Arrays.asList(h1, h2), m.getHops());
+		assertEquals(1, m.getHopCount());
+		assertEquals(Arrays.asList(h1, h2, h3), r1.getHops());
+		assertEquals(2, r1.getHopCount());
+		assertEquals(Arrays.asList(h1, h2, h1, h3), r2.getHops());
+		assertEquals(3, r2.getHopCount());
+		assertEquals("[" + h1 + ", " + h2 + "]", m.getHops().toString());
+		assertTrue(m.hasVisited(h1));
+		assertTrue(m.hasVisited(h2));
+		assertFalse(m.hasVisited(h3));
+		assertTrue(r1.hasVisited(h3));
+
+		try {
+			m.getHops().add(h3);
+			fail("The path should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
 
 }
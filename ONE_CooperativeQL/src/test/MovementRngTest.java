@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import movement.ActivenessHandler;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import core.Coord;
+
+/**
+ * Tests for the movement models' own random number streams that are used
+ * when moving hosts in parallel
+ */
+public class MovementRngTest extends TestCase {
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.RNG_SEED, "5");
+		MovementModel.reset();
+	}
+
+	public void testStreamsAreOrderIndependent() {
+		MovementModel[] first = createModels(3);
+		Coord[] forward = new Coord[3];
+		for (int i=0; i<3; i++) {
+			forward[i] = first[i].getInitialLocation();
+		}
+
+		MovementModel.reset();
+		MovementModel[] second = createModels(3);
+		for (int i=2; i>=0; i--) {
+			assertEquals(forward[i], second[i].getInitialLocation());
+		}
+	}
+
+	public void testStreamsDiffer() {
+		MovementModel[] models = createModels(2);
+		Coord c0 = models[0].getInitialLocation();
+		Coord c1 = models[1].getInitialLocation();
+		assertFalse(c0.equals(c1));
+	}
+
+	public void testSharedRngIsNotAffected() {
+		Coord shared = new RandomWaypoint(ts).getInitialLocation();
+
+		MovementModel.reset();
+		MovementModel[] models = createModels(2);
+		models[0].getInitialLocation();
+		models[1].getInitialLocation();
+		assertEquals(shared, new RandomWaypoint(ts).getInitialLocation());
+	}
+
+	public void testCanMoveInParallel() {
+		assertTrue(new RandomWaypoint(ts).canMoveInParallel());
+
+		ts.putSetting(ActivenessHandler.ACTIVE_TIMES_S, "10,20");
+		assertFalse(new RandomWaypoint(ts).canMoveInParallel());
+	}
+
+	private MovementModel[] createModels(int nrof) {
+		RandomWaypoint proto = new RandomWaypoint(ts);
+		MovementModel[] models = new MovementModel[nrof];
+		for (int i=0; i<nrof; i++) {
+			models[i] = proto.replicate();
+			models[i].useOwnRng(i);
+		}
+		return models;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.ReceiptBuffer;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.SimClock;
+
+/**
+ * Tests for the delivery receipt buffer
+ */
+public class ReceiptBufferTest extends TestCase {
+	private SimClock clock;
+	private DTNHost h1;
+	private DTNHost h2;
+	private DTNHost h3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.clock = SimClock.getInstance();
+		clock.setTime(0);
+		Message.reset();
+		core.NetworkInterface.reset();
+		DTNHost.reset();
+
+		TestUtils utils = new TestUtils(null,
+				new ArrayList<MessageListener>(), new TestSettings());
+		this.h1 = utils.createHost(new Coord(0, 0));
+		this.h2 = utils.createHost(new Coord(0, 0));
+		this.h3 = utils.createHost(new Coord(0, 0));
+	}
+
+	private Message msg(String id, DTNHost to, int ttl) {
+		Message m = new Message(h1, to, id, 10);
+		m.setTtl(ttl);
+		return m;
+	}
+
+	public void testAddAndContains() {
+		ReceiptBuffer rb = new ReceiptBuffer();
+		Message m = msg("M1", h2, 10);
+		assertFalse(rb.contains(m));
+		assertTrue(rb.addReceipt(h2, m));
+		assertFalse(rb.addReceipt(h2, m.replicate()));
+		assertTrue(rb.contains(m));
+		assertTrue(rb.contains("M1"));
+		assertFalse(rb.contains("M2"));
+		assertFalse(rb.contains(msg("M2", h2, 10)));
+		assertEquals(1, rb.size());
+	}
+
+	public void testMerge() {
+		ReceiptBuffer rb1 = new ReceiptBuffer();
+		ReceiptBuffer rb2 = new ReceiptBuffer();
+		ReceiptBuffer rb3 = new ReceiptBuffer();
+		rb2.addReceipt(h2, msg("M1", h2, 10));
+		rb2.addReceipt(h2, msg("M2", h2, 10));
+		rb3.addReceipt(h3, msg("M3", h3, 10));
+
+		assertEquals(2, rb1.merge(rb2));
+		assertEquals(0, rb1.merge(rb2));
+		assertEquals(1, rb1.merge(rb3));
+		assertTrue(rb1.contains("M1"));
+		assertTrue(rb1.contains("M3"));
+
+		/* only the receipts created after the previous merge are copied */
+		rb2.addReceipt(h2, msg("M4", h2, 10));
+		assertEquals(2, rb3.merge(rb1));
+		assertEquals(1, rb3.merge(rb2));
+		assertEquals(4, rb3.size());
+		assertEquals(1, rb1.merge(rb3));
+		assertEquals(0, rb1.merge(rb2));
+		assertTrue(rb1.contains("M4"));
+		assertFalse(rb2.contains("M3"));
+	}
+
+	public void testExpiry() {
+		ReceiptBuffer rb1 = new ReceiptBuffer();
+		ReceiptBuffer rb2 = new ReceiptBuffer();
+		rb2.addReceipt(h2, msg("M1", h2, 1));
+		rb2.addReceipt(h2, msg("M2", h2, 5));
+		rb2.addReceipt(h2, msg("M3", h2, Message.INFINITE_TTL));
+		assertEquals(3, rb2.size());
+
+		clock.setTime(61);
+		assertEquals(2, rb2.size());
+		assertFalse(rb2.contains("M1"));
+		/* expired receipts are not copied */
+		assertEquals(2, rb1.merge(rb2));
+		assertFalse(rb1.contains("M1"));
+
+		clock.setTime(1000000);
+		assertEquals(1, rb1.size());
+		assertTrue(rb1.contains("M3"));
+		assertEquals(1, rb2.size());
+	}
+
+	public void testManyReceipts() {
+		ReceiptBuffer rb1 = new ReceiptBuffer();
+		ReceiptBuffer rb2 = new ReceiptBuffer();
+		List<Message> msgs = new ArrayList<Message>();
+		for (int i = 0; i < 1000; i++) {
+			clock.setTime(i);
+			Message m = msg("M" + i, h2, 2);
+			msgs.add(m);
+			rb2.addReceipt(h2, m);
+			if (i % 100 == 0) {
+				rb1.merge(rb2);
+			}
+		}
+		rb1.merge(rb2);
+		/* receipts expire TTL after the creation */
+		int expiry = 120;
+		assertEquals(expiry + 1, rb1.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i + expiry >= 999, rb1.contains(msgs.get(i)));
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package test;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+import core.SimClock;
+import core.SimulationContext;
+
+/**
+ * Tests for the SimulationContext
+ */
+public class SimulationContextTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+	}
+
+	public void testStaticStateIsIsolated() throws Exception {
+		try (SimulationContext c1 = new SimulationContext();
+				SimulationContext c2 = new SimulationContext()) {
+			Class<?> clock1 = c1.getClassLoader().loadClass("core.SimClock");
+			Class<?> clock2 = c2.getClassLoader().loadClass("core.SimClock");
+			assertNotSame(SimClock.class, clock1);
+			assertNotSame(clock1, clock2);
+
+			setTime(clock1, 10.0);
+			setTime(clock2, 20.0);
+
+			assertEquals(10.0, clock1.getMethod("getTime").invoke(null));
+			assertEquals(20.0, clock2.getMethod("getTime").invoke(null));
+			assertEquals(0.0, SimClock.getTime());
+		}
+	}
+
+	private void setTime(Class<?> clockClass, double time) throws Exception {
+		Object clock = clockClass.getMethod("getInstance").invoke(null);
+		Method setTime = clockClass.getMethod("setTime", double.class);
+		setTime.invoke(clock, time);
+	}
+}
@@ -37,6 +37,11 @@ public class StationaryMovement extends MovementModel {
 	public boolean isActive() {
 		return true;
 	}
+
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 	
 	/**
 	 * Returns a single coordinate path (using the only possible coordinate)
@@ -7,6 +7,7 @@ package test;
 import java.util.List;
 
 import routing.PassiveRouter;
+import core.ControlSignal;
 import core.Coord;
 import core.DTNHost;
 import core.Message;
@@ -26,6 +27,7 @@ public class TestDTNHost extends DTNHost {
 	public DTNHost recvFrom;
 	public String abortedId;
 	public DTNHost abortedFrom;
+	public ControlSignal recvSignal;
 	public int abortedBytesRemaining;
 	
 	public String transferredId;
@@ -64,6 +66,11 @@ public class TestDTNHost extends DTNHost {
 		this.abortedBytesRemaining = bytesRemaining;
 	}
 	
+	@Override
+	public void receiveSignal(ControlSignal signal, DTNHost from) {
+		this.recvSignal = signal;
+	}
+
 	@Override
 	public void messageTransferred(String id, DTNHost from) {
 		this.transferredId = id;
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.SimClock;
+import core.TimingWheel;
+
+/**
+ * Tests for the hierarchical timing wheel
+ */
+public class TimingWheelTest extends TestCase {
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.getInstance().setTime(0);
+	}
+
+	public void testAdvance() {
+		TimingWheel<String> wheel = new TimingWheel<String>(1.0);
+		wheel.schedule("c", 100.5);
+		wheel.schedule("a", 2.5);
+		wheel.schedule("b", 2.5);
+		wheel.schedule("d", 5000);
+		wheel.schedule("e", 1e9);
+		assertEquals(5, wheel.size());
+		assertEquals(2.5, wheel.getNextTimeBound());
+
+		assertTrue(wheel.advance(2.4).isEmpty());
+		List<String> fired = wheel.advance(2.5);
+		assertEquals(2, fired.size());
+		assertEquals("a", fired.get(0));
+		assertEquals("b", fired.get(1));
+		assertTrue(wheel.getNextTimeBound() <= 100.5);
+
+		fired = wheel.advance(6000);
+		assertEquals(2, fired.size());
+		assertEquals("c", fired.get(0));
+		assertEquals("d", fired.get(1));
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.advance(1e9 - 0.1).isEmpty());
+		assertEquals("e", wheel.advance(1e9).get(0));
+		assertEquals(0, wheel.size());
+		assertEquals(Double.MAX_VALUE, wheel.getNextTimeBound());
+	}
+
+	public void testCancelAndPastTimes() {
+		TimingWheel<String> wheel = new TimingWheel<String>(1.0);
+		TimingWheel.Timer<String> t1 = wheel.schedule("a", 10);
+		TimingWheel.Timer<String> t2 = wheel.schedule("b", 10000);
+		wheel.cancel(t1);
+		wheel.cancel(t2);
+		wheel.cancel(t2);
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.advance(20000).isEmpty());
+
+		/* timers of passed times fire on the next advance */
+		wheel.schedule("c", 5);
+		assertEquals("c", wheel.advance(20000).get(0));
+		TimingWheel.Timer<String> t3 = wheel.schedule("d", 20000.5);
+		assertEquals("d", wheel.advance(20001).get(0));
+		wheel.cancel(t3);
+		assertEquals(0, wheel.size());
+	}
+
+	public void testAgainstSortedList() {
+		Random rng = new Random(7);
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(1.0);
+		List<TimingWheel.Timer<Integer>> pending =
+			new ArrayList<TimingWheel.Timer<Integer>>();
+		double now = 0;
+
+		for (int round = 0; round < 2000; round++) {
+			for (int i = rng.nextInt(20); i > 0; i--) {
+				/* mostly near future with some far ahead */
+				double time = now + (rng.nextInt(20) == 0 ?
+						rng.nextDouble() * 1e8 : rng.nextDouble() * 5000);
+				pending.add(wheel.schedule(round * 100 + i, time));
+			}
+			if (!pending.isEmpty() && rng.nextInt(3) == 0) {
+				wheel.cancel(pending.remove(rng.nextInt(pending.size())));
+			}
+
+			double bound = wheel.getNextTimeBound();
+			for (TimingWheel.Timer<Integer> t : pending) {
+				assertTrue(bound <= t.getTime());
+			}
+
+			now += rng.nextInt(10) == 0 ? rng.nextDouble() * 1e6 :
+				rng.nextDouble() * 30;
+			List<Integer> expected = new ArrayList<Integer>();
+			double previous = -1;
+			for (TimingWheel.Timer<Integer> t : sortByTime(pending)) {
+				if (t.getTime() <= now) {
+					assertTrue(t.getTime() >= previous);
+					previous = t.getTime();
+					expected.add(t.getItem());
+					pending.remove(t);
+				}
+			}
+			assertEquals(expected, wheel.advance(now));
+			assertEquals(pending.size(), wheel.size());
+		}
+	}
+
+	private List<TimingWheel.Timer<Integer>> sortByTime(
+			List<TimingWheel.Timer<Integer>> timers) {
+		List<TimingWheel.Timer<Integer>> sorted =
+			new ArrayList<TimingWheel.Timer<Integer>>(timers);
+		/* stable, so equal times stay in the scheduling order */
+		sorted.sort((t1, t2) -> Double.compare(t1.getTime(), t2.getTime()));
+		return sorted;
+	}
+}
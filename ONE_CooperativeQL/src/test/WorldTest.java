@@ -5,12 +5,15 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import core.ConnectionListener;
 import core.DTNHost;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
@@ -97,8 +100,83 @@ public class WorldTest extends TestCase {
 		assertNrofUpdates(5);
 
 	}
+
+	public void testNextEventAdvance() {
+		/* test hosts (re)initialize the settings so put this after setUp */
+		new TestSettings().putSetting(World.SETTINGS_NS + "." +
+				World.NEXT_EVENT_ADVANCE_S, "true");
+		this.simulateConnections = false;
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+		world.monitorActivity(new ArrayList<MessageListener>(),
+				new ArrayList<ConnectionListener>());
+		world.scheduleUpdate(50.25);
+
+		/* two idle intervals must pass before any jumps */
+		world.update();
+		world.update();
+		assertEquals(0.2, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(2);
+
+		/* jumps close to the scheduled update (one interval of margin) */
+		world.update();
+		assertEquals(50.2, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(3);
+		world.update();
+		assertEquals(50.3, SimClock.getTime(), TIME_DELTA);
+		assertNrofUpdates(5); // the extra scheduled update happened
+
+		/* nothing due anymore; jumps to the end time (100) of the scenario
+		 * (the clock may end up one interval over it due rounding errors) */
+		world.update();
+		assertTrue(SimClock.getTime() >= 100 - TIME_DELTA);
+		assertTrue(SimClock.getTime() <= 100 + upInterval + TIME_DELTA);
+		assertNrofUpdates(6);
+	}
 	
 
+	public void testDirtyHostUpdates() {
+		new TestSettings().putSetting(World.SETTINGS_NS + "." +
+				World.DIRTY_HOST_UPDATES_S, "true");
+		final TestDTNHost touched = testHosts.get(3);
+		eQueues.add(new EventQueue() {
+			private double time = 0.05;
+			public ExternalEvent nextEvent() {
+				time = Double.MAX_VALUE;
+				return new ExternalEvent(0.05) {
+					public void processEvent(World world) {
+						world.markDirty(touched);
+					}
+				};
+			}
+			public double nextEventsTime() {
+				return time;
+			}
+		});
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+
+		world.update();
+		assertEquals(2, touched.nrofUpdate); // the event and the interval
+		for (TestDTNHost h : testHosts) {
+			if (h != touched) {
+				assertEquals(1, h.nrofUpdate);
+			}
+		}
+
+		/* events that don't mark any hosts update all hosts */
+		world.scheduleUpdate(0.15);
+		world.update();
+		assertEquals(4, touched.nrofUpdate);
+		assertEquals(3, testHosts.get(0).nrofUpdate);
+	}
+
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}